@@ -0,0 +1,1077 @@
+/**
+ * Copyright 2009 Rednaxela
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ *
+ *    2. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+package ags.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A variant of KdTree that keeps each leaf's points in flat primitive storage
+ * (one coordinate array per leaf, laid out dimension by dimension) and can
+ * write search results into a caller-supplied NeighborBuffer, so repeated
+ * searches don't allocate.
+ *
+ * @author Rednaxela
+ */
+
+// Differences from KdTree:
+// - flat structure-of-arrays leaf storage
+// - nearest neighbor search into a reusable NeighborBuffer
+// - sliding window mode for size-limited trees: FIFO ring of primitive
+//   coordinates, real deletion with bounds recomputation, collapse of empty
+//   leaves, and rebuilding of lopsided subtrees
+// - batched nearest neighbor search for several query points in one pass
+// - searches can skip points older than a given id, pruning subtrees by
+//   their newest id
+// - points added after a search can be merged into its results
+// - NeighborBuffer can be filled by other trees, for voidious.utils.SpatialIndex
+public abstract class FlatKdTree<T> {
+    // Static variables
+    private static final int           bucketSize = 24;
+    // Subtrees at least this big are rebuilt when one side holds more than
+    // 3/4 of their points (sliding window mode only)
+    private static final int           rebalanceSize = bucketSize * 4;
+
+    private final int                  dimensions;
+    private final Integer              sizeLimit;
+    private Node                       root;
+    private int                        nextId;
+    private int                        oldestId;
+
+    // Sliding window only: coordinates of the points in the tree, by
+    // insertion order, at ring[(id % ringSize) * dimensions + d]
+    private final double[]             ring;
+    private final int                  ringSize;
+
+    // Temporary
+    private double[]                   leafDistances;
+    private final double[]             point;
+    private double[]                   buildCoords;
+    private Object[]                   buildData;
+    private int[]                      buildIds;
+    private double[]                   buildValues;
+    private int[]                      queryStack;
+
+    /**
+     * Construct a FlatKdTree with a given number of dimensions and a limit on
+     * maxiumum size (after which it throws away old points)
+     */
+    protected FlatKdTree(int dimensions, Integer sizeLimit) {
+        this.dimensions = dimensions;
+        this.sizeLimit = sizeLimit;
+        if (sizeLimit != null) {
+            this.ringSize = sizeLimit + 1;
+            this.ring = new double[ringSize * dimensions];
+        }
+        else {
+            this.ringSize = 0;
+            this.ring = null;
+        }
+        this.root = new Node(null, bucketSize, dimensions);
+        this.nextId = 0;
+        this.oldestId = 0;
+        this.leafDistances = new double[bucketSize];
+        this.point = new double[dimensions];
+        this.queryStack = new int[0];
+    }
+
+    /**
+     * Get the number of points in the tree
+     */
+    public int size() {
+        return root.count;
+    }
+
+    public int dimensions() {
+        return dimensions;
+    }
+
+    /**
+     * Add a point and associated value to the tree. Returns the id assigned
+     * to the point; ids are handed out sequentially in insertion order.
+     */
+    public int addPoint(double[] location, T value) {
+        int id = nextId++;
+        Node cursor = root;
+
+        while (cursor.coords == null || cursor.count >= cursor.capacity) {
+            if (cursor.coords != null) {
+                cursor.splitDimension = findWidestAxis(cursor);
+                cursor.splitValue = (cursor.minLimit[cursor.splitDimension] + cursor.maxLimit[cursor.splitDimension]) * 0.5;
+
+                // Never split on infinity or NaN
+                if (cursor.splitValue == Double.POSITIVE_INFINITY) {
+                    cursor.splitValue = Double.MAX_VALUE;
+                }
+                else if (cursor.splitValue == Double.NEGATIVE_INFINITY) {
+                    cursor.splitValue = -Double.MAX_VALUE;
+                }
+                else if (Double.isNaN(cursor.splitValue)) {
+                    cursor.splitValue = 0;
+                }
+
+                // Don't split node if it has no width in any axis. Double the
+                // bucket size instead
+                if (cursor.minLimit[cursor.splitDimension] == cursor.maxLimit[cursor.splitDimension]) {
+                    cursor.grow(cursor.capacity * 2, dimensions);
+                    break;
+                }
+
+                // Don't let the split value be the same as the upper value as
+                // can happen due to rounding errors!
+                if (cursor.splitValue == cursor.maxLimit[cursor.splitDimension]) {
+                    cursor.splitValue = cursor.minLimit[cursor.splitDimension];
+                }
+
+                // Create child leaves
+                int childCapacity = Math.max(bucketSize, cursor.count);
+                Node left = new Node(cursor, childCapacity, dimensions);
+                Node right = new Node(cursor, childCapacity, dimensions);
+
+                // Move locations into children
+                for (int i = 0; i < cursor.count; i++) {
+                    cursor.copyPoint(i, point, dimensions);
+                    if (point[cursor.splitDimension] > cursor.splitValue) {
+                        right.append(point, cursor.data[i], cursor.ids[i], dimensions);
+                    }
+                    else {
+                        left.append(point, cursor.data[i], cursor.ids[i], dimensions);
+                    }
+                }
+
+                // Make into stem
+                cursor.left = left;
+                cursor.right = right;
+                cursor.coords = null;
+                cursor.data = null;
+                cursor.ids = null;
+                cursor.capacity = 0;
+            }
+
+            cursor.count++;
+            cursor.maxId = id;
+            cursor.extendBounds(location, dimensions);
+
+            if (location[cursor.splitDimension] > cursor.splitValue) {
+                cursor = cursor.right;
+            }
+            else {
+                cursor = cursor.left;
+            }
+        }
+
+        cursor.append(location, value, id, dimensions);
+        if (cursor.capacity > leafDistances.length) {
+            leafDistances = new double[cursor.capacity];
+        }
+
+        if (this.sizeLimit != null) {
+            System.arraycopy(location, 0, ring, (id % ringSize) * dimensions, dimensions);
+            if (root.count > this.sizeLimit) {
+                this.removeOld();
+            }
+            rebalance(location);
+        }
+        return id;
+    }
+
+    /**
+     * Find the widest axis of the bounds of a node
+     */
+    private final int findWidestAxis(Node node) {
+        int widest = 0;
+        double width = (node.maxLimit[0] - node.minLimit[0]) * getAxisWeightHint(0);
+        if (Double.isNaN(width)) width = 0;
+        for (int i = 1; i < dimensions; i++) {
+            double nwidth = (node.maxLimit[i] - node.minLimit[i]) * getAxisWeightHint(i);
+            if (Double.isNaN(nwidth)) nwidth = 0;
+            if (nwidth > width) {
+                widest = i;
+                width = nwidth;
+            }
+        }
+        return widest;
+    }
+
+    /**
+     * Remove the oldest value from the tree, trimming bounds and collapsing
+     * emptied leaves on the way back up.
+     */
+    private void removeOld() {
+        int id = oldestId++;
+        System.arraycopy(ring, (id % ringSize) * dimensions, point, 0, dimensions);
+        Node cursor = root;
+
+        // Find the node where the point is
+        while (cursor.coords == null) {
+            if (point[cursor.splitDimension] > cursor.splitValue) {
+                cursor = cursor.right;
+            }
+            else {
+                cursor = cursor.left;
+            }
+        }
+
+        int index = -1;
+        for (int i = 0; i < cursor.count; i++) {
+            if (cursor.ids[i] == id) {
+                index = i;
+                break;
+            }
+        }
+        if (index == -1) {
+            // Couldn't find the value to remove. Weird...
+            return;
+        }
+
+        boolean onBoundary = cursor.onBoundary(index, dimensions);
+        cursor.swapRemove(index, dimensions);
+        for (Node node = cursor; node != null; node = node.parent) {
+            node.count--;
+        }
+
+        Node changed = null;
+        if (cursor.count == 0) {
+            if (cursor.parent == null) {
+                cursor.clearBounds();
+            }
+            else {
+                // Replace the parent stem with the remaining sibling
+                Node stem = cursor.parent;
+                stem.absorb(stem.left == cursor ? stem.right : stem.left);
+                changed = stem;
+            }
+        }
+        else if (onBoundary) {
+            cursor.recomputeLeafBounds(dimensions);
+            changed = cursor;
+        }
+
+        if (changed != null) {
+            for (Node node = changed.parent; node != null; node = node.parent) {
+                node.recomputeStemBounds(dimensions);
+            }
+        }
+        rebalance(point);
+    }
+
+    /**
+     * Rebuild the largest lopsided subtree on the path to 'location', if any.
+     */
+    private void rebalance(double[] location) {
+        Node cursor = root;
+        while (cursor.coords == null) {
+            if (cursor.count >= rebalanceSize
+                    && Math.max(cursor.left.count, cursor.right.count) * 4 > cursor.count * 3) {
+                rebuild(cursor);
+                return;
+            }
+            if (location[cursor.splitDimension] > cursor.splitValue) {
+                cursor = cursor.right;
+            }
+            else {
+                cursor = cursor.left;
+            }
+        }
+    }
+
+    /**
+     * Rebuild a subtree in place, splitting on medians.
+     */
+    private void rebuild(Node node) {
+        int n = node.count;
+        if (buildData == null || buildData.length < n) {
+            buildCoords = new double[n * dimensions];
+            buildData = new Object[n];
+            buildIds = new int[n];
+            buildValues = new double[n];
+        }
+        int stride = buildData.length;
+        int collected = collect(node, 0, stride);
+        build(node, 0, collected, stride);
+    }
+
+    private int collect(Node node, int offset, int stride) {
+        if (node.coords == null) {
+            offset = collect(node.left, offset, stride);
+            return collect(node.right, offset, stride);
+        }
+        for (int i = 0; i < node.count; i++) {
+            for (int d = 0; d < dimensions; d++) {
+                buildCoords[d * stride + offset] = node.coords[d * node.capacity + i];
+            }
+            buildData[offset] = node.data[i];
+            buildIds[offset] = node.ids[i];
+            offset++;
+        }
+        return offset;
+    }
+
+    private void build(Node node, int from, int to, int stride) {
+        int n = to - from;
+        node.left = node.right = null;
+        node.clearBounds();
+        node.count = 0;
+        for (int i = from; i < to; i++) {
+            for (int d = 0; d < dimensions; d++) {
+                point[d] = buildCoords[d * stride + i];
+            }
+            node.extendBounds(point, dimensions);
+        }
+        node.count = n;
+        node.maxId = Integer.MIN_VALUE;
+        for (int i = from; i < to; i++) {
+            node.maxId = Math.max(node.maxId, buildIds[i]);
+        }
+
+        if (n > bucketSize) {
+            int splitDimension = findWidestAxis(node);
+            int base = splitDimension * stride;
+            System.arraycopy(buildCoords, base + from, buildValues, 0, n);
+            Arrays.sort(buildValues, 0, n);
+            // NaNs sort last and always go left
+            int numbers = n;
+            while (numbers > 0 && Double.isNaN(buildValues[numbers - 1])) {
+                numbers--;
+            }
+            int median = numbers / 2 - 1;
+            if (median >= 0) {
+                // Don't let the split value be the same as the upper value
+                double maxValue = buildValues[numbers - 1];
+                while (median >= 0 && buildValues[median] == maxValue) {
+                    median--;
+                }
+            }
+            if (median >= 0) {
+                double splitValue = buildValues[median];
+                int split = from;
+                for (int i = from; i < to; i++) {
+                    if (!(buildCoords[base + i] > splitValue)) {
+                        swapBuildPoints(i, split++, stride);
+                    }
+                }
+                node.splitDimension = splitDimension;
+                node.splitValue = splitValue;
+                node.coords = null;
+                node.data = null;
+                node.ids = null;
+                node.capacity = 0;
+                node.left = new Node(node, bucketSize, dimensions);
+                node.right = new Node(node, bucketSize, dimensions);
+                build(node.left, from, split, stride);
+                build(node.right, split, to, stride);
+                return;
+            }
+        }
+
+        // Make into leaf
+        int capacity = Math.max(bucketSize, n);
+        if (node.coords == null || node.capacity < capacity) {
+            node.coords = new double[capacity * dimensions];
+            node.data = new Object[capacity];
+            node.ids = new int[capacity];
+            node.capacity = capacity;
+        }
+        else {
+            Arrays.fill(node.data, null);
+        }
+        for (int d = 0; d < dimensions; d++) {
+            System.arraycopy(buildCoords, d * stride + from, node.coords, d * node.capacity, n);
+        }
+        System.arraycopy(buildData, from, node.data, 0, n);
+        System.arraycopy(buildIds, from, node.ids, 0, n);
+        Arrays.fill(buildData, from, to, null);
+        if (node.capacity > leafDistances.length) {
+            leafDistances = new double[node.capacity];
+        }
+    }
+
+    private void swapBuildPoints(int a, int b, int stride) {
+        if (a == b) {
+            return;
+        }
+        for (int d = 0, offset = 0; d < dimensions; d++, offset += stride) {
+            double tCoord = buildCoords[offset + a];
+            buildCoords[offset + a] = buildCoords[offset + b];
+            buildCoords[offset + b] = tCoord;
+        }
+        Object tData = buildData[a];
+        buildData[a] = buildData[b];
+        buildData[b] = tData;
+        int tId = buildIds[a];
+        buildIds[a] = buildIds[b];
+        buildIds[b] = tId;
+    }
+
+    /**
+     * Number of nodes in the tree, for checking that removals keep the
+     * structure compact.
+     */
+    int nodeCount() {
+        return nodeCount(root);
+    }
+
+    private int nodeCount(Node node) {
+        if (node.coords != null) {
+            return 1;
+        }
+        return 1 + nodeCount(node.left) + nodeCount(node.right);
+    }
+
+    /**
+     * Stores up to 'capacity' closest values, in heap order, for reuse across
+     * searches.
+     */
+    public static class NeighborBuffer<T> {
+        private Object[] data;
+        private double[] distance;
+        private int[]    ids;
+        private int      size;
+        private int      values;
+
+        public NeighborBuffer(int capacity) {
+            this.data = new Object[capacity];
+            this.distance = new double[capacity];
+            this.ids = new int[capacity];
+            this.size = capacity;
+            this.values = 0;
+        }
+
+        /**
+         * Number of neighbors found by the last search.
+         */
+        public int size() {
+            return values;
+        }
+
+        public double distance(int i) {
+            return distance[i];
+        }
+
+        @SuppressWarnings("unchecked")
+        public T value(int i) {
+            return (T) data[i];
+        }
+
+        public int id(int i) {
+            return ids[i];
+        }
+
+        /**
+         * The neighbors found by the last search, in heap order.
+         */
+        @SuppressWarnings("unchecked")
+        public List<KdTree.Entry<T>> entries() {
+            ArrayList<KdTree.Entry<T>> results = new ArrayList<KdTree.Entry<T>>(values);
+            for (int i = 0; i < values; i++) {
+                results.add(new KdTree.Entry<T>(distance[i], (T)data[i]));
+            }
+            return results;
+        }
+
+        /**
+         * Empty the buffer and prepare it to hold up to 'count' neighbors.
+         */
+        public void reset(int count) {
+            if (count > data.length) {
+                data = new Object[count];
+                distance = new double[count];
+                ids = new int[count];
+            }
+            else {
+                Arrays.fill(data, 0, values, null);
+            }
+            size = count;
+            values = 0;
+        }
+
+        /**
+         * Offer a neighbor, which is kept if it's among the 'count' nearest
+         * offered since the last reset.
+         */
+        public void addValue(double dist, Object value, int id) {
+            // If there is still room in the heap
+            if (values < size) {
+                // Insert new value at the end
+                data[values] = value;
+                distance[values] = dist;
+                ids[values] = id;
+                upHeapify(values);
+                values++;
+            }
+            // If there is no room left in the heap, and the new entry is lower
+            // than the max entry
+            else if (dist < distance[0]) {
+                // Replace the max entry with the new entry
+                data[0] = value;
+                distance[0] = dist;
+                ids[0] = id;
+                downHeapify(0);
+            }
+        }
+
+        private void swap(int a, int b) {
+            Object tData = data[a];
+            double tDist = distance[a];
+            int tId = ids[a];
+            data[a] = data[b];
+            distance[a] = distance[b];
+            ids[a] = ids[b];
+            data[b] = tData;
+            distance[b] = tDist;
+            ids[b] = tId;
+        }
+
+        private void upHeapify(int c) {
+            for (int p = (c - 1) / 2; c != 0 && distance[c] > distance[p]; c = p, p = (c - 1) / 2) {
+                swap(p, c);
+            }
+        }
+
+        private void downHeapify(int p) {
+            for (int c = p * 2 + 1; c < values; p = c, c = p * 2 + 1) {
+                if (c + 1 < values && distance[c] < distance[c + 1]) {
+                    c++;
+                }
+                if (distance[p] < distance[c]) {
+                    swap(p, c);
+                }
+                else {
+                    break;
+                }
+            }
+        }
+
+        /**
+         * Remove the farthest neighbor, moving it just past the end of the
+         * heap. Repeating this leaves the buffer sorted nearest first.
+         */
+        void removeLargest() {
+            if (values == 0) {
+                throw new IllegalStateException();
+            }
+            values--;
+            swap(0, values);
+            downHeapify(0);
+        }
+
+        double getMaxDist() {
+            if (values < size) {
+                return Double.POSITIVE_INFINITY;
+            }
+            return distance[0];
+        }
+    }
+
+    /**
+     * Calculates the nearest 'count' points to 'location'
+     */
+    public List<KdTree.Entry<T>> nearestNeighbor(double[] location, int count, boolean sequentialSorting) {
+        return nearestNeighbor(location, count, Integer.MIN_VALUE, sequentialSorting);
+    }
+
+    /**
+     * Calculates the nearest 'count' points to 'location' among those with
+     * ids of at least 'minId'
+     */
+    @SuppressWarnings("unchecked")
+    public List<KdTree.Entry<T>> nearestNeighbor(double[] location, int count, int minId, boolean sequentialSorting) {
+        NeighborBuffer<T> buffer = new NeighborBuffer<T>(count);
+        nearestNeighbor(location, count, minId, buffer);
+
+        ArrayList<KdTree.Entry<T>> results = new ArrayList<KdTree.Entry<T>>(buffer.values);
+        if (sequentialSorting) {
+            while (buffer.values > 0) {
+                buffer.removeLargest();
+                results.add(new KdTree.Entry<T>(buffer.distance[buffer.values], (T)buffer.data[buffer.values]));
+            }
+        }
+        else {
+            for (int i = 0; i < buffer.values; i++) {
+                results.add(new KdTree.Entry<T>(buffer.distance[i], (T)buffer.data[i]));
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Calculates the nearest 'count' points to 'location', writing them (in
+     * heap order) into 'results'.
+     */
+    public void nearestNeighbor(double[] location, int count, NeighborBuffer<T> results) {
+        nearestNeighbor(location, count, Integer.MIN_VALUE, results);
+    }
+
+    /**
+     * Calculates the nearest 'count' points to 'location' among those with
+     * ids of at least 'minId', writing them (in heap order) into 'results'.
+     */
+    public void nearestNeighbor(double[] location, int count, int minId, NeighborBuffer<T> results) {
+        results.reset(count);
+        if (count > 0 && root.count > 0 && root.maxId >= minId) {
+            search(root, location, minId, results);
+        }
+    }
+
+    /**
+     * Updates the results of an earlier search for 'location' with a point
+     * added since, as if it had been in the tree at the time of the search.
+     * Points that have left the window since aren't removed, so the caller
+     * has to search again if any of its neighbors were evicted.
+     */
+    public void offerPoint(double[] location, double[] point, T value, int id, NeighborBuffer<T> results) {
+        leafDistances(point, 1, 1, location, leafDistances);
+        results.addValue(leafDistances[0], value, id);
+    }
+
+    private void search(Node node, double[] location, int minId, NeighborBuffer<T> results) {
+        if (node.coords != null) {
+            // At a leaf. Use the data.
+            if (node.count > 0) {
+                if (node.singularity) {
+                    leafDistances(node.coords, node.capacity, 1, location, leafDistances);
+                    double dist = leafDistances[0];
+                    if (dist <= results.getMaxDist()) {
+                        for (int i = 0; i < node.count; i++) {
+                            if (node.ids[i] >= minId) {
+                                results.addValue(dist, node.data[i], node.ids[i]);
+                            }
+                        }
+                    }
+                }
+                else {
+                    leafDistances(node.coords, node.capacity, node.count, location, leafDistances);
+                    for (int i = 0; i < node.count; i++) {
+                        if (node.ids[i] >= minId) {
+                            results.addValue(leafDistances[i], node.data[i], node.ids[i]);
+                        }
+                    }
+                }
+            }
+            return;
+        }
+
+        // Descend the most probably useful direction first
+        Node near, far;
+        if (location[node.splitDimension] > node.splitValue) {
+            near = node.right;
+            far = node.left;
+        }
+        else {
+            near = node.left;
+            far = node.right;
+        }
+        if (near.maxId >= minId) {
+            search(near, location, minId, results);
+        }
+
+        // Check if it's worth descending the other side
+        if (worthDescending(far, location, minId, results)) {
+            search(far, location, minId, results);
+        }
+    }
+
+    /**
+     * Calculates the nearest counts[q] points to each of locations[q], for
+     * the first 'numQueries' queries, writing them into results[q]. Each
+     * node is visited once for all of the queries that need it, and each
+     * query gets the same results as a separate search.
+     */
+    public void nearestNeighbor(double[][] locations, int[] counts, NeighborBuffer<T>[] results, int numQueries) {
+        nearestNeighbor(locations, counts, null, results, numQueries);
+    }
+
+    /**
+     * Batched search as above, where query q only considers points with ids
+     * of at least minIds[q] (or all points if minIds is null).
+     */
+    public void nearestNeighbor(double[][] locations, int[] counts, int[] minIds, NeighborBuffer<T>[] results, int numQueries) {
+        ensureQueryStack(numQueries);
+        int active = 0;
+        for (int q = 0; q < numQueries; q++) {
+            results[q].reset(counts[q]);
+            if (counts[q] > 0) {
+                queryStack[active++] = q;
+            }
+        }
+        if (active > 0 && root.count > 0) {
+            search(root, 0, active, active, locations, minIds, results);
+        }
+    }
+
+    private void ensureQueryStack(int size) {
+        if (queryStack.length < size) {
+            queryStack = Arrays.copyOf(queryStack, Math.max(size, queryStack.length * 2));
+        }
+    }
+
+    /**
+     * Search a node for the queries at queryStack[from] to queryStack[to - 1].
+     * Everything from 'top' up is free for the subsets passed to children.
+     */
+    private void search(Node node, int from, int to, int top, double[][] locations, int[] minIds, NeighborBuffer<T>[] results) {
+        if (node.coords != null) {
+            for (int x = from; x < to; x++) {
+                int q = queryStack[x];
+                search(node, locations[q], minId(minIds, q), results[q]);
+            }
+            return;
+        }
+
+        // Split into queries that descend left first and right first
+        int n = to - from;
+        ensureQueryStack(top + n * 2);
+        int leftFirst = top;
+        int rightFirst = top;
+        for (int x = from; x < to; x++) {
+            int q = queryStack[x];
+            if (!(locations[q][node.splitDimension] > node.splitValue)) {
+                queryStack[rightFirst++] = q;
+            }
+        }
+        int end = rightFirst;
+        for (int x = from; x < to; x++) {
+            int q = queryStack[x];
+            if (locations[q][node.splitDimension] > node.splitValue) {
+                queryStack[end++] = q;
+            }
+        }
+
+        // Left side for the left-first queries with points new enough there.
+        // The others still search the right side below, as in a single search.
+        int leftEnd = end;
+        for (int x = leftFirst; x < rightFirst; x++) {
+            int q = queryStack[x];
+            if (node.left.maxId >= minId(minIds, q)) {
+                queryStack[leftEnd++] = q;
+            }
+        }
+        if (leftEnd > end) {
+            search(node.left, end, leftEnd, leftEnd, locations, minIds, results);
+        }
+
+        // Right side for the right-first queries, plus the left-first ones
+        // that can still find something there
+        int rightEnd = end;
+        for (int x = rightFirst; x < end; x++) {
+            int q = queryStack[x];
+            if (node.right.maxId >= minId(minIds, q)) {
+                queryStack[rightEnd++] = q;
+            }
+        }
+        for (int x = leftFirst; x < rightFirst; x++) {
+            int q = queryStack[x];
+            if (worthDescending(node.right, locations[q], minId(minIds, q), results[q])) {
+                queryStack[rightEnd++] = q;
+            }
+        }
+        if (rightEnd > end) {
+            search(node.right, end, rightEnd, rightEnd, locations, minIds, results);
+        }
+
+        // Left side for the right-first queries that still need it
+        int farLeftEnd = end;
+        for (int x = rightFirst; x < end; x++) {
+            int q = queryStack[x];
+            if (worthDescending(node.left, locations[q], minId(minIds, q), results[q])) {
+                queryStack[farLeftEnd++] = q;
+            }
+        }
+        if (farLeftEnd > end) {
+            search(node.left, end, farLeftEnd, farLeftEnd, locations, minIds, results);
+        }
+    }
+
+    private static int minId(int[] minIds, int q) {
+        return minIds == null ? Integer.MIN_VALUE : minIds[q];
+    }
+
+    private boolean worthDescending(Node node, double[] location, int minId, NeighborBuffer<T> results) {
+        return node.count > 0 && node.maxId >= minId
+            && (node.singularity || pointRegionDist(location, node.minLimit, node.maxLimit) <= results.getMaxDist());
+    }
+
+    // Override in subclasses
+
+    /**
+     * Distances from 'location' to the first 'count' points of a leaf, whose
+     * coordinates for dimension d are stored at coords[d * capacity + i].
+     */
+    protected abstract void leafDistances(double[] coords, int capacity, int count, double[] location, double[] distances);
+
+    protected abstract double pointRegionDist(double[] point, double[] min, double[] max);
+
+    protected double getAxisWeightHint(int i) {
+        return 1.0;
+    }
+
+    /**
+     * A node of the tree: a leaf with flat point storage, or a stem.
+     */
+    private static final class Node {
+        private Node       parent;
+
+        // Leaf only
+        private double[]   coords;
+        private Object[]   data;
+        private int[]      ids;
+        private int        capacity;
+
+        // Stem only
+        private Node       left, right;
+        private int        splitDimension;
+        private double     splitValue;
+
+        // All types
+        private int        count;
+        private int        maxId;
+
+        // Bounds
+        private double[]   minLimit, maxLimit;
+        private boolean    singularity;
+
+        private Node(Node parent, int capacity, int dimensions) {
+            this.parent = parent;
+            this.coords = new double[capacity * dimensions];
+            this.data = new Object[capacity];
+            this.ids = new int[capacity];
+            this.capacity = capacity;
+            this.count = 0;
+            this.maxId = Integer.MIN_VALUE;
+            this.singularity = true;
+        }
+
+        private void grow(int newCapacity, int dimensions) {
+            double[] newCoords = new double[newCapacity * dimensions];
+            for (int d = 0; d < dimensions; d++) {
+                System.arraycopy(coords, d * capacity, newCoords, d * newCapacity, count);
+            }
+            coords = newCoords;
+            data = Arrays.copyOf(data, newCapacity);
+            ids = Arrays.copyOf(ids, newCapacity);
+            capacity = newCapacity;
+        }
+
+        private void append(double[] location, Object value, int id, int dimensions) {
+            for (int d = 0; d < dimensions; d++) {
+                coords[d * capacity + count] = location[d];
+            }
+            data[count] = value;
+            ids[count] = id;
+            count++;
+            maxId = Math.max(maxId, id);
+            extendBounds(location, dimensions);
+        }
+
+        private void copyPoint(int i, double[] location, int dimensions) {
+            for (int d = 0; d < dimensions; d++) {
+                location[d] = coords[d * capacity + i];
+            }
+        }
+
+        /**
+         * Remove the i-th point of this leaf, moving the last point into its
+         * place. Does not update the count.
+         */
+        private void swapRemove(int i, int dimensions) {
+            int last = count - 1;
+            for (int d = 0, offset = 0; d < dimensions; d++, offset += capacity) {
+                coords[offset + i] = coords[offset + last];
+            }
+            data[i] = data[last];
+            data[last] = null;
+            ids[i] = ids[last];
+        }
+
+        /**
+         * Whether removing the i-th point of this leaf could shrink its bounds
+         */
+        private boolean onBoundary(int i, int dimensions) {
+            for (int d = 0; d < dimensions; d++) {
+                double value = coords[d * capacity + i];
+                if (value == minLimit[d] || value == maxLimit[d] || Double.isNaN(value)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void clearBounds() {
+            minLimit = null;
+            maxLimit = null;
+            singularity = true;
+        }
+
+        private void recomputeLeafBounds(int dimensions) {
+            singularity = true;
+            for (int d = 0, offset = 0; d < dimensions; d++, offset += capacity) {
+                double min = coords[offset];
+                double max = min;
+                for (int i = 1; i < count && !Double.isNaN(min); i++) {
+                    double value = coords[offset + i];
+                    if (Double.isNaN(value)) {
+                        min = max = Double.NaN;
+                    }
+                    else if (value < min) {
+                        min = value;
+                    }
+                    else if (value > max) {
+                        max = value;
+                    }
+                }
+                minLimit[d] = min;
+                maxLimit[d] = max;
+                if (min != max) {
+                    singularity = false;
+                }
+            }
+        }
+
+        private void recomputeStemBounds(int dimensions) {
+            singularity = left.singularity && right.singularity;
+            for (int d = 0; d < dimensions; d++) {
+                double leftMin = left.minLimit[d], rightMin = right.minLimit[d];
+                double leftMax = left.maxLimit[d], rightMax = right.maxLimit[d];
+                if (Double.isNaN(leftMin) || Double.isNaN(rightMin)) {
+                    minLimit[d] = maxLimit[d] = Double.NaN;
+                    singularity = false;
+                }
+                else {
+                    minLimit[d] = Math.min(leftMin, rightMin);
+                    maxLimit[d] = Math.max(leftMax, rightMax);
+                    if (leftMin != rightMin) {
+                        singularity = false;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Take over the contents of a child, replacing this stem with it.
+         */
+        private void absorb(Node child) {
+            coords = child.coords;
+            data = child.data;
+            ids = child.ids;
+            capacity = child.capacity;
+            left = child.left;
+            right = child.right;
+            if (left != null) {
+                left.parent = this;
+                right.parent = this;
+            }
+            splitDimension = child.splitDimension;
+            splitValue = child.splitValue;
+            count = child.count;
+            maxId = child.maxId;
+            minLimit = child.minLimit;
+            maxLimit = child.maxLimit;
+            singularity = child.singularity;
+        }
+
+        /**
+         * Extends the bounds of this node do include a new location
+         */
+        private void extendBounds(double[] location, int dimensions) {
+            if (minLimit == null) {
+                minLimit = new double[dimensions];
+                System.arraycopy(location, 0, minLimit, 0, dimensions);
+                maxLimit = new double[dimensions];
+                System.arraycopy(location, 0, maxLimit, 0, dimensions);
+                return;
+            }
+
+            for (int i = 0; i < dimensions; i++) {
+                if (Double.isNaN(location[i])) {
+                    minLimit[i] = Double.NaN;
+                    maxLimit[i] = Double.NaN;
+                    singularity = false;
+                }
+                else if (minLimit[i] > location[i]) {
+                    minLimit[i] = location[i];
+                    singularity = false;
+                }
+                else if (maxLimit[i] < location[i]) {
+                    maxLimit[i] = location[i];
+                    singularity = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Class for tree with Weighted Squared Euclidean distancing
+     */
+    public static class WeightedSqrEuclid<T> extends FlatKdTree<T> {
+        private double[] weights;
+
+        public WeightedSqrEuclid(int dimensions, Integer sizeLimit) {
+            super(dimensions, sizeLimit);
+            this.weights = new double[dimensions];
+            Arrays.fill(this.weights, 1.0);
+        }
+
+        public void setWeights(double[] weights) {
+            this.weights = weights;
+        }
+
+        protected double getAxisWeightHint(int i) {
+            return weights[i];
+        }
+
+        protected void leafDistances(double[] coords, int capacity, int count, double[] location, double[] distances) {
+            Arrays.fill(distances, 0, count, 0);
+            int dimensions = location.length;
+            for (int d = 0, offset = 0; d < dimensions; d++, offset += capacity) {
+                double value = location[d];
+                double weight = weights[d];
+                for (int i = 0; i < count; i++) {
+                    double diff = (coords[offset + i] - value) * weight;
+                    if (!Double.isNaN(diff)) {
+                        distances[i] += diff * diff;
+                    }
+                }
+            }
+        }
+
+        protected double pointRegionDist(double[] point, double[] min, double[] max) {
+            double d = 0;
+
+            for (int i = 0; i < point.length; i++) {
+                double diff = 0;
+                if (point[i] > max[i]) {
+                    diff = (point[i] - max[i]) * weights[i];
+                }
+                else if (point[i] < min[i]) {
+                    diff = (point[i] - min[i]) * weights[i];
+                }
+
+                if (!Double.isNaN(diff)) {
+                    d += diff * diff;
+                }
+            }
+
+            return d;
+        }
+    }
+}
@@ -0,0 +1,303 @@
+package ags.utils;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ags.utils.FlatKdTree.NeighborBuffer;
+
+/**
+ * Copyright (c) 2012 - Voidious
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+public class FlatKdTreeTest {
+  private static final int DIMENSIONS = 6;
+  private static final double[] WEIGHTS = new double[]{3, 2, 1, 4, 0.5, 1};
+
+  @Test
+  public void testMatchesKdTree() {
+    assertMatchesKdTree(null, 3000, 25);
+  }
+
+  @Test
+  public void testMatchesKdTreeWithSizeLimit() {
+    assertMatchesKdTree(300, 2000, 25);
+  }
+
+  @Test
+  public void testSizeWithSizeLimit() {
+    FlatKdTree.WeightedSqrEuclid<Integer> tree = newFlatTree(100);
+    Random random = new Random(7);
+    for (int x = 0; x < 1000; x++) {
+      tree.addPoint(randomPoint(random), x);
+    }
+    assertEquals(100, tree.size());
+  }
+
+  @Test
+  public void testNeighborBufferReuse() {
+    FlatKdTree.WeightedSqrEuclid<Integer> tree = newFlatTree(null);
+    Random random = new Random(11);
+    for (int x = 0; x < 500; x++) {
+      tree.addPoint(randomPoint(random), x);
+    }
+    NeighborBuffer<Integer> buffer = new NeighborBuffer<Integer>(5);
+    tree.nearestNeighbor(randomPoint(random), 50, buffer);
+    assertEquals(50, buffer.size());
+    tree.nearestNeighbor(randomPoint(random), 3, buffer);
+    assertEquals(3, buffer.size());
+  }
+
+  @Test
+  public void testSequentialSorting() {
+    FlatKdTree.WeightedSqrEuclid<Integer> tree = newFlatTree(null);
+    Random random = new Random(13);
+    for (int x = 0; x < 500; x++) {
+      tree.addPoint(randomPoint(random), x);
+    }
+    List<KdTree.Entry<Integer>> entries =
+        tree.nearestNeighbor(randomPoint(random), 30, true);
+    assertEquals(30, entries.size());
+    for (int x = 1; x < entries.size(); x++) {
+      assertTrue(entries.get(x - 1).distance >= entries.get(x).distance);
+    }
+  }
+
+  @Test
+  public void testDuplicatePoints() {
+    FlatKdTree.WeightedSqrEuclid<Integer> tree = newFlatTree(null);
+    double[] point = new double[DIMENSIONS];
+    for (int x = 0; x < 200; x++) {
+      tree.addPoint(point, x);
+    }
+    NeighborBuffer<Integer> buffer = new NeighborBuffer<Integer>(10);
+    tree.nearestNeighbor(point, 10, buffer);
+    assertEquals(10, buffer.size());
+    assertEquals(0, buffer.distance(0), 0.0001);
+  }
+
+  @Test
+  public void testSlidingWindowMatchesBruteForce() {
+    int sizeLimit = 300;
+    FlatKdTree.WeightedSqrEuclid<Integer> tree = newFlatTree(sizeLimit);
+    List<double[]> points = new ArrayList<double[]>();
+    NeighborBuffer<Integer> buffer = new NeighborBuffer<Integer>(25);
+    Random random = new Random(5);
+    for (int x = 0; x < 5000; x++) {
+      double[] point = driftingPoint(random, x);
+      points.add(point);
+      tree.addPoint(point, x);
+      if (x % 37 == 0) {
+        double[] query = driftingPoint(random, x);
+        tree.nearestNeighbor(query, 25, buffer);
+        List<double[]> window = points.subList(
+            Math.max(0, points.size() - sizeLimit), points.size());
+        assertArrayEquals(bruteForceDistances(window, query, 25),
+            sortedDistances(buffer), 0.000001);
+        for (int y = 0; y < buffer.size(); y++) {
+          assertTrue(buffer.value(y) > x - sizeLimit);
+        }
+      }
+    }
+    assertEquals(sizeLimit, tree.size());
+  }
+
+  @Test
+  public void testSlidingWindowStaysCompact() {
+    FlatKdTree.WeightedSqrEuclid<Integer> tree = newFlatTree(200);
+    Random random = new Random(17);
+    int maxNodes = 0;
+    for (int x = 0; x < 20000; x++) {
+      tree.addPoint(driftingPoint(random, x), x);
+      if (x > 1000) {
+        maxNodes = Math.max(maxNodes, tree.nodeCount());
+      }
+    }
+    // a balanced tree of 200 points in buckets of 24 has ~31 nodes
+    assertTrue(maxNodes < 80);
+  }
+
+  @Test
+  public void testSlidingWindowDuplicatePoints() {
+    FlatKdTree.WeightedSqrEuclid<Integer> tree = newFlatTree(50);
+    double[] point = new double[DIMENSIONS];
+    NeighborBuffer<Integer> buffer = new NeighborBuffer<Integer>(50);
+    for (int x = 0; x < 500; x++) {
+      tree.addPoint(x % 100 < 50 ? point : new double[]{1, 1, 1, 1, 1, 1}, x);
+    }
+    tree.nearestNeighbor(point, 50, buffer);
+    assertEquals(50, buffer.size());
+    assertEquals(50, tree.size());
+    for (int y = 0; y < buffer.size(); y++) {
+      assertTrue(buffer.value(y) >= 450);
+    }
+  }
+
+  @Test
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  public void testBatchedSearchMatchesSingleSearches() {
+    FlatKdTree.WeightedSqrEuclid<Integer> tree = newFlatTree(1000);
+    Random random = new Random(19);
+    for (int x = 0; x < 3000; x++) {
+      tree.addPoint(driftingPoint(random, x), x);
+    }
+    int numQueries = 7;
+    double[][] queries = new double[numQueries][];
+    int[] counts = new int[numQueries];
+    NeighborBuffer<Integer>[] batched = new NeighborBuffer[numQueries];
+    for (int x = 0; x < numQueries; x++) {
+      queries[x] = (x == 3) ? queries[2] : driftingPoint(random, 3000 - x);
+      counts[x] = (x == 5) ? 0 : 1 + x * 15;
+      batched[x] = new NeighborBuffer<Integer>(1);
+    }
+    tree.nearestNeighbor(queries, counts, batched, numQueries);
+
+    NeighborBuffer<Integer> single = new NeighborBuffer<Integer>(1);
+    for (int x = 0; x < numQueries; x++) {
+      tree.nearestNeighbor(queries[x], counts[x], single);
+      assertEquals(single.size(), batched[x].size());
+      for (int y = 0; y < single.size(); y++) {
+        assertEquals(single.id(y), batched[x].id(y));
+        assertEquals(single.distance(y), batched[x].distance(y), 0);
+      }
+    }
+  }
+
+  @Test
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  public void testBatchedSearchWithRecentMinIds() {
+    FlatKdTree.WeightedSqrEuclid<Integer> tree = newFlatTree(null);
+    Random random = new Random(23);
+    int size = 1000;
+    for (int x = 0; x < size; x++) {
+      tree.addPoint(randomPoint(random), x);
+    }
+    // Most queries only see a few of the newest points, so the near side
+    // of a split often has nothing in their window.
+    int numQueries = 200;
+    double[][] queries = new double[numQueries][];
+    int[] counts = new int[numQueries];
+    int[] minIds = new int[numQueries];
+    NeighborBuffer<Integer>[] batched = new NeighborBuffer[numQueries];
+    int[] windows = {1, 5, 20, 100, size};
+    for (int x = 0; x < numQueries; x++) {
+      queries[x] = randomPoint(random);
+      counts[x] = 10;
+      minIds[x] = size - windows[x % windows.length];
+      batched[x] = new NeighborBuffer<Integer>(1);
+    }
+    tree.nearestNeighbor(queries, counts, minIds, batched, numQueries);
+
+    NeighborBuffer<Integer> single = new NeighborBuffer<Integer>(1);
+    for (int x = 0; x < numQueries; x++) {
+      tree.nearestNeighbor(queries[x], counts[x], minIds[x], single);
+      assertEquals(Math.min(10, windows[x % windows.length]), single.size());
+      assertEquals(single.size(), batched[x].size());
+      for (int y = 0; y < single.size(); y++) {
+        assertEquals(single.id(y), batched[x].id(y));
+        assertEquals(single.distance(y), batched[x].distance(y), 0);
+      }
+    }
+  }
+
+  private void assertMatchesKdTree(Integer sizeLimit, int points, int k) {
+    KdTree.WeightedSqrEuclid<Integer> kdTree =
+        new KdTree.WeightedSqrEuclid<Integer>(DIMENSIONS, sizeLimit);
+    kdTree.setWeights(WEIGHTS);
+    FlatKdTree.WeightedSqrEuclid<Integer> flatTree = newFlatTree(sizeLimit);
+    NeighborBuffer<Integer> buffer = new NeighborBuffer<Integer>(k);
+    Random random = new Random(3);
+    for (int x = 0; x < points; x++) {
+      double[] point = randomPoint(random);
+      kdTree.addPoint(point, x);
+      flatTree.addPoint(point, x);
+      if (x % 50 == 0) {
+        double[] query = randomPoint(random);
+        List<KdTree.Entry<Integer>> expected =
+            kdTree.nearestNeighbor(query, k, false);
+        flatTree.nearestNeighbor(query, k, buffer);
+        assertEquals(expected.size(), buffer.size());
+        assertArrayEquals(sortedDistances(expected), sortedDistances(buffer),
+            0.000001);
+      }
+    }
+  }
+
+  private double[] bruteForceDistances(
+      List<double[]> points, double[] query, int k) {
+    double[] distances = new double[points.size()];
+    for (int x = 0; x < distances.length; x++) {
+      double[] point = points.get(x);
+      for (int y = 0; y < DIMENSIONS; y++) {
+        double diff = (point[y] - query[y]) * WEIGHTS[y];
+        distances[x] += diff * diff;
+      }
+    }
+    Arrays.sort(distances);
+    return Arrays.copyOf(distances, Math.min(k, distances.length));
+  }
+
+  private double[] sortedDistances(List<KdTree.Entry<Integer>> entries) {
+    double[] distances = new double[entries.size()];
+    for (int x = 0; x < distances.length; x++) {
+      distances[x] = entries.get(x).distance;
+    }
+    Arrays.sort(distances);
+    return distances;
+  }
+
+  private double[] sortedDistances(NeighborBuffer<Integer> buffer) {
+    double[] distances = new double[buffer.size()];
+    for (int x = 0; x < distances.length; x++) {
+      distances[x] = buffer.distance(x);
+    }
+    Arrays.sort(distances);
+    return distances;
+  }
+
+  private FlatKdTree.WeightedSqrEuclid<Integer> newFlatTree(Integer sizeLimit) {
+    FlatKdTree.WeightedSqrEuclid<Integer> tree =
+        new FlatKdTree.WeightedSqrEuclid<Integer>(DIMENSIONS, sizeLimit);
+    tree.setWeights(WEIGHTS);
+    return tree;
+  }
+
+  // clustered around a center that wanders as points are added
+  private double[] driftingPoint(Random random, int x) {
+    double[] point = new double[DIMENSIONS];
+    for (int y = 0; y < DIMENSIONS; y++) {
+      point[y] = Math.sin(x / 400.0 + y) + random.nextGaussian() * 0.1;
+    }
+    return point;
+  }
+
+  private double[] randomPoint(Random random) {
+    double[] point = new double[DIMENSIONS];
+    for (int x = 0; x < DIMENSIONS; x++) {
+      point[x] = random.nextDouble();
+    }
+    return point;
+  }
+}
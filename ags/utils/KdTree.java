@@ -22,8 +22,14 @@ package ags.utils;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.NoSuchElementException;
+
+import ags.utils.dataStructures.BinaryHeap;
 
 /**
  * An efficient well-optimized kd-tree
@@ -34,6 +40,10 @@ import java.util.List;
 // MODIFIED by Voidious, 2011:
 // - add find farthest neighbor search
 // - also check cursor != null in removeOld
+// Later changes:
+// - Entry constructor is package-private, for use by FlatKdTree
+// - add radius search and best-first nearest neighbor iterator
+// - removeOld also updates the root's count, so size() respects sizeLimit
 public abstract class KdTree<T> {
     // Static variables
     private static final int           bucketSize = 24;
@@ -282,7 +292,7 @@ public abstract class KdTree<T> {
                 do {
                     cursor.locationCount--;
                     cursor = cursor.parent;
-                } while (cursor != null && cursor.parent != null);
+                } while (cursor != null);
                 return;
             }
         }
@@ -303,7 +313,7 @@ public abstract class KdTree<T> {
         public final double distance;
         public final T      value;
 
-        private Entry(double distance, T value) {
+        Entry(double distance, T value) {
             this.distance = distance;
             this.value = value;
         }
@@ -519,6 +529,166 @@ public abstract class KdTree<T> {
         return results;
     }
 
+    /**
+     * Calculates all points within 'radius' of 'location', in the tree's own
+     * distance metric (eg squared distance for SqrEuclid)
+     */
+    @SuppressWarnings("unchecked")
+    public List<Entry<T>> radiusSearch(double[] location, double radius, boolean sequentialSorting) {
+        ArrayList<Entry<T>> results = new ArrayList<Entry<T>>();
+        if (locationCount == 0) {
+            return results;
+        }
+
+        KdTree<T> cursor = this;
+        cursor.status = Status.NONE;
+
+        do {
+            if (cursor.status == Status.ALLVISITED) {
+                // At a fully visited part. Move up the tree
+                cursor = cursor.parent;
+                continue;
+            }
+
+            if (cursor.status == Status.NONE && cursor.locations != null) {
+                // At a leaf. Use the data.
+                if (cursor.locationCount > 0) {
+                    if (cursor.singularity) {
+                        double dist = pointDist(cursor.locations[0], location);
+                        if (dist <= radius) {
+                            for (int i = 0; i < cursor.locationCount; i++) {
+                                results.add(new Entry<T>(dist, (T)cursor.data[i]));
+                            }
+                        }
+                    }
+                    else {
+                        for (int i = 0; i < cursor.locationCount; i++) {
+                            double dist = pointDist(cursor.locations[i], location);
+                            if (dist <= radius) {
+                                results.add(new Entry<T>(dist, (T)cursor.data[i]));
+                            }
+                        }
+                    }
+                }
+
+                if (cursor.parent == null) {
+                    break;
+                }
+                cursor = cursor.parent;
+                continue;
+            }
+
+            // Going to descend
+            KdTree<T> nextCursor = null;
+            if (cursor.status == Status.NONE) {
+                nextCursor = cursor.left;
+                cursor.status = Status.LEFTVISITED;
+            }
+            else if (cursor.status == Status.LEFTVISITED) {
+                nextCursor = cursor.right;
+                cursor.status = Status.ALLVISITED;
+            }
+
+            // Only descend into regions that reach within the radius
+            if (nextCursor.locationCount == 0
+                    || pointRegionDist(location, nextCursor.minLimit, nextCursor.maxLimit) > radius) {
+                continue;
+            }
+
+            // Descend down the tree
+            cursor = nextCursor;
+            cursor.status = Status.NONE;
+        } while (cursor.parent != null || cursor.status != Status.ALLVISITED);
+
+        if (sequentialSorting) {
+            Collections.sort(results, new Comparator<Entry<T>>() {
+                @Override
+                public int compare(Entry<T> e1, Entry<T> e2) {
+                    return Double.compare(e1.distance, e2.distance);
+                }
+            });
+        }
+
+        return results;
+    }
+
+    /**
+     * Iterates over the points nearest to 'location' first, searching only as
+     * much of the tree as it takes to find each one. So a caller can stop
+     * once the rest can't matter, instead of asking for a fixed count up
+     * front. Adding points while iterating isn't supported.
+     */
+    public Iterator<Entry<T>> nearestNeighborIterator(double[] location) {
+        return new NearestNeighborIterator<T>(this, location);
+    }
+
+    /**
+     * Best-first search: regions are expanded in order of their distance to
+     * the search point, and a point is returned once no unexpanded region
+     * could hold anything nearer.
+     */
+    private static class NearestNeighborIterator<T> implements Iterator<Entry<T>> {
+        private final KdTree<T>                     tree;
+        private final double[]                      location;
+        private final BinaryHeap.Min<KdTree<T>>     pendingRegions;
+        private final BinaryHeap.Min<T>             evaluatedPoints;
+
+        private NearestNeighborIterator(KdTree<T> tree, double[] location) {
+            this.tree = tree;
+            this.location = location;
+            this.pendingRegions = new BinaryHeap.Min<KdTree<T>>();
+            this.evaluatedPoints = new BinaryHeap.Min<T>();
+            if (tree.locationCount > 0) {
+                pendingRegions.offer(0, tree);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return pendingRegions.size() > 0 || evaluatedPoints.size() > 0;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Entry<T> next() {
+            while (pendingRegions.size() > 0 && (evaluatedPoints.size() == 0
+                    || pendingRegions.getMinKey() < evaluatedPoints.getMinKey())) {
+                KdTree<T> region = pendingRegions.getMin();
+                pendingRegions.removeMin();
+                if (region.locations != null) {
+                    // At a leaf. Evaluate its points.
+                    for (int i = 0; i < region.locationCount; i++) {
+                        evaluatedPoints.offer(tree.pointDist(region.locations[i], location),
+                                (T)region.data[i]);
+                    }
+                }
+                else {
+                    offerRegion(region.left);
+                    offerRegion(region.right);
+                }
+            }
+
+            if (evaluatedPoints.size() == 0) {
+                throw new NoSuchElementException();
+            }
+            Entry<T> entry = new Entry<T>(evaluatedPoints.getMinKey(), evaluatedPoints.getMin());
+            evaluatedPoints.removeMin();
+            return entry;
+        }
+
+        private void offerRegion(KdTree<T> region) {
+            if (region.locationCount > 0) {
+                pendingRegions.offer(tree.pointRegionDist(location, region.minLimit, region.maxLimit),
+                        region);
+            }
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
     // Override in subclasses
     protected abstract double pointDist(double[] p1, double[] p2);
 
@@ -0,0 +1,183 @@
+package ags.utils;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Copyright (c) 2012 - Voidious
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+public class KdTreeTest {
+  private static final int DIMENSIONS = 6;
+  private static final double[] WEIGHTS = new double[]{3, 2, 1, 4, 0.5, 1};
+
+  @Test
+  public void testRadiusSearchMatchesBruteForce() {
+    List<double[]> points = new ArrayList<double[]>();
+    KdTree.WeightedSqrEuclid<Integer> tree = newTree(points, null, 3000, 21);
+    Random random = new Random(22);
+    for (int x = 0; x < 50; x++) {
+      double[] query = randomPoint(random);
+      double radius = random.nextDouble() * 2;
+      List<KdTree.Entry<Integer>> entries =
+          tree.radiusSearch(query, radius, true);
+      double[] expected = bruteForceDistances(points, query);
+      int numWithin = 0;
+      while (numWithin < expected.length && expected[numWithin] <= radius) {
+        numWithin++;
+      }
+      assertEquals(numWithin, entries.size());
+      for (int y = 0; y < entries.size(); y++) {
+        assertEquals(expected[y], entries.get(y).distance, 0.000001);
+        assertEquals(entries.get(y).distance, distance(
+            points.get(entries.get(y).value), query), 0.000001);
+      }
+    }
+  }
+
+  @Test
+  public void testRadiusSearchWithSizeLimit() {
+    List<double[]> points = new ArrayList<double[]>();
+    KdTree.WeightedSqrEuclid<Integer> tree = newTree(points, 300, 2000, 23);
+    List<KdTree.Entry<Integer>> entries =
+        tree.radiusSearch(randomPoint(new Random(24)), 1000, false);
+    assertEquals(300, entries.size());
+    for (KdTree.Entry<Integer> entry : entries) {
+      assertTrue(entry.value >= 1700);
+    }
+  }
+
+  @Test
+  public void testRadiusSearchEmptyTree() {
+    KdTree.WeightedSqrEuclid<Integer> tree =
+        new KdTree.WeightedSqrEuclid<Integer>(DIMENSIONS, null);
+    tree.setWeights(WEIGHTS);
+    assertTrue(tree.radiusSearch(new double[DIMENSIONS], 1, true).isEmpty());
+    assertFalse(tree.nearestNeighborIterator(new double[DIMENSIONS]).hasNext());
+  }
+
+  @Test
+  public void testIteratorMatchesNearestNeighbor() {
+    List<double[]> points = new ArrayList<double[]>();
+    KdTree.WeightedSqrEuclid<Integer> tree = newTree(points, null, 3000, 25);
+    Random random = new Random(26);
+    for (int x = 0; x < 30; x++) {
+      double[] query = randomPoint(random);
+      List<KdTree.Entry<Integer>> nearest =
+          tree.nearestNeighbor(query, 40, true);
+      Iterator<KdTree.Entry<Integer>> iterator =
+          tree.nearestNeighborIterator(query);
+      // nearestNeighbor sorts farthest first
+      for (int y = nearest.size() - 1; y >= 0; y--) {
+        assertTrue(iterator.hasNext());
+        assertEquals(nearest.get(y).distance, iterator.next().distance, 0);
+      }
+    }
+  }
+
+  @Test
+  public void testIteratorVisitsEveryPointInOrder() {
+    List<double[]> points = new ArrayList<double[]>();
+    KdTree.WeightedSqrEuclid<Integer> tree = newTree(points, 500, 1500, 27);
+    double[] query = randomPoint(new Random(28));
+    Iterator<KdTree.Entry<Integer>> iterator =
+        tree.nearestNeighborIterator(query);
+    double lastDistance = 0;
+    boolean[] seen = new boolean[1500];
+    int count = 0;
+    while (iterator.hasNext()) {
+      KdTree.Entry<Integer> entry = iterator.next();
+      assertTrue(entry.distance >= lastDistance);
+      assertFalse(seen[entry.value]);
+      seen[entry.value] = true;
+      lastDistance = entry.distance;
+      count++;
+    }
+    assertEquals(500, count);
+  }
+
+  @Test
+  public void testIteratorDuplicatePoints() {
+    KdTree.WeightedSqrEuclid<Integer> tree =
+        new KdTree.WeightedSqrEuclid<Integer>(DIMENSIONS, null);
+    tree.setWeights(WEIGHTS);
+    double[] point = new double[DIMENSIONS];
+    for (int x = 0; x < 100; x++) {
+      tree.addPoint(point, x);
+    }
+    Iterator<KdTree.Entry<Integer>> iterator =
+        tree.nearestNeighborIterator(point);
+    int count = 0;
+    while (iterator.hasNext()) {
+      assertEquals(0, iterator.next().distance, 0);
+      count++;
+    }
+    assertEquals(100, count);
+    assertEquals(100, tree.radiusSearch(point, 0, false).size());
+  }
+
+  private static KdTree.WeightedSqrEuclid<Integer> newTree(
+      List<double[]> points, Integer sizeLimit, int numPoints, long seed) {
+    KdTree.WeightedSqrEuclid<Integer> tree =
+        new KdTree.WeightedSqrEuclid<Integer>(DIMENSIONS, sizeLimit);
+    tree.setWeights(WEIGHTS);
+    Random random = new Random(seed);
+    for (int x = 0; x < numPoints; x++) {
+      double[] point = randomPoint(random);
+      points.add(point);
+      tree.addPoint(point, x);
+    }
+    return tree;
+  }
+
+  private static double[] bruteForceDistances(
+      List<double[]> points, double[] query) {
+    double[] distances = new double[points.size()];
+    for (int x = 0; x < points.size(); x++) {
+      distances[x] = distance(points.get(x), query);
+    }
+    Arrays.sort(distances);
+    return distances;
+  }
+
+  private static double distance(double[] p1, double[] p2) {
+    double distance = 0;
+    for (int x = 0; x < DIMENSIONS; x++) {
+      double diff = (p1[x] - p2[x]) * WEIGHTS[x];
+      distance += diff * diff;
+    }
+    return distance;
+  }
+
+  private static double[] randomPoint(Random random) {
+    double[] point = new double[DIMENSIONS];
+    for (int x = 0; x < DIMENSIONS; x++) {
+      point[x] = random.nextDouble();
+    }
+    return point;
+  }
+}
@@ -0,0 +1,135 @@
+package ags.utils;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import voidious.move.formulas.NormalFormula;
+import voidious.utils.BattleData;
+import voidious.utils.DistanceFormula;
+import ags.utils.FlatKdTree.NeighborBuffer;
+import ags.utils.dataStructures.MaxHeap;
+import ags.utils.dataStructures.trees.thirdGenKD.DistanceFunction;
+import ags.utils.dataStructures.trees.thirdGenKD.SquareEuclideanDistanceFunction;
+
+/**
+ * Copyright (c) 2012 - Voidious
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+/**
+ * Nearest neighbor search in each kd-tree implementation, loaded with the
+ * same NormalFormula data points. The third generation tree has no weighted
+ * distance, so its points and queries are scaled by the weights up front,
+ * which gives the same neighbors.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KdTreeBenchmark {
+  private static final int K = 50;
+  private static final int NUM_QUERIES = 256;
+
+  @Param({"1000", "10000", "50000"})
+  public int size;
+
+  private KdTree.WeightedSqrEuclid<Integer> _kdTree;
+  private FlatKdTree.WeightedSqrEuclid<Integer> _flatKdTree;
+  private ags.utils.dataStructures.trees.thirdGenKD.KdTree<Integer>
+      _thirdGenKdTree;
+  private DistanceFunction _distanceFunction;
+  private double[][] _queries;
+  private double[][] _weightedQueries;
+  private NeighborBuffer<Integer> _neighbors;
+  private int _nextQuery;
+
+  @Setup
+  public void setUp() {
+    DistanceFormula formula = new NormalFormula();
+    BattleData battleData = new BattleData(size + 200);
+    double[][] dataPoints = battleData.dataPoints(formula, size);
+    int dimensions = formula.weights.length;
+
+    _kdTree = new KdTree.WeightedSqrEuclid<Integer>(dimensions, null);
+    _kdTree.setWeights(formula.weights);
+    _flatKdTree = new FlatKdTree.WeightedSqrEuclid<Integer>(dimensions, null);
+    _flatKdTree.setWeights(formula.weights);
+    _thirdGenKdTree =
+        new ags.utils.dataStructures.trees.thirdGenKD.KdTree<Integer>(
+            dimensions);
+    _distanceFunction = new SquareEuclideanDistanceFunction();
+    for (int x = 0; x < size; x++) {
+      _kdTree.addPoint(dataPoints[x], x);
+      _flatKdTree.addPoint(dataPoints[x], x);
+      _thirdGenKdTree.addPoint(weighted(dataPoints[x], formula.weights), x);
+    }
+
+    _queries = battleData.randomDataPoints(formula, NUM_QUERIES);
+    _weightedQueries = new double[NUM_QUERIES][];
+    for (int x = 0; x < NUM_QUERIES; x++) {
+      _weightedQueries[x] = weighted(_queries[x], formula.weights);
+    }
+    _neighbors = new NeighborBuffer<Integer>(K);
+    _nextQuery = 0;
+  }
+
+  @Benchmark
+  public List<KdTree.Entry<Integer>> kdTree() {
+    return _kdTree.nearestNeighbor(_queries[nextQuery()], K, false);
+  }
+
+  @Benchmark
+  public NeighborBuffer<Integer> flatKdTree() {
+    _flatKdTree.nearestNeighbor(_queries[nextQuery()], K, _neighbors);
+    return _neighbors;
+  }
+
+  @Benchmark
+  public MaxHeap<Integer> thirdGenKdTree() {
+    return _thirdGenKdTree.findNearestNeighbors(
+        _weightedQueries[nextQuery()], K, _distanceFunction);
+  }
+
+  private int nextQuery() {
+    _nextQuery = (_nextQuery + 1) % NUM_QUERIES;
+    return _nextQuery;
+  }
+
+  private static double[] weighted(double[] point, double[] weights) {
+    double[] weightedPoint = new double[point.length];
+    for (int x = 0; x < point.length; x++) {
+      weightedPoint[x] = point[x] * weights[x];
+    }
+    return weightedPoint;
+  }
+}
@@ -0,0 +1,128 @@
+package voidious.gun;
+
+import java.awt.geom.Point2D;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import voidious.gfx.RoboGraphic;
+import voidious.utils.BattleData;
+import voidious.utils.BattleField;
+import voidious.utils.DiaUtils;
+import voidious.utils.MovementPredictor;
+import voidious.utils.RobotState;
+import voidious.utils.Wave;
+
+/**
+ * Copyright (c) 2012 - Voidious
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+/**
+ * MeleeGun.aimAtEveryone against 9 enemies. Each enemy's Melee view is
+ * loaded with displacement vectors from its own recorded battle, seeded
+ * differently, so the enemies move differently and end up spread around
+ * the field.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MeleeGunBenchmark {
+  private static final int NUM_ENEMIES = 9;
+  private static final int BATTLE_TICKS = 2000;
+  private static final int LOGGED_WAVES = 600;
+  private static final double BULLET_POWER = 3.0;
+
+  private MeleeGun _meleeGun;
+  private Point2D.Double _myNextLocation;
+  private long _currentTime;
+  private GunEnemy _closestBot;
+
+  @Setup
+  public void setUp() {
+    BattleField battleField = new BattleField(800, 600);
+    MovementPredictor predictor = new MovementPredictor(battleField);
+    List<RoboGraphic> renderables = new ArrayList<RoboGraphic>();
+    GunDataManager gunDataManager = new GunDataManager(NUM_ENEMIES,
+        battleField, predictor, renderables, new ByteArrayOutputStream());
+    _meleeGun = new MeleeGun(gunDataManager, battleField, renderables);
+    _currentTime = BATTLE_TICKS - 1;
+    _myNextLocation = new Point2D.Double(400, 300);
+
+    double closestDistance = Double.POSITIVE_INFINITY;
+    for (int x = 0; x < NUM_ENEMIES; x++) {
+      BattleData battleData =
+          new BattleData(BattleData.DEFAULT_SEED + x, BATTLE_TICKS);
+      RobotState enemyState = battleData.enemyStates.get((int) _currentTime);
+      double distance = _myNextLocation.distance(enemyState.location);
+      String botName = "Enemy" + x;
+      GunEnemy gunData = new GunEnemy(botName, distance, 100,
+          enemyState.location, 1, _currentTime, enemyState.heading,
+          enemyState.velocity,
+          DiaUtils.absoluteBearing(_myNextLocation, enemyState.location),
+          battleField, predictor, renderables);
+      gunData.addViews(_meleeGun.newDataViews());
+
+      for (int y = 0; y < LOGGED_WAVES; y++) {
+        Wave w = battleData.myWave(BattleData.MIN_WAVE_TICK + (y * 2),
+            1.5 + battleData.random().nextDouble() * 1.5);
+        w.setEnemiesAlive(NUM_ENEMIES);
+        List<RobotState> waveBreakStates =
+            battleData.waveBreakStates(w, battleData.enemyStates);
+        if (!waveBreakStates.isEmpty()) {
+          RobotState breakState =
+              waveBreakStates.get(waveBreakStates.size() / 2);
+          gunData.logWave(w, w.displacementVector(breakState),
+              w.guessFactor(breakState.location), breakState.time, true);
+        }
+      }
+
+      Wave aimWave = battleData.myWave((int) _currentTime, BULLET_POWER);
+      aimWave.sourceLocation = _myNextLocation;
+      aimWave.setEnemiesAlive(NUM_ENEMIES);
+      gunData.lastWaveFired = aimWave;
+      gunDataManager.saveEnemy(botName, gunData);
+      if (distance < closestDistance) {
+        closestDistance = distance;
+        _closestBot = gunData;
+      }
+    }
+  }
+
+  @Benchmark
+  public double aimAtEveryone() {
+    return _meleeGun.aimAtEveryone(_myNextLocation, _currentTime, NUM_ENEMIES,
+        BULLET_POWER, _closestBot, false);
+  }
+}
@@ -0,0 +1,149 @@
+package voidious.gun;
+
+import java.awt.geom.Point2D;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ags.utils.FlatKdTree.NeighborBuffer;
+import voidious.gfx.RoboGraphic;
+import voidious.utils.BattleData;
+import voidious.utils.KnnView;
+import voidious.utils.RobotState;
+import voidious.utils.SpatialIndex;
+import voidious.utils.TimestampedFiringAngle;
+import voidious.utils.Wave;
+
+/**
+ * Copyright (c) 2012 - Voidious
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+/**
+ * The duel guns' own views, TripHammerKnnGun's one big view and
+ * AntiSurferGun's four windowed ones, searched as they are when aiming, on
+ * each SpatialIndex backend. The views are loaded with one wave per tick of
+ * the recorded battle.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SpatialIndexBenchmark {
+  private static final int NUM_QUERIES = 64;
+
+  @Param({"FLAT_KD_TREE", "KD_TREE", "THIRD_GEN_KD_TREE"})
+  public String backend;
+
+  @Param({"1000", "10000"})
+  public int size;
+
+  private KnnView<TimestampedFiringAngle> _tripHammerView;
+  private List<KnnView<TimestampedFiringAngle>> _antiSurferViews;
+  private Wave[] _aimWaves;
+  private NeighborBuffer<TimestampedFiringAngle> _neighbors;
+  private int _nextQuery;
+
+  @Setup
+  public void setUp() {
+    BattleData battleData = new BattleData(size + 200);
+    List<RoboGraphic> renderables = new ArrayList<RoboGraphic>();
+    GunDataManager gunDataManager = new GunDataManager(1,
+        battleData.battleField, battleData.predictor, renderables,
+        new ByteArrayOutputStream());
+    List<KnnView<TimestampedFiringAngle>> views =
+        new ArrayList<KnnView<TimestampedFiringAngle>>();
+    _tripHammerView = new TripHammerKnnGun(gunDataManager, renderables)
+        .newDataViews().get(0);
+    views.add(_tripHammerView);
+    _antiSurferViews = new AntiSurferGun(gunDataManager,
+        battleData.battleField, renderables).newDataViews();
+    views.addAll(_antiSurferViews);
+    for (KnnView<TimestampedFiringAngle> view : views) {
+      view.setBackend(SpatialIndex.Backend.valueOf(backend));
+    }
+
+    for (int x = 0; x < size; x++) {
+      Wave w = battleData.myWave(BattleData.MIN_WAVE_TICK + x,
+          1.5 + battleData.random().nextDouble() * 1.5);
+      TimestampedFiringAngle firingAngle = firingAngle(battleData, w);
+      for (KnnView<TimestampedFiringAngle> view : views) {
+        view.logWave(w, firingAngle);
+      }
+    }
+
+    _aimWaves = new Wave[NUM_QUERIES];
+    for (int x = 0; x < NUM_QUERIES; x++) {
+      _aimWaves[x] = battleData.myWave(BattleData.MIN_WAVE_TICK
+          + battleData.random().nextInt(size), 2.0);
+    }
+    _neighbors = new NeighborBuffer<TimestampedFiringAngle>(1);
+    _nextQuery = 0;
+  }
+
+  @Benchmark
+  public NeighborBuffer<TimestampedFiringAngle> tripHammer() {
+    _tripHammerView.nearestNeighbors(nextWave(), true, _neighbors);
+    return _neighbors;
+  }
+
+  @Benchmark
+  public int antiSurfer() {
+    Wave w = nextWave();
+    int neighbors = 0;
+    for (KnnView<TimestampedFiringAngle> view : _antiSurferViews) {
+      view.nearestNeighbors(w, true, _neighbors);
+      neighbors += _neighbors.size();
+    }
+    return neighbors;
+  }
+
+  private Wave nextWave() {
+    _nextQuery = (_nextQuery + 1) % NUM_QUERIES;
+    return _aimWaves[_nextQuery];
+  }
+
+  private static TimestampedFiringAngle firingAngle(
+      BattleData battleData, Wave w) {
+    List<RobotState> waveBreakStates =
+        battleData.waveBreakStates(w, battleData.enemyStates);
+    if (waveBreakStates.isEmpty()) {
+      return new TimestampedFiringAngle(
+          1, w.fireTime, 0, new Point2D.Double(0, 0));
+    }
+    RobotState breakState = waveBreakStates.get(waveBreakStates.size() / 2);
+    return new TimestampedFiringAngle(1, w.fireTime,
+        w.guessFactor(breakState.location), w.displacementVector(breakState));
+  }
+}
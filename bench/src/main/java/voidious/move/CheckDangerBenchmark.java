@@ -0,0 +1,160 @@
+package voidious.move;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import robocode.AdvancedRobot;
+import voidious.gfx.RoboGraphic;
+import voidious.gun.FireListener.FiredBullet;
+import voidious.move.SurfMover.SurfOption;
+import voidious.utils.BattleData;
+import voidious.utils.KnnView;
+import voidious.utils.PredictedPath;
+import voidious.utils.RobotState;
+import voidious.utils.RobotStateLog;
+import voidious.utils.TimestampedGuessFactor;
+import voidious.utils.Wave;
+
+/**
+ * Copyright (c) 2012 - Voidious
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+/**
+ * SurfMover.checkDanger for all three surf options, surfing 1 to 3 enemy
+ * waves, like one tick of surf(). The surf views are loaded with the guess
+ * factors I visited on earlier waves of the recorded battle. The neighbor
+ * cache stays warm between invocations, as it does between ticks, but the
+ * danger profiles are rebuilt each time, as they are each tick.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CheckDangerBenchmark {
+  private static final int BATTLE_TICKS = 3000;
+  private static final int LOGGED_WAVES = 300;
+  private static final int WAVE_INTERVAL = 10;
+  private static final double BULLET_POWER = 2.0;
+  private static final int ENEMY_SHOTS_FIRED = 300;
+  private static final int ENEMY_SHOTS_HIT = 36;
+
+  @Param({"1", "2", "3"})
+  public int waves;
+
+  private SurfMover _surfMover;
+  private MoveEnemy _duelEnemy;
+  private RobotState _myState;
+
+  @Setup
+  public void setUp() {
+    BattleData battleData = new BattleData(BATTLE_TICKS);
+    final long currentTime = surfTick(battleData);
+    RobotState enemyState = battleData.enemyStates.get(0);
+    _duelEnemy = new MoveEnemy(BattleData.ENEMY_NAME,
+        enemyState.location.distance(battleData.myStates.get(0).location),
+        100, enemyState.location, enemyState.heading, enemyState.velocity, 0,
+        1, 0, new ArrayList<RoboGraphic>(), battleData.battleField,
+        battleData.predictor, new PrintStream(new ByteArrayOutputStream()));
+    // A 12% hit rate, so the views that need one to be enabled are.
+    _duelEnemy.raw1v1ShotsFired = ENEMY_SHOTS_FIRED;
+    _duelEnemy.raw1v1ShotsHit = ENEMY_SHOTS_HIT;
+    _duelEnemy.weighted1v1ShotsHit = ENEMY_SHOTS_HIT;
+    RobotStateLog myStateLog = new RobotStateLog();
+    for (int x = 0; x <= currentTime; x++) {
+      _duelEnemy.setRobotState(battleData.enemyStates.get(x));
+      myStateLog.addState(battleData.myStates.get(x));
+    }
+
+    for (int x = 0; x < LOGGED_WAVES; x++) {
+      Wave w = battleData.enemyWave(BattleData.MIN_WAVE_TICK + (x * 5),
+          1.5 + battleData.random().nextDouble() * 1.5);
+      double guessFactor = battleData.visitGuessFactor(w);
+      for (KnnView<TimestampedGuessFactor> view : _duelEnemy.views.values()) {
+        if (view.logBulletHits || view.logVisits) {
+          view.logWave(w,
+              new TimestampedGuessFactor(1, w.fireTime, guessFactor));
+        }
+      }
+    }
+
+    for (int x = 3; x > 0; x--) {
+      int fireTick = (int) currentTime - 2 - ((x - 1) * WAVE_INTERVAL);
+      Wave w = battleData.enemyWave(fireTick, BULLET_POWER);
+      _duelEnemy.newMoveWave(w.sourceLocation, w.targetLocation, w.absBearing,
+          1, fireTick, BULLET_POWER, 100, w.targetHeading, w.targetVelocity,
+          w.targetVelocitySign, w.targetAccel, w.targetDl8t, w.targetDl20t,
+          w.targetDl40t, w.targetDchangeTime, w.targetVchangeTime);
+      _duelEnemy.updateFiringWave(fireTick + 1, BULLET_POWER, myStateLog,
+          new ArrayList<FiredBullet>());
+    }
+
+    AdvancedRobot robot = new AdvancedRobot() {
+      @Override
+      public long getTime() {
+        return currentTime;
+      }
+    };
+    _surfMover = new SurfMover(robot, battleData.battleField,
+        new ArrayList<RoboGraphic>(), new ByteArrayOutputStream());
+    _myState = battleData.myStates.get((int) currentTime);
+  }
+
+  @Benchmark
+  public double checkDanger() {
+    _surfMover.clearDangerProfiles();
+    double danger = 0;
+    for (SurfOption surfOption : SurfOption.values()) {
+      danger += _surfMover.checkDanger(_myState, _duelEnemy, _myState,
+          surfOption, true, Wave.FIRST_WAVE, waves, Double.POSITIVE_INFINITY,
+          new PredictedPath());
+    }
+    return danger;
+  }
+
+  /**
+   * A tick late in the battle where the bots are far enough apart that all
+   * three waves are still in the air.
+   */
+  private static long surfTick(BattleData battleData) {
+    for (int x = BATTLE_TICKS - 1; x > BATTLE_TICKS / 2; x--) {
+      if (battleData.myStates.get(x).location.distance(
+              battleData.enemyStates.get(x).location) > 450) {
+        return x;
+      }
+    }
+    return BATTLE_TICKS - 1;
+  }
+}
@@ -0,0 +1,246 @@
+package voidious.utils;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Copyright (c) 2012 - Voidious
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+/**
+ * A recorded synthetic 1v1 battle for the benchmarks: two bots orbiting each
+ * other on an 800x600 field with wall smoothing, random reversals and the
+ * occasional stop, driven by the real MovementPredictor. Everything is seeded,
+ * so every benchmark run sees the same battle, waves and data points.
+ */
+public class BattleData {
+  public static final long DEFAULT_SEED = 41L;
+  public static final String ENEMY_NAME = "Shadow";
+  public static final int MIN_WAVE_TICK = 41;
+
+  private static final double WALL_STICK = 160;
+  private static final double PREFERRED_DISTANCE = 450;
+  private static final double MAX_ATTACK_ANGLE = 0.4;
+
+  public final BattleField battleField;
+  public final MovementPredictor predictor;
+  public final List<RobotState> myStates;
+  public final List<RobotState> enemyStates;
+  private final Random _random;
+
+  public BattleData(int ticks) {
+    this(DEFAULT_SEED, ticks);
+  }
+
+  public BattleData(long seed, int ticks) {
+    battleField = new BattleField(800, 600);
+    predictor = new MovementPredictor(battleField);
+    myStates = new ArrayList<RobotState>(ticks);
+    enemyStates = new ArrayList<RobotState>(ticks);
+    _random = new Random(seed);
+    record(ticks);
+  }
+
+  public Random random() {
+    return _random;
+  }
+
+  public int ticks() {
+    return myStates.size();
+  }
+
+  /**
+   * A wave fired by the enemy on the given tick, aimed at where I was the
+   * tick before, with the same attributes MoveEnemy.newMoveWave sets.
+   */
+  public Wave enemyWave(int fireTick, double bulletPower) {
+    return newWave(enemyStates, myStates, fireTick, bulletPower);
+  }
+
+  /**
+   * A wave I fired at the enemy on the given tick, like a GunEnemy wave.
+   */
+  public Wave myWave(int fireTick, double bulletPower) {
+    return newWave(myStates, enemyStates, fireTick, bulletPower);
+  }
+
+  /**
+   * An enemy wave from a random tick that breaks before the recording ends.
+   */
+  public Wave randomEnemyWave() {
+    int fireTick = MIN_WAVE_TICK
+        + _random.nextInt(ticks() - MIN_WAVE_TICK - 100);
+    return enemyWave(fireTick, 1.5 + (_random.nextDouble() * 1.5));
+  }
+
+  /**
+   * My states that an enemy wave passes over, as WaveManager would report
+   * them for the wave breaking.
+   */
+  public List<RobotState> waveBreakStates(Wave w) {
+    return waveBreakStates(w, myStates);
+  }
+
+  public List<RobotState> waveBreakStates(
+      Wave w, List<RobotState> targetStates) {
+    List<RobotState> waveBreakStates = new ArrayList<RobotState>();
+    for (int x = (int) w.fireTime; x < ticks(); x++) {
+      Wave.WavePosition position = w.checkWavePosition(targetStates.get(x));
+      if (position == Wave.WavePosition.GONE) {
+        break;
+      } else if (position.isBreaking()) {
+        waveBreakStates.add(targetStates.get(x));
+      }
+    }
+    return waveBreakStates;
+  }
+
+  /**
+   * The guess factor I actually visited on this wave.
+   */
+  public double visitGuessFactor(Wave w) {
+    List<RobotState> waveBreakStates = waveBreakStates(w);
+    if (waveBreakStates.isEmpty()) {
+      return 0;
+    }
+    return w.guessFactor(w.preciseIntersection(waveBreakStates).angle);
+  }
+
+  /**
+   * Data points from a wave on each consecutive tick, like a gun logging a
+   * wave every tick. The recording needs count + 141 ticks.
+   */
+  public double[][] dataPoints(DistanceFormula formula, int count) {
+    double[][] dataPoints = new double[count][];
+    for (int x = 0; x < count; x++) {
+      Wave w = enemyWave(MIN_WAVE_TICK + x,
+          1.5 + (_random.nextDouble() * 1.5));
+      dataPoints[x] = formula.dataPointFromWave(w, false);
+    }
+    return dataPoints;
+  }
+
+  public double[][] randomDataPoints(DistanceFormula formula, int count) {
+    double[][] dataPoints = new double[count][];
+    for (int x = 0; x < count; x++) {
+      dataPoints[x] = formula.dataPointFromWave(randomEnemyWave(), false);
+    }
+    return dataPoints;
+  }
+
+  private Wave newWave(List<RobotState> sourceStates,
+      List<RobotState> targetStates, int fireTick, double bulletPower) {
+    RobotState targetState = targetStates.get(fireTick - 1);
+    RobotState previousState = targetStates.get(fireTick - 2);
+    Point2D.Double sourceLocation = sourceStates.get(fireTick).location;
+    Wave w = new Wave(ENEMY_NAME, sourceLocation, targetState.location, 1,
+        fireTick, bulletPower, targetState.heading,
+        Math.abs(targetState.velocity),
+        DiaUtils.nonZeroSign(targetState.velocity), battleField, predictor)
+            .setAccel(DiaUtils.accel(
+                targetState.velocity, previousState.velocity))
+            .setDistance(sourceLocation.distance(targetState.location))
+            .setDchangeTime(ticksSinceReverse(targetStates, fireTick - 1))
+            .setVchangeTime(
+                ticksSinceVelocityChange(targetStates, fireTick - 1))
+            .setDistanceLast8Ticks(
+                distanceLastTicks(targetStates, fireTick - 1, 8))
+            .setDistanceLast20Ticks(
+                distanceLastTicks(targetStates, fireTick - 1, 20))
+            .setDistanceLast40Ticks(
+                distanceLastTicks(targetStates, fireTick - 1, 40))
+            .setTargetEnergy(100)
+            .setSourceEnergy(100);
+    w.firingWave = true;
+    w.setWallDistances(Wave.WallDistanceStyle.ORBITAL);
+    return w;
+  }
+
+  private void record(int ticks) {
+    RobotState myState = RobotState.newBuilder()
+        .setLocation(new Point2D.Double(200, 300))
+        .setHeading(0)
+        .setVelocity(0)
+        .setTime(0)
+        .build();
+    RobotState enemyState = RobotState.newBuilder()
+        .setLocation(new Point2D.Double(600, 300))
+        .setHeading(Math.PI)
+        .setVelocity(0)
+        .setTime(0)
+        .build();
+    int myOrientation = 1;
+    int enemyOrientation = -1;
+    double myMaxVelocity = 8;
+    for (int x = 0; x < ticks; x++) {
+      myStates.add(myState);
+      enemyStates.add(enemyState);
+      if (_random.nextDouble() < 0.04) {
+        myOrientation *= -1;
+      }
+      if (_random.nextDouble() < 0.06) {
+        enemyOrientation *= -1;
+      }
+      if (_random.nextDouble() < 0.03) {
+        myMaxVelocity = (myMaxVelocity == 8) ? _random.nextInt(8) : 8;
+      }
+      RobotState nextMyState =
+          orbit(myState, enemyState.location, myOrientation, myMaxVelocity);
+      enemyState = orbit(enemyState, myState.location, enemyOrientation, 8);
+      myState = nextMyState;
+    }
+  }
+
+  private RobotState orbit(RobotState state, Point2D.Double orbitCenter,
+      int orientation, double maxVelocity) {
+    double distance = state.location.distance(orbitCenter);
+    double attackAngle = DiaUtils.limit(-MAX_ATTACK_ANGLE,
+        (distance - PREFERRED_DISTANCE) / 500, MAX_ATTACK_ANGLE);
+    return predictor.nextPerpendicularWallSmoothedLocation(state,
+        DiaUtils.absoluteBearing(orbitCenter, state.location), maxVelocity,
+        attackAngle, orientation, WALL_STICK, false);
+  }
+
+  private long ticksSinceReverse(List<RobotState> states, int tick) {
+    int sign = DiaUtils.nonZeroSign(states.get(tick).velocity);
+    int x = tick;
+    while (x > 0 && DiaUtils.nonZeroSign(states.get(x - 1).velocity) == sign) {
+      x--;
+    }
+    return tick - x;
+  }
+
+  private long ticksSinceVelocityChange(List<RobotState> states, int tick) {
+    double velocity = states.get(tick).velocity;
+    int x = tick;
+    while (x > 0 && Math.abs(states.get(x - 1).velocity - velocity) < 0.5) {
+      x--;
+    }
+    return tick - x;
+  }
+
+  private double distanceLastTicks(
+      List<RobotState> states, int tick, int ticks) {
+    return states.get(tick).location.distance(
+        states.get(Math.max(0, tick - ticks)).location);
+  }
+}
@@ -0,0 +1,105 @@
+package voidious.utils;
+
+import java.awt.geom.Point2D;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Copyright (c) 2012 - Voidious
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+/**
+ * Precise escape angles for waves from the recorded battle, both through the
+ * EscapeAngleCache and straight through the simulation. The cached numbers
+ * are for the repeated lookups the gun and movement make of the same waves.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PreciseEscapeAngleBenchmark {
+  private static final int NUM_WAVES = 256;
+
+  private MovementPredictor _predictor;
+  private Point2D.Double[] _sourceLocations;
+  private long[] _fireTimes;
+  private double[] _bulletSpeeds;
+  private RobotState[] _startStates;
+  private int[] _directions;
+  private int _nextWave;
+
+  @Setup
+  public void setUp() {
+    BattleData battleData = new BattleData(3000);
+    _predictor = battleData.predictor;
+    _sourceLocations = new Point2D.Double[NUM_WAVES];
+    _fireTimes = new long[NUM_WAVES];
+    _bulletSpeeds = new double[NUM_WAVES];
+    _startStates = new RobotState[NUM_WAVES];
+    _directions = new int[NUM_WAVES];
+    for (int x = 0; x < NUM_WAVES; x++) {
+      Wave w = battleData.randomEnemyWave();
+      _sourceLocations[x] = w.sourceLocation;
+      _fireTimes[x] = w.fireTime;
+      _bulletSpeeds[x] = w.bulletSpeed();
+      _startStates[x] = RobotState.newBuilder()
+          .setLocation(w.targetLocation)
+          .setHeading(w.targetHeading)
+          .setVelocity(w.targetVelocity)
+          .setTime(w.fireTime)
+          .build();
+      _directions[x] = w.orbitDirection * ((x % 2 == 0) ? 1 : -1);
+    }
+    _nextWave = 0;
+  }
+
+  @Benchmark
+  public MaxEscapeTarget cached() {
+    int x = nextWave();
+    return _predictor.preciseEscapeAngle(_directions[x], _sourceLocations[x],
+        _fireTimes[x], _bulletSpeeds[x], _startStates[x],
+        Wave.PRECISE_MEA_WALL_STICK);
+  }
+
+  @Benchmark
+  public MaxEscapeTarget uncached() {
+    int x = nextWave();
+    return _predictor.calculatePreciseEscapeAngle(_directions[x],
+        _sourceLocations[x], _fireTimes[x], _bulletSpeeds[x], _startStates[x],
+        0, Wave.PRECISE_MEA_WALL_STICK);
+  }
+
+  private int nextWave() {
+    _nextWave = (_nextWave + 1) % NUM_WAVES;
+    return _nextWave;
+  }
+}
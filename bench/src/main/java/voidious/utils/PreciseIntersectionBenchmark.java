@@ -0,0 +1,78 @@
+package voidious.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Copyright (c) 2012 - Voidious
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+/**
+ * Wave.preciseIntersection over the states where each recorded wave actually
+ * passed my bot.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PreciseIntersectionBenchmark {
+  private static final int NUM_WAVES = 256;
+
+  private Wave[] _waves;
+  private List<List<RobotState>> _waveBreakStates;
+  private int _nextWave;
+
+  @Setup
+  public void setUp() {
+    BattleData battleData = new BattleData(3000);
+    _waves = new Wave[NUM_WAVES];
+    _waveBreakStates = new ArrayList<List<RobotState>>(NUM_WAVES);
+    for (int x = 0; x < NUM_WAVES; x++) {
+      List<RobotState> waveBreakStates;
+      do {
+        _waves[x] = battleData.randomEnemyWave();
+        waveBreakStates = battleData.waveBreakStates(_waves[x]);
+      } while (waveBreakStates.isEmpty());
+      _waveBreakStates.add(waveBreakStates);
+    }
+    _nextWave = 0;
+  }
+
+  @Benchmark
+  public Wave.Intersection preciseIntersection() {
+    _nextWave = (_nextWave + 1) % NUM_WAVES;
+    return _waves[_nextWave].preciseIntersection(
+        _waveBreakStates.get(_nextWave));
+  }
+}
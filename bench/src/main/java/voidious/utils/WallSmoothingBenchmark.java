@@ -0,0 +1,91 @@
+package voidious.utils;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Copyright (c) 2012 - Voidious
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+/**
+ * BattleField.wallSmoothing near the walls of an 800x600 field, with and
+ * without the fast wall smoothing table.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WallSmoothingBenchmark {
+  private static final int NUM_SAMPLES = 1024;
+  private static final double[] WALL_STICKS = {100, 120, 160};
+
+  @Param({"false", "true"})
+  public boolean fast;
+
+  private BattleField _battleField;
+  private double[][] _samples;
+  private int _nextSample;
+
+  @Setup
+  public void setUp() {
+    _battleField = new BattleField(800, 600).setFastWallSmoothing(fast);
+    Random random = new Random(BattleData.DEFAULT_SEED);
+    _samples = new double[NUM_SAMPLES][];
+    for (int x = 0; x < NUM_SAMPLES; x++) {
+      double wallStick = WALL_STICKS[random.nextInt(WALL_STICKS.length)];
+      double margin = 18 + (random.nextDouble() * wallStick * 1.2);
+      double sampleX = 18 + (random.nextDouble() * (_battleField.width - 36));
+      double sampleY =
+          18 + (random.nextDouble() * (_battleField.height - 36));
+      switch (random.nextInt(4)) {
+        case 0: sampleX = margin; break;
+        case 1: sampleX = _battleField.width - margin; break;
+        case 2: sampleY = margin; break;
+        default: sampleY = _battleField.height - margin;
+      }
+      _samples[x] = new double[]{sampleX, sampleY,
+          random.nextDouble() * 2 * Math.PI, random.nextBoolean() ? 1 : -1,
+          wallStick};
+    }
+    _nextSample = 0;
+  }
+
+  @Benchmark
+  public double wallSmoothing() {
+    _nextSample = (_nextSample + 1) % NUM_SAMPLES;
+    double[] sample = _samples[_nextSample];
+    return _battleField.wallSmoothing(
+        sample[0], sample[1], sample[2], (int) sample[3], sample[4]);
+  }
+}
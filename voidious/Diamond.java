@@ -20,6 +20,8 @@ import voidious.gun.DiamondFist;
 import voidious.move.DiamondWhoosh;
 import voidious.radar.DiamondEyes;
 import voidious.utils.ErrorLogger;
+import voidious.utils.TickProfiler;
+import voidious.utils.TickProfiler.Section;
 
 /**
  * Copyright (c) 2009-2012 - Voidious
@@ -64,17 +66,20 @@ public class Diamond extends AdvancedRobot {
   private static final boolean _TC = false;
   private static final boolean _MC = false;
   private static final boolean _LOG_ERRORS = true;
+  private static final boolean _PROFILE_TICKS = true;
 
   protected static DiamondEyes _radar;
   protected static DiamondWhoosh _move;
   private static DiamondFist _gun;
   protected static DiamondColors _gfx;
+  private static TickProfiler _profiler;
   private static double _randColors = Math.random();
 
   private double _maxVelocity;
 
   static {
     ErrorLogger.enabled = _LOG_ERRORS;
+    TickProfiler.enabled = _PROFILE_TICKS;
   }
 
   public void run() {
@@ -89,12 +94,19 @@ public class Diamond extends AdvancedRobot {
       while (true) {
         _gfx.updatePaintProcessing();
         if (!_TC) {
+          _profiler.start(Section.MOVE);
           _move.execute();
+          _profiler.stop();
         }
         if (!_MC) {
+          _profiler.start(Section.GUN);
           _gun.execute();
+          _profiler.stop();
         }
+        _profiler.start(Section.RADAR);
         _radar.execute();
+        _profiler.stop();
+        _profiler.endTick(getTime());
         execute();
       }
     } catch (RuntimeException re) {
@@ -103,6 +115,9 @@ public class Diamond extends AdvancedRobot {
   }
 
   private void initComponents() {
+    if (_profiler == null) {
+      _profiler = TickProfiler.getInstance();
+    }
     if (_radar == null) {
       _radar = new DiamondEyes(this, System.out);
     }
@@ -123,6 +138,7 @@ public class Diamond extends AdvancedRobot {
     _radar.initRound(this);
     _move.initRound(this);
     _gun.initRound(this);
+    _profiler.initRound();
   }
 
   private void initColors() {
@@ -162,12 +178,18 @@ public class Diamond extends AdvancedRobot {
 
   public void onScannedRobot(ScannedRobotEvent e) {
     try {
+      _profiler.start(Section.RADAR);
       _radar.onScannedRobot(e);
+      _profiler.stop();
       if (!_TC) {
+        _profiler.start(Section.MOVE);
         _move.onScannedRobot(e);
+        _profiler.stop();
       }
       if (!_MC) {
+        _profiler.start(Section.GUN);
         _gun.onScannedRobot(e);
+        _profiler.stop();
       }
     } catch (RuntimeException re) {
       logAndRethrowException(re);
@@ -236,6 +258,7 @@ public class Diamond extends AdvancedRobot {
       if (!_TC) {
         _move.onWin(e);
       }
+      _profiler.printRoundSummary(System.out);
     } catch (RuntimeException re) {
       logAndRethrowException(re);
     }
@@ -249,6 +272,7 @@ public class Diamond extends AdvancedRobot {
       if (!_TC) {
         _move.onDeath(e);
       }
+      _profiler.printRoundSummary(System.out);
     } catch (RuntimeException re) {
       logAndRethrowException(re);
     }
@@ -272,6 +296,7 @@ public class Diamond extends AdvancedRobot {
 
   public void onSkippedTurn(SkippedTurnEvent e) {
     System.out.println("WARNING: Turn skipped at: " + e.getTime());
+    _profiler.onSkippedTurn(e.getTime(), System.out);
   }
 
   protected void logAndRethrowException(RuntimeException e) {
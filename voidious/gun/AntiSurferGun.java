@@ -2,7 +2,6 @@ package voidious.gun;
 
 import java.awt.geom.Point2D;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 
@@ -13,6 +12,7 @@ import voidious.gun.formulas.AntiSurferFormula;
 import voidious.utils.BattleField;
 import voidious.utils.DiaUtils;
 import voidious.utils.DistanceFormula;
+import voidious.utils.KernelDensity;
 import voidious.utils.KnnView;
 import voidious.utils.TimestampedFiringAngle;
 import voidious.utils.Wave;
@@ -48,6 +48,8 @@ public class AntiSurferGun extends DuelGun<TimestampedFiringAngle> {
   private List<String> _viewNames;
   private DistanceFormula _formula;
   private boolean _is1v1Battle;
+  private KernelDensity _density;
+  private double[] _densities;
 
   public AntiSurferGun(GunDataManager gunDataManager, BattleField battleField,
       Collection<RoboGraphic> renderables) {
@@ -58,6 +60,8 @@ public class AntiSurferGun extends DuelGun<TimestampedFiringAngle> {
     _viewNames = new ArrayList<String>();
     _formula = new AntiSurferFormula();
     _is1v1Battle = (_gunDataManager.getEnemiesTotal() == 1);
+    _density = new KernelDensity(KernelDensity.Kernel.GAUSSIAN);
+    _densities = new double[FIRING_ANGLES];
   }
 
   @Override
@@ -68,96 +72,57 @@ public class AntiSurferGun extends DuelGun<TimestampedFiringAngle> {
   @Override
   protected double aimInternal(Wave w, boolean painting) {
     GunEnemy gunData = _gunDataManager.getEnemyData(w.botName);
-    List<Entry<TimestampedFiringAngle>> nearestNeighbors = null;
-    double[] neighborWeights = null;
+    double bandwidth = DiaUtils.botWidthAimAngle(
+        w.sourceLocation.distance(w.targetLocation)) * 2;
+    _density.clear(bandwidth);
+    int numScans = 0;
     for (String viewName : _viewNames) {
       KnnView<TimestampedFiringAngle> view = gunData.views.get(viewName);
       if (view.size() < view.kDivisor) {
         continue;
       }
 
-      List<Entry<TimestampedFiringAngle>> thisNeighbors =
+      List<Entry<TimestampedFiringAngle>> nearestNeighbors =
           view.nearestNeighbors(w, true);
-      double[] thisWeights = new double[thisNeighbors.size()];
-      Arrays.fill(thisWeights, view.weight);
-
-      if (nearestNeighbors == null) {
-        nearestNeighbors = thisNeighbors;
-        neighborWeights = thisWeights;
-      } else {
-        nearestNeighbors.addAll(thisNeighbors);
-        int newIndex = neighborWeights.length;
-        neighborWeights =
-            Arrays.copyOf(neighborWeights, nearestNeighbors.size());
-        for (int x = newIndex; x < neighborWeights.length; x++) {
-          neighborWeights[x] = thisWeights[x - newIndex];
+      numScans += nearestNeighbors.size();
+      for (int x = 0; x < nearestNeighbors.size(); x++) {
+        if (_is1v1Battle) {
+          double guessFactor = nearestNeighbors.get(x).value.guessFactor;
+          _density.add(Utils.normalRelativeAngle(
+              (guessFactor * w.orbitDirection
+                  * w.preciseEscapeAngle(guessFactor >= 0))), view.weight);
+        } else {
+          Point2D.Double dispVector =
+              nearestNeighbors.get(x).value.displacementVector;
+          Point2D.Double projectedLocation =
+              w.projectLocationFromDisplacementVector(dispVector);
+          if (_battleField.rectangle.contains(projectedLocation)) {
+            _density.add(Utils.normalRelativeAngle(
+                w.firingAngleFromTargetLocation(projectedLocation)
+                - w.absBearing), view.weight);
+          }
         }
       }
     }
 
-    if (nearestNeighbors == null || nearestNeighbors.size() == 0) {
+    if (numScans == 0) {
       return w.absBearing;
     }
 
-    int numScans = nearestNeighbors.size();
-    Double[] firingAngles = new Double[numScans];
-    for (int x = 0; x < numScans; x++) {
-      if (_is1v1Battle) {
-        double guessFactor = nearestNeighbors.get(x).value.guessFactor;
-        firingAngles[x] = Utils.normalRelativeAngle(
-            (guessFactor * w.orbitDirection
-                * w.preciseEscapeAngle(guessFactor >= 0)));
-      } else {
-        Point2D.Double dispVector =
-            nearestNeighbors.get(x).value.displacementVector;
-        Point2D.Double projectedLocation =
-            w.projectLocationFromDisplacementVector(dispVector);
-        if (!_battleField.rectangle.contains(projectedLocation)) {
-          firingAngles[x] = null;
-        } else {
-          firingAngles[x] = Utils.normalRelativeAngle(
-              w.firingAngleFromTargetLocation(projectedLocation) 
-              - w.absBearing);
-        }
-      }
-    }
-
-    Double bestAngle = null;
-    double bestDensity = Double.NEGATIVE_INFINITY;
-    double bandwidth = DiaUtils.botWidthAimAngle(
-        w.sourceLocation.distance(w.targetLocation)) * 2;
-    ColoredValueSet cvs = new ColoredValueSet();
     double[] realAngles =
         DiaUtils.generateFiringAngles(FIRING_ANGLES, w.maxEscapeAngle());
-    for (int x = 0; x < FIRING_ANGLES; x++) {
-      double xFiringAngle = realAngles[x];
-
-      double xDensity = 0;
-      for (int y = 0; y < numScans; y++) {
-        if (firingAngles[y] == null) {
-          continue;
-        }
-
-        double yFiringAngle = firingAngles[y];
-        double ux = (xFiringAngle - yFiringAngle) / bandwidth;
-        xDensity += Math.exp(-0.5 * ux * ux) * neighborWeights[y];
-      }
-
-      if (xDensity > bestDensity) {
-        bestAngle = xFiringAngle;
-        bestDensity = xDensity;
-      }
-
-      if (painting) {
-        cvs.addValue(xDensity, w.absBearing + xFiringAngle);
-      }
-    }
-
-    if (bestAngle == null) {
+    int bestIndex = _density.densestIndex(
+        realAngles, FIRING_ANGLES, painting ? _densities : null);
+    if (bestIndex < 0) {
       return w.absBearing;
     }
+    double bestAngle = realAngles[bestIndex];
 
     if (painting) {
+      ColoredValueSet cvs = new ColoredValueSet();
+      for (int x = 0; x < FIRING_ANGLES; x++) {
+        cvs.addValue(_densities[x], w.absBearing + realAngles[x]);
+      }
       DiamondFist.drawGunAngles(
           _renderables, w, cvs, w.absBearing + bestAngle, bandwidth);
     }
@@ -21,6 +21,7 @@ import voidious.utils.TimestampedFiringAngle;
 import voidious.utils.Wave;
 import voidious.utils.Wave.WavePosition;
 import voidious.utils.WaveManager;
+import voidious.utils.WavePool;
 
 /**
  * Copyright (c) 2009-2012 - Voidious
@@ -58,6 +59,7 @@ public class GunEnemy extends Enemy<TimestampedFiringAngle> {
   public List<Point2D.Double> hitLocations;
   private int _waveBreaks;
   private Collection<RoboGraphic> _renderables;
+  private WavePool _wavePool;
 
   public GunEnemy(String botName, double distance, double energy,
       Point2D.Double location, int round, long time, double heading,
@@ -77,6 +79,8 @@ public class GunEnemy extends Enemy<TimestampedFiringAngle> {
 
     _waveBreaks = 0;
     _renderables = renderables;
+    _wavePool = new WavePool();
+    waveManager.setWavePool(_wavePool);
     lastNonZeroVelocity = velocity;
     previousVelocity = 0;
     timeSinceDirectionChange = 0;
@@ -121,6 +125,7 @@ public class GunEnemy extends Enemy<TimestampedFiringAngle> {
         w.absBearing =
             DiaUtils.absoluteBearing(myLocation, lastScanState.location);
       }
+      w.clearCachedDataPoints();
     }
   }
 
@@ -204,7 +209,7 @@ public class GunEnemy extends Enemy<TimestampedFiringAngle> {
       long lastBulletFiredTime, double bulletPower, double myEnergy,
       double gunHeat, int enemiesAlive, double accel, double dl8t, double dl20t,
       double dl40t, boolean altWave) {
-    Wave newWave = new Wave(botName, sourceLocation, targetLocation,
+    Wave newWave = _wavePool.newWave(botName, sourceLocation, targetLocation,
         fireRound, fireTime, bulletPower, lastScanState.heading,
         lastScanState.velocity, DiaUtils.nonZeroSign(lastNonZeroVelocity),
         _battleField, _predictor)
@@ -330,6 +335,7 @@ public class GunEnemy extends Enemy<TimestampedFiringAngle> {
       public void onCurrentWave(Wave w) {
         if (!w.altWave) {
           w.firingWave = true;
+          w.clearCachedDataPoints();
           if (is1v1) {
             for (GunDataListener listener : gunDataListeners) {
               listener.onMarkFiringWave(w);
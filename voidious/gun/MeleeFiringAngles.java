@@ -0,0 +1,200 @@
+package voidious.gun;
+
+import java.util.Arrays;
+
+import robocode.util.Utils;
+import voidious.utils.Wave;
+
+/**
+ * Copyright (c) 2012 - Voidious
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+/**
+ * The firing angles MeleeGun aims among, in primitive arrays that are
+ * reused from tick to tick. Each angle's density is a sum of Gaussians, one
+ * per angle with its own bandwidth. The angles are binned on a fine circular
+ * grid, and each Gaussian is cut off at CUTOFF bandwidths, so each angle
+ * only spreads its Gaussian over the bins within its own cutoff, instead of
+ * over every other angle. The cost follows how much the Gaussians really
+ * overlap: one close enemy's wide Gaussian doesn't widen anyone else's.
+ */
+class MeleeFiringAngles {
+  static final int NUM_BINS = 720;
+  static final double CUTOFF = 5;
+  private static final double BIN_WIDTH = 2 * Math.PI / NUM_BINS;
+  private static final int INITIAL_CAPACITY = 128;
+
+  private double[] _angles;
+  private double[] _weights;
+  private double[] _bandwidths;
+  private Wave[] _waves;
+  private double[] _densities;
+  private int[] _bins;
+  private int[] _binnedAngles;
+  private final int[] _binStarts;
+  private final int[] _binCursors;
+  private int _size;
+  private int _binsVisited;
+  private int _pairsVisited;
+
+  MeleeFiringAngles() {
+    _angles = new double[INITIAL_CAPACITY];
+    _weights = new double[INITIAL_CAPACITY];
+    _bandwidths = new double[INITIAL_CAPACITY];
+    _waves = new Wave[INITIAL_CAPACITY];
+    _densities = new double[INITIAL_CAPACITY];
+    _bins = new int[INITIAL_CAPACITY];
+    _binnedAngles = new int[INITIAL_CAPACITY];
+    _binStarts = new int[NUM_BINS + 1];
+    _binCursors = new int[NUM_BINS];
+    clear();
+  }
+
+  void clear() {
+    Arrays.fill(_waves, 0, _size, null);
+    _size = 0;
+  }
+
+  void add(double angle, double weight, double bandwidth, Wave wave) {
+    if (_size == _angles.length) {
+      int capacity = _size * 2;
+      _angles = Arrays.copyOf(_angles, capacity);
+      _weights = Arrays.copyOf(_weights, capacity);
+      _bandwidths = Arrays.copyOf(_bandwidths, capacity);
+      _waves = Arrays.copyOf(_waves, capacity);
+      _densities = new double[capacity];
+      _bins = new int[capacity];
+      _binnedAngles = new int[capacity];
+    }
+    _angles[_size] = Utils.normalAbsoluteAngle(angle);
+    _weights[_size] = weight;
+    _bandwidths[_size] = bandwidth;
+    _waves[_size] = wave;
+    _size++;
+  }
+
+  /**
+   * Scales the weights of the angles added since the given index, eg to
+   * normalize one enemy's scan weights.
+   */
+  void scaleWeights(int start, double scale) {
+    for (int x = start; x < _size; x++) {
+      _weights[x] *= scale;
+    }
+  }
+
+  int size() {
+    return _size;
+  }
+
+  double angle(int index) {
+    return _angles[index];
+  }
+
+  Wave wave(int index) {
+    return _waves[index];
+  }
+
+  /**
+   * Density at each angle, as of the last call to densestIndex.
+   */
+  double density(int index) {
+    return _densities[index];
+  }
+
+  /**
+   * Index of the densest angle, the first one if there's a tie, or -1 if
+   * there are no angles.
+   */
+  int densestIndex() {
+    binAngles();
+    Arrays.fill(_densities, 0, _size, 0);
+    _binsVisited = 0;
+    _pairsVisited = 0;
+    for (int y = 0; y < _size; y++) {
+      int span = 1 + (int) Math.ceil(CUTOFF * _bandwidths[y] / BIN_WIDTH);
+      if ((2 * span) + 1 >= NUM_BINS) {
+        spread(y, 0, _size);
+        _binsVisited += NUM_BINS;
+      } else {
+        for (int z = -span; z <= span; z++) {
+          int bin = (_bins[y] + z + NUM_BINS) % NUM_BINS;
+          spread(y, _binStarts[bin], _binStarts[bin + 1]);
+          _binsVisited++;
+        }
+      }
+    }
+
+    int bestIndex = -1;
+    double bestDensity = Double.NEGATIVE_INFINITY;
+    for (int x = 0; x < _size; x++) {
+      if (_densities[x] > bestDensity) {
+        bestIndex = x;
+        bestDensity = _densities[x];
+      }
+    }
+    return bestIndex;
+  }
+
+  // Adds angle y's Gaussian to the densities of the binned angles from
+  // start to end.
+  private void spread(int y, int start, int end) {
+    double angle = _angles[y];
+    double bandwidth = _bandwidths[y];
+    double weight = _weights[y];
+    for (int x = start; x < end; x++) {
+      int index = _binnedAngles[x];
+      double ux =
+          Utils.normalRelativeAngle(_angles[index] - angle) / bandwidth;
+      if (Math.abs(ux) < CUTOFF) {
+        _densities[index] += weight * Math.exp(-0.5 * ux * ux);
+      }
+    }
+    _pairsVisited += end - start;
+  }
+
+  /**
+   * Bins and pairs of angles the last call to densestIndex looked at.
+   */
+  int binsVisited() {
+    return _binsVisited;
+  }
+
+  int pairsVisited() {
+    return _pairsVisited;
+  }
+
+  // Counting sort of the angles into their bins.
+  private void binAngles() {
+    Arrays.fill(_binStarts, 0);
+    for (int x = 0; x < _size; x++) {
+      int bin = Math.min(NUM_BINS - 1, (int) (_angles[x] / BIN_WIDTH));
+      _bins[x] = bin;
+      _binStarts[bin + 1]++;
+    }
+    for (int x = 0; x < NUM_BINS; x++) {
+      _binStarts[x + 1] += _binStarts[x];
+    }
+    System.arraycopy(_binStarts, 0, _binCursors, 0, NUM_BINS);
+    for (int x = 0; x < _size; x++) {
+      _binnedAngles[_binCursors[_bins[x]]++] = x;
+    }
+  }
+}
@@ -0,0 +1,165 @@
+package voidious.gun;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import robocode.util.Utils;
+import voidious.utils.DiaUtils;
+
+/**
+ * Copyright (c) 2012 - Voidious
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+public class MeleeFiringAnglesTest {
+
+  @Test
+  public void testDensestIndexMatchesSum() {
+    Random random = new Random(22);
+    MeleeFiringAngles firingAngles = new MeleeFiringAngles();
+    for (int x = 0; x < 20; x++) {
+      int numAngles = 1 + random.nextInt(300);
+      double[] angles = new double[numAngles];
+      double[] weights = new double[numAngles];
+      double[] bandwidths = new double[numAngles];
+      firingAngles.clear();
+      for (int y = 0; y < numAngles; y++) {
+        // Clustered around a few enemies, like melee firing angles.
+        angles[y] = Utils.normalAbsoluteAngle((random.nextInt(9) * 0.7)
+            + (random.nextGaussian() * 0.1));
+        double distance = 100 + (random.nextDouble() * 800);
+        weights[y] = random.nextDouble() / distance;
+        bandwidths[y] = DiaUtils.botWidthAimAngle(distance);
+        firingAngles.add(angles[y], weights[y], bandwidths[y], null);
+      }
+
+      int bestIndex = -1;
+      double bestDensity = Double.NEGATIVE_INFINITY;
+      int densestIndex = firingAngles.densestIndex();
+      for (int y = 0; y < numAngles; y++) {
+        double density = 0;
+        for (int z = 0; z < numAngles; z++) {
+          double ux = Utils.normalRelativeAngle(angles[y] - angles[z])
+              / bandwidths[z];
+          density += weights[z] * Math.exp(-0.5 * ux * ux);
+        }
+        assertEquals(density, firingAngles.density(y), density * 0.0001);
+        if (density > bestDensity) {
+          bestIndex = y;
+          bestDensity = density;
+        }
+      }
+      assertEquals(bestDensity, firingAngles.density(densestIndex),
+          bestDensity * 0.0001);
+      assertEquals(bestDensity, firingAngles.density(bestIndex),
+          bestDensity * 0.0001);
+    }
+  }
+
+  @Test
+  public void testOneNearProjectionOnlyWidensItsOwnWindow() {
+    Random random = new Random(23);
+    MeleeFiringAngles firingAngles = new MeleeFiringAngles();
+    double nearBandwidth = DiaUtils.botWidthAimAngle(50);
+    firingAngles.add(1, 1, nearBandwidth, null);
+    int numFar = 500;
+    double maxFarBandwidth = 0;
+    for (int x = 0; x < numFar; x++) {
+      double distance = 500 + (random.nextDouble() * 400);
+      double bandwidth = DiaUtils.botWidthAimAngle(distance);
+      maxFarBandwidth = Math.max(maxFarBandwidth, bandwidth);
+      firingAngles.add((random.nextInt(9) * 0.7)
+          + (random.nextGaussian() * 0.1), 1 / distance, bandwidth, null);
+    }
+    firingAngles.densestIndex();
+
+    // The near angle's window, plus the far angles' own narrow windows,
+    // not the near angle's window around every angle.
+    double binWidth = 2 * Math.PI / MeleeFiringAngles.NUM_BINS;
+    int nearBins = 3 + 2 * (int) Math.ceil(
+        MeleeFiringAngles.CUTOFF * nearBandwidth / binWidth);
+    int farBins = 3 + 2 * (int) Math.ceil(
+        MeleeFiringAngles.CUTOFF * maxFarBandwidth / binWidth);
+    assertTrue(nearBins > MeleeFiringAngles.NUM_BINS / 2);
+    assertTrue(firingAngles.binsVisited() <= nearBins + (numFar * farBins));
+    assertTrue(firingAngles.binsVisited() < (numFar + 1) * nearBins / 5);
+    assertTrue(firingAngles.pairsVisited() < (numFar + 1) * (numFar + 1) / 3);
+  }
+
+  @Test
+  public void testDensityWrapsAround() {
+    MeleeFiringAngles firingAngles = new MeleeFiringAngles();
+    firingAngles.add(0.01, 1, 0.05, null);
+    firingAngles.add(-0.01, 1, 0.05, null);
+    firingAngles.add(Math.PI, 1, 0.05, null);
+    assertEquals(0, firingAngles.densestIndex());
+    assertEquals((2 * Math.PI) - 0.01, firingAngles.angle(1), 0.000001);
+    double expected = 1 + Math.exp(-0.5 * 0.4 * 0.4);
+    assertEquals(expected, firingAngles.density(0), 0.000001);
+    assertEquals(expected, firingAngles.density(1), 0.000001);
+    assertEquals(1, firingAngles.density(2), 0.000001);
+  }
+
+  @Test
+  public void testDensityWideBandwidth() {
+    MeleeFiringAngles firingAngles = new MeleeFiringAngles();
+    firingAngles.add(0, 1, 1.5, null);
+    firingAngles.add(Math.PI, 1, 1.5, null);
+    firingAngles.add(Math.PI + 0.5, 1, 0.01, null);
+    // The narrow angle is near the middle of the wide one.
+    assertEquals(2, firingAngles.densestIndex());
+    double ux = Math.PI / 1.5;
+    assertEquals(1 + Math.exp(-0.5 * ux * ux), firingAngles.density(0),
+        0.000001);
+  }
+
+  @Test
+  public void testDensestIndexTies() {
+    MeleeFiringAngles firingAngles = new MeleeFiringAngles();
+    firingAngles.add(1, 1, 0.05, null);
+    firingAngles.add(2, 1, 0.05, null);
+    assertEquals(0, firingAngles.densestIndex());
+  }
+
+  @Test
+  public void testDensestIndexNoAngles() {
+    MeleeFiringAngles firingAngles = new MeleeFiringAngles();
+    assertEquals(-1, firingAngles.densestIndex());
+    firingAngles.add(1, 1, 0.05, null);
+    firingAngles.clear();
+    assertEquals(0, firingAngles.size());
+    assertEquals(-1, firingAngles.densestIndex());
+  }
+
+  @Test
+  public void testScaleWeights() {
+    MeleeFiringAngles firingAngles = new MeleeFiringAngles();
+    firingAngles.add(1, 1, 0.05, null);
+    firingAngles.add(2, 1, 0.05, null);
+    firingAngles.add(3, 1, 0.05, null);
+    firingAngles.scaleWeights(1, 0.5);
+    firingAngles.densestIndex();
+    assertEquals(1, firingAngles.density(0), 0.000001);
+    assertEquals(0.5, firingAngles.density(1), 0.000001);
+    assertEquals(0.5, firingAngles.density(2), 0.000001);
+  }
+}
@@ -44,24 +44,26 @@ public class MeleeGun {
   private GunDataManager _gunDataManager;
   private BattleField _battleField;
   private Collection<RoboGraphic> _renderables;
+  private MeleeFiringAngles _firingAngles;
 
   public MeleeGun(GunDataManager gunDataManager, BattleField battleField,
       Collection<RoboGraphic> renderables) {
     _gunDataManager = gunDataManager;
     _battleField = battleField;
     _renderables = renderables;
+    _firingAngles = new MeleeFiringAngles();
   }
 
   public double aimAtEveryone(Point2D.Double myNextLocation,
       long currentTime, int enemiesAlive, double bulletPower,
       GunEnemy closestBot, boolean painting) {
-    List<MeleeFiringAngle> firingAngles = new ArrayList<MeleeFiringAngle>();
+    _firingAngles.clear();
 
     int kSize = getCommonKsize(enemiesAlive);
     for (GunEnemy gunData : _gunDataManager.getAllEnemyData()) {
       if (gunData.alive && gunData.views.get(VIEW_NAME).size() >= 10
           && gunData.lastWaveFired != null) {
-        List<MeleeFiringAngle> enemyAngles = new ArrayList<MeleeFiringAngle>();
+        int enemyStart = _firingAngles.size();
         Wave aimWave = gunData.lastWaveFired;
         aimWave.setBulletPower(bulletPower);
         KnnView<TimestampedFiringAngle> view = gunData.views.get(VIEW_NAME);
@@ -75,54 +77,28 @@ public class MeleeGun {
           double scanWeight = 1 / Math.sqrt(entry.distance);
           totalScanWeight += scanWeight;
           Point2D.Double vector = entry.value.displacementVector;
-          MeleeFiringAngle firingAngle = getFiringAngle(
+          addFiringAngle(
               myNextLocation, currentTime, vector, scanWeight, aimWave);
-          if (firingAngle != null) {
-            enemyAngles.add(firingAngle);
-          }
         }
-        for (MeleeFiringAngle enemyAngle : enemyAngles) {
-          enemyAngle.scanWeight /= totalScanWeight;
-        }
-        firingAngles.addAll(enemyAngles);
-      }
-    }
-
-    Double bestAngle = null;
-    double bestDensity = Double.NEGATIVE_INFINITY;
-    Wave bestWave = null;
-    ColoredValueSet cvs = new ColoredValueSet();
-
-    for (MeleeFiringAngle xFiringAngle : firingAngles) {
-      double xDensity = 0;
-      for (MeleeFiringAngle yFiringAngle : firingAngles) {
-        double ux =
-            Utils.normalRelativeAngle(xFiringAngle.angle - yFiringAngle.angle)
-                / yFiringAngle.bandwidth;
-        xDensity += yFiringAngle.scanWeight * Math.exp(-0.5 * ux * ux)
-            / yFiringAngle.distance;
-      }
-
-      if (xDensity > bestDensity) {
-        bestAngle = xFiringAngle.angle;
-        bestDensity = xDensity;
-        bestWave = xFiringAngle.wave;
-      }
-
-      if (painting) {
-        cvs.addValue(xDensity, xFiringAngle.angle);
+        _firingAngles.scaleWeights(enemyStart, 1 / totalScanWeight);
       }
     }
 
-    if (firingAngles.isEmpty() || bestAngle == null) {
+    int bestIndex = _firingAngles.densestIndex();
+    if (bestIndex < 0) {
       return closestBot.lastWaveFired.absBearing;
     }
+    double bestAngle = _firingAngles.angle(bestIndex);
 
     if (painting) {
+      ColoredValueSet cvs = new ColoredValueSet();
+      for (int x = 0; x < _firingAngles.size(); x++) {
+        cvs.addValue(_firingAngles.density(x), _firingAngles.angle(x));
+      }
       double bandwidth = DiaUtils.botWidthAimAngle(
           myNextLocation.distance(closestBot.lastScanState.location));
-      DiamondFist.drawGunAngles(
-          _renderables, bestWave, cvs, bestAngle, bandwidth);
+      DiamondFist.drawGunAngles(_renderables,
+          _firingAngles.wave(bestIndex), cvs, bestAngle, bandwidth);
     }
 
     return Utils.normalAbsoluteAngle(bestAngle);
@@ -139,19 +115,18 @@ public class MeleeGun {
     return kSize;
   }
 
-  private MeleeFiringAngle getFiringAngle(Point2D.Double myNextLocation,
+  private void addFiringAngle(Point2D.Double myNextLocation,
       long currentTime, Point2D.Double dispVector, double scanWeight,
       Wave aimWave) {
     Point2D.Double projectedLocation = aimWave.projectLocationBlind(
         myNextLocation, dispVector, currentTime);
     if (_battleField.rectangle.contains(projectedLocation)) {
       double distance = myNextLocation.distance(projectedLocation);
-      return new MeleeFiringAngle(
+      _firingAngles.add(
           DiaUtils.absoluteBearing(myNextLocation, projectedLocation),
-          distance, DiaUtils.botWidthAimAngle(distance), scanWeight,
+          scanWeight / distance, DiaUtils.botWidthAimAngle(distance),
           aimWave);
     }
-    return null;
   }
 
   public List<KnnView<TimestampedFiringAngle>> newDataViews() {
@@ -166,21 +141,4 @@ public class MeleeGun {
     views.add(meleeView);
     return views;
   }
-
-  private static class MeleeFiringAngle {
-    public final double angle;
-    public final double distance;
-    public final double bandwidth;
-    public double scanWeight;
-    public final Wave wave;
-
-    public MeleeFiringAngle(double angle, double distance, double bandwidth,
-        double scanWeight, Wave wave) {
-      this.angle = angle;
-      this.distance = distance;
-      this.bandwidth = bandwidth;
-      this.scanWeight = scanWeight;
-      this.wave = wave;
-    }
-  }
 }
@@ -10,6 +10,7 @@ import voidious.gfx.RoboGraphic;
 import voidious.gun.formulas.TripHammerFormula;
 import voidious.utils.DiaUtils;
 import voidious.utils.DistanceFormula;
+import voidious.utils.KernelDensity;
 import voidious.utils.KnnView;
 import voidious.utils.TimestampedFiringAngle;
 import voidious.utils.Wave;
@@ -41,6 +42,8 @@ public class TripHammerKnnGun extends DuelGun<TimestampedFiringAngle> {
   private static final int FIRING_ANGLES = 59;
   private static final int MAX_K_SIZE = 225;
   private static final int K_DIVISOR = 9;
+  // Keeps an exact match's weight finite, so it can't swamp the sums.
+  private static final double MIN_NEIGHBOR_DISTANCE = 0.000001;
 
   private GunDataManager _gunDataManager;
   private Collection<RoboGraphic> _renderables;
@@ -48,6 +51,8 @@ public class TripHammerKnnGun extends DuelGun<TimestampedFiringAngle> {
   private int _maxK;
   private int _kDivisor;
   private DistanceFormula _formula;
+  private KernelDensity _density;
+  private double[] _densities;
 
   private static final double[] INITIAL_WEIGHTS = new double[]
       {0.94, 10.0, 1.73, 3.7, 3.31, 2.13, 5.51, 1.26, 1.57, 5.51};
@@ -71,6 +76,8 @@ public class TripHammerKnnGun extends DuelGun<TimestampedFiringAngle> {
     _maxK = maxK;
     _kDivisor = kDivisor;
     _formula = new TripHammerFormula();
+    _density = new KernelDensity(KernelDensity.Kernel.CUBIC);
+    _densities = new double[numFiringAngles];
   }
 
   @Override
@@ -90,52 +97,32 @@ public class TripHammerKnnGun extends DuelGun<TimestampedFiringAngle> {
     view.setWeights(getWeights(view.size()));
     List<Entry<TimestampedFiringAngle>> nearestNeighbors =
         view.nearestNeighbors(w, true);
-    int numScans = nearestNeighbors.size();
-    Double[] firingAngles = new Double[numScans];
-    double[] weights = new double[numScans];
-    for (int x = 0; x < numScans; x++) {
+    double bandwidth = 2 * DiaUtils.botWidthAimAngle(
+        w.sourceLocation.distance(w.targetLocation));
+    _density.clear(bandwidth);
+    for (int x = 0; x < nearestNeighbors.size(); x++) {
       double guessFactor = nearestNeighbors.get(x).value.guessFactor;
-      firingAngles[x] = Utils.normalRelativeAngle(
+      _density.add(Utils.normalRelativeAngle(
           (guessFactor * w.orbitDirection
-              * w.preciseEscapeAngle(guessFactor >= 0)));
-      weights[x] = 1 / Math.sqrt(nearestNeighbors.get(x).distance);
+              * w.preciseEscapeAngle(guessFactor >= 0))),
+          1 / Math.sqrt(Math.max(MIN_NEIGHBOR_DISTANCE,
+              nearestNeighbors.get(x).distance)));
     }
 
-    double bandwidth = 2 * DiaUtils.botWidthAimAngle(
-        w.sourceLocation.distance(w.targetLocation));
-    Double bestAngle = null;
-    double bestDensity = Double.NEGATIVE_INFINITY;
-    ColoredValueSet cvs = new ColoredValueSet();
     double[] realAngles =
         DiaUtils.generateFiringAngles(_numFiringAngles, w.maxEscapeAngle());
-
-    for (int x = 0; x < _numFiringAngles; x++) {
-      double density = 0;
-      for (int y = 0; y < numScans; y++) {
-        if (firingAngles[y] == null) {
-          continue;
-        }
-        double ux = (realAngles[x] - firingAngles[y]) / bandwidth;
-        if (Math.abs(ux) < 1) {
-          density += (1 - DiaUtils.cube(Math.abs(ux))) * weights[y];
-        }
-      }
-
-      if (density > bestDensity) {
-        bestAngle = realAngles[x];
-        bestDensity = density;
-      }
-
-      if (painting) {
-        cvs.addValue(density, w.absBearing + realAngles[x]);
-      }
-    }
-
-    if (bestAngle == null) {
+    int bestIndex = _density.densestIndex(
+        realAngles, _numFiringAngles, painting ? _densities : null);
+    if (bestIndex < 0) {
       return w.absBearing;
     }
+    double bestAngle = realAngles[bestIndex];
 
     if (painting) {
+      ColoredValueSet cvs = new ColoredValueSet();
+      for (int x = 0; x < _numFiringAngles; x++) {
+        cvs.addValue(_densities[x], w.absBearing + realAngles[x]);
+      }
       DiamondFist.drawGunAngles(
           _renderables, w, cvs, w.absBearing + bestAngle, bandwidth);
     }
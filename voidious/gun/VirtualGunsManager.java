@@ -12,6 +12,8 @@ import java.util.Map;
 import voidious.gun.GunDataManager.GunDataListener;
 import voidious.utils.Wave;
 import voidious.utils.DiaUtils;
+import voidious.utils.TickProfiler;
+import voidious.utils.TickProfiler.Section;
 
 /**
  * Copyright (c) 2009-2012 - Voidious
@@ -41,11 +43,13 @@ public class VirtualGunsManager<T> implements GunDataListener {
   private List<DuelGun<T>> _guns;
   private Map<DuelGun<T>, Map<String, GunStats>> _gunRatings;
   private PrintStream _out;
+  private TickProfiler _profiler;
 
   public VirtualGunsManager(OutputStream out) {
     _guns = new ArrayList<DuelGun<T>>();
     _gunRatings = new HashMap<DuelGun<T>, Map<String, GunStats>>();
     _out = new PrintStream(out);
+    _profiler = TickProfiler.getInstance();
   }
 
   public void addGun(DuelGun<T> gun) {
@@ -80,6 +84,7 @@ public class VirtualGunsManager<T> implements GunDataListener {
   }
 
   public void fireVirtualBullets(Wave w) {
+    _profiler.start(Section.VIRTUAL_GUNS);
     for (DuelGun<T> gun : _guns) {
       GunStats stats;
       if (_gunRatings.get(gun).containsKey(w.botName)) {
@@ -92,6 +97,7 @@ public class VirtualGunsManager<T> implements GunDataListener {
       double firingAngle = gun.aim(w, false);
       stats.virtualBullets.put(w, new VirtualBullet(firingAngle));
     }
+    _profiler.stop();
   }
 
   public void registerWaveBreak(Wave w, double hitAngle, double tolerance) {
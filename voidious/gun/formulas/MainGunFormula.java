@@ -50,4 +50,9 @@ public class MainGunFormula extends DistanceFormula {
           / (Math.max(_enemiesTotal - 1,1))))
     };
   }
+
+  @Override
+  public String featureKey() {
+    return super.featureKey() + _enemiesTotal;
+  }
 }
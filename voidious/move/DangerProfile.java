@@ -0,0 +1,247 @@
+package voidious.move;
+
+import voidious.utils.DiaUtils;
+
+/**
+ * Copyright (c) 2012 - Voidious
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+/**
+ * The surf danger profile of a wave: the decay-weighted guess factors of the
+ * nearest neighbors from every enabled view, as firing angles, with the ones
+ * in bullet shadows left out. Built once per wave and tick, it rates any
+ * intersection with the wave in O(1), whatever the number of neighbors or
+ * views.
+ *
+ * The danger at an angle is the sum of each neighbor's weight times
+ * 2^(-|angle - neighborAngle| / bandwidth), divided by the total weight.
+ * That kernel is exponential, so for a given bandwidth the sums to the left
+ * and right of every neighbor can be accumulated in one pass each, and
+ * extended to any angle between two neighbors with one exp. Those sums are
+ * built lazily on a ladder of bandwidths, eight steps per doubling, and the
+ * danger is interpolated geometrically between the two bandwidths around
+ * the one asked for. That's exact for a lone neighbor and within a fraction
+ * of a percent of the exact sum otherwise. The
+ * neighbors are bucketed into fixed width angle bins to find the ones next
+ * to an angle without a search.
+ */
+public class DangerProfile {
+  private static final int NUM_BINS = 128;
+  private static final int RUNGS_PER_DOUBLING = 8;
+  private static final int MIN_RUNG = -8 * RUNGS_PER_DOUBLING;
+  private static final int NUM_RUNGS = 24 * RUNGS_PER_DOUBLING;
+  private static final double LN2 = Math.log(2);
+
+  private final double _referenceAngle;
+  private final double[] _angles;
+  private final double[] _weights;
+  private final int _size;
+  private final double _totalWeight;
+  private final double _minAngle;
+  private final double _maxAngle;
+  private final double _binWidth;
+  private final int[] _binStarts;
+  private final double[][] _leftSums;
+  private final double[][] _rightSums;
+
+  /**
+   * @param referenceAngle angle the neighbor angles are normalized around,
+   *     eg the wave's absolute bearing
+   * @param angles firing angles of the neighbors outside bullet shadows
+   * @param weights weights of those neighbors
+   * @param size number of neighbors in angles and weights
+   * @param totalWeight weight of all the neighbors, shadowed ones included
+   */
+  public DangerProfile(double referenceAngle, double[] angles,
+      double[] weights, int size, double totalWeight) {
+    _referenceAngle = referenceAngle;
+    _totalWeight = totalWeight;
+    _angles = new double[size];
+    _weights = new double[size];
+    _binStarts = new int[NUM_BINS + 1];
+    _leftSums = new double[NUM_RUNGS][];
+    _rightSums = new double[NUM_RUNGS][];
+
+    double minAngle = Double.POSITIVE_INFINITY;
+    double maxAngle = Double.NEGATIVE_INFINITY;
+    double[] relativeAngles = new double[size];
+    for (int x = 0; x < size; x++) {
+      relativeAngles[x] = relativeAngle(angles[x]);
+      minAngle = Math.min(minAngle, relativeAngles[x]);
+      maxAngle = Math.max(maxAngle, relativeAngles[x]);
+    }
+    _minAngle = minAngle;
+    _maxAngle = maxAngle;
+    _binWidth = (maxAngle > minAngle) ? (maxAngle - minAngle) / NUM_BINS : 1;
+
+    // Counting sort into the bins, then insertion sort within each bin.
+    int[] bins = new int[size];
+    for (int x = 0; x < size; x++) {
+      bins[x] = bin(relativeAngles[x]);
+      _binStarts[bins[x] + 1]++;
+    }
+    for (int x = 0; x < NUM_BINS; x++) {
+      _binStarts[x + 1] += _binStarts[x];
+    }
+    int[] binEnds = new int[NUM_BINS];
+    System.arraycopy(_binStarts, 0, binEnds, 0, NUM_BINS);
+    for (int x = 0; x < size; x++) {
+      int y = binEnds[bins[x]]++;
+      double angle = relativeAngles[x];
+      while (y > _binStarts[bins[x]] && _angles[y - 1] > angle) {
+        _angles[y] = _angles[y - 1];
+        _weights[y] = _weights[y - 1];
+        y--;
+      }
+      _angles[y] = angle;
+      _weights[y] = weights[x];
+    }
+
+    // Views share data, so many neighbors are the same guess factor.
+    int numAngles = 0;
+    for (int x = 0; x < NUM_BINS; x++) {
+      int binEnd = _binStarts[x + 1];
+      int y = _binStarts[x];
+      _binStarts[x] = numAngles;
+      for (; y < binEnd; y++) {
+        if (numAngles > 0 && _angles[numAngles - 1] == _angles[y]) {
+          _weights[numAngles - 1] += _weights[y];
+        } else {
+          _angles[numAngles] = _angles[y];
+          _weights[numAngles] = _weights[y];
+          numAngles++;
+        }
+      }
+    }
+    _binStarts[NUM_BINS] = numAngles;
+    _size = numAngles;
+  }
+
+  /**
+   * Number of distinct neighbor angles.
+   */
+  public int size() {
+    return _size;
+  }
+
+  /**
+   * Danger of an intersection centered at the given angle, same as summing
+   * the kernel over every neighbor.
+   */
+  public double danger(double angle, double bandwidth) {
+    if (_size == 0) {
+      return 0 / _totalWeight;
+    }
+    double relativeAngle = relativeAngle(angle);
+    int index = firstIndexAtOrAfter(relativeAngle);
+    double rate = LN2 / bandwidth;
+    double rungPosition = RUNGS_PER_DOUBLING * (Math.log(rate) / LN2);
+    int rung = (int) Math.floor(rungPosition) - MIN_RUNG;
+    if (rung < 0 || rung + 1 >= NUM_RUNGS) {
+      return exactDensity(relativeAngle, rate) / _totalWeight;
+    }
+    double rungRate = rungRate(rung);
+    double t = (rate - rungRate) / (rungRate(rung + 1) - rungRate);
+    double density = density(rung, index, relativeAngle);
+    if (t > 0 && density > 0) {
+      double nextDensity = density(rung + 1, index, relativeAngle);
+      density = (nextDensity > 0)
+          ? density * Math.pow(nextDensity / density, t) : 0;
+    }
+    return density / _totalWeight;
+  }
+
+  double exactDanger(double angle, double bandwidth) {
+    return exactDensity(relativeAngle(angle), LN2 / bandwidth) / _totalWeight;
+  }
+
+  private double density(int rung, int index, double angle) {
+    if (_leftSums[rung] == null) {
+      buildSums(rung);
+    }
+    double rate = rungRate(rung);
+    double density = 0;
+    if (index > 0) {
+      density += _leftSums[rung][index - 1]
+          * Math.exp(-rate * (angle - _angles[index - 1]));
+    }
+    if (index < _size) {
+      density += _rightSums[rung][index]
+          * Math.exp(-rate * (_angles[index] - angle));
+    }
+    return density;
+  }
+
+  private double exactDensity(double angle, double rate) {
+    double density = 0;
+    for (int x = 0; x < _size; x++) {
+      density += _weights[x] * Math.exp(-rate * Math.abs(_angles[x] - angle));
+    }
+    return density;
+  }
+
+  /**
+   * Left sums are each neighbor's weight plus the kernel weighted sum of the
+   * neighbors before it, right sums the same for the neighbors after it.
+   */
+  private void buildSums(int rung) {
+    double rate = rungRate(rung);
+    double[] leftSums = new double[_size];
+    double[] rightSums = new double[_size];
+    leftSums[0] = _weights[0];
+    for (int x = 1; x < _size; x++) {
+      leftSums[x] = _weights[x] + (leftSums[x - 1]
+          * Math.exp(-rate * (_angles[x] - _angles[x - 1])));
+    }
+    rightSums[_size - 1] = _weights[_size - 1];
+    for (int x = _size - 2; x >= 0; x--) {
+      rightSums[x] = _weights[x] + (rightSums[x + 1]
+          * Math.exp(-rate * (_angles[x + 1] - _angles[x])));
+    }
+    _leftSums[rung] = leftSums;
+    _rightSums[rung] = rightSums;
+  }
+
+  private int firstIndexAtOrAfter(double angle) {
+    if (angle <= _minAngle) {
+      return 0;
+    } else if (angle > _maxAngle) {
+      return _size;
+    }
+    int bin = bin(angle);
+    int index = _binStarts[bin];
+    while (index < _binStarts[bin + 1] && _angles[index] < angle) {
+      index++;
+    }
+    return index;
+  }
+
+  private int bin(double angle) {
+    return Math.min(NUM_BINS - 1, (int) ((angle - _minAngle) / _binWidth));
+  }
+
+  private double relativeAngle(double angle) {
+    return DiaUtils.normalizeAngle(angle, _referenceAngle) - _referenceAngle;
+  }
+
+  private static double rungRate(int rung) {
+    return Math.pow(2, ((double) (rung + MIN_RUNG)) / RUNGS_PER_DOUBLING);
+  }
+}
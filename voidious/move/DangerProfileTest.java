@@ -0,0 +1,126 @@
+package voidious.move;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Copyright (c) 2012 - Voidious
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+public class DangerProfileTest {
+  private static final double LN2 = Math.log(2);
+
+  @Test
+  public void testDangerMatchesExactSum() {
+    Random random = new Random(7);
+    DangerProfile profile = newRandomProfile(random, 1.2, 300);
+    for (int x = 0; x < 1000; x++) {
+      double angle = 1.2 + (random.nextDouble() - 0.5);
+      double bandwidth = 0.01 + (random.nextDouble() * 0.1);
+      double exactDanger = profile.exactDanger(angle, bandwidth);
+      assertEquals(exactDanger, profile.danger(angle, bandwidth),
+          exactDanger * 0.002);
+    }
+  }
+
+  @Test
+  public void testDangerOnRungIsExact() {
+    Random random = new Random(11);
+    DangerProfile profile = newRandomProfile(random, 0, 200);
+    double bandwidth = LN2 / Math.pow(2, 45 / 8.0);
+    for (int x = 0; x < 100; x++) {
+      double angle = random.nextDouble() - 0.5;
+      assertEquals(profile.exactDanger(angle, bandwidth),
+          profile.danger(angle, bandwidth), 1e-12);
+    }
+  }
+
+  @Test
+  public void testDangerSingleNeighbor() {
+    DangerProfile profile = new DangerProfile(
+        0, new double[] {0.1}, new double[] {2.0}, 1, 4.0);
+    assertEquals(0.5, profile.danger(0.1, 0.05), 1e-9);
+    assertEquals(0.25, profile.danger(0.15, 0.05), 0.001);
+    assertEquals(0.25, profile.danger(0.05, 0.05), 0.001);
+  }
+
+  @Test
+  public void testDangerOutsideNeighbors() {
+    DangerProfile profile = new DangerProfile(0,
+        new double[] {-0.1, 0, 0.1}, new double[] {1, 1, 1}, 3, 3);
+    double exactDanger = profile.exactDanger(-0.3, 0.05);
+    assertEquals(exactDanger, profile.danger(-0.3, 0.05), exactDanger * 0.005);
+    exactDanger = profile.exactDanger(0.3, 0.05);
+    assertEquals(exactDanger, profile.danger(0.3, 0.05), exactDanger * 0.005);
+  }
+
+  @Test
+  public void testDangerAcrossPi() {
+    DangerProfile profile = new DangerProfile(Math.PI,
+        new double[] {Math.PI - 0.02, -Math.PI + 0.02}, new double[] {1, 1},
+        2, 2);
+    assertEquals(profile.exactDanger(Math.PI, 0.04),
+        profile.danger(-Math.PI, 0.04), 1e-6);
+    assertEquals(0.5 * 2 * Math.pow(2, -0.5),
+        profile.exactDanger(Math.PI, 0.04), 1e-9);
+  }
+
+  @Test
+  public void testMergesEqualAngles() {
+    DangerProfile profile = new DangerProfile(0,
+        new double[] {0.1, -0.2, 0.1, 0.1}, new double[] {1, 2, 3, 4}, 4, 10);
+    assertEquals(2, profile.size());
+    assertEquals(profile.exactDanger(0.12, 0.05),
+        (2 * Math.pow(2, -0.32 / 0.05) + 8 * Math.pow(2, -0.02 / 0.05)) / 10,
+        1e-9);
+  }
+
+  @Test
+  public void testDangerEmpty() {
+    DangerProfile profile =
+        new DangerProfile(0, new double[0], new double[0], 0, 3);
+    assertEquals(0, profile.danger(0.2, 0.05), 0);
+  }
+
+  @Test
+  public void testDangerVeryWideBandwidth() {
+    Random random = new Random(13);
+    DangerProfile profile = newRandomProfile(random, 0, 50);
+    assertEquals(profile.exactDanger(0.1, 1000),
+        profile.danger(0.1, 1000), 1e-9);
+  }
+
+  private DangerProfile newRandomProfile(
+      Random random, double referenceAngle, int size) {
+    double[] angles = new double[size];
+    double[] weights = new double[size];
+    double totalWeight = 0;
+    for (int x = 0; x < size; x++) {
+      angles[x] = referenceAngle + ((random.nextDouble() - 0.5) * 0.8);
+      weights[x] = random.nextDouble();
+      totalWeight += weights[x] * 1.2;
+    }
+    return new DangerProfile(referenceAngle, angles, weights, size,
+        totalWeight);
+  }
+}
@@ -46,7 +46,8 @@ import voidious.utils.MovementPredictor;
 
 public class DiamondWhoosh implements RoboPainter, FireListener {
   private static final boolean ENABLE_DEBUGGING_GRAPHICS = true;
-  private static final int WAVES_TO_SURF = 2;
+  // Most waves deep to surf, time permitting.
+  private static final int WAVES_TO_SURF = 3;
 
   private Diamond _robot;
   private MoveDataManager _moveDataManager;
@@ -59,7 +60,8 @@ public class DiamondWhoosh implements RoboPainter, FireListener {
 
   public DiamondWhoosh(Diamond robot, OutputStream out) {
     this(robot, new BattleField(robot.getBattleFieldWidth(),
-                                robot.getBattleFieldHeight()),
+                                robot.getBattleFieldHeight())
+                    .setFastWallSmoothing(true),
          new ArrayList<RoboGraphic>(), out);
   }
 
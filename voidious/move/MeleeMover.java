@@ -12,6 +12,7 @@ import voidious.utils.BattleField;
 import voidious.utils.DiaUtils;
 import voidious.utils.ErrorLogger;
 import voidious.utils.MovementPredictor;
+import voidious.utils.PredictionState;
 import voidious.utils.RobotState;
 
 /**
@@ -44,6 +45,7 @@ public class MeleeMover {
   private BattleField _battleField;
   private Collection<RoboGraphic> _renderables;
   private MovementPredictor _predictor;
+  private PredictionState _wallCheckState;
   private LinkedList<OldLocation> _recentLocations;
   private Destination _currentDestination;
 
@@ -53,6 +55,7 @@ public class MeleeMover {
     _battleField = battleField;
     _renderables = renderables;
     _predictor = new MovementPredictor(battleField);
+    _wallCheckState = new PredictionState();
     _recentLocations = new LinkedList<OldLocation>();
   }
 
@@ -213,11 +216,14 @@ public class MeleeMover {
   private boolean wouldHitWall(
       RobotState currentState, Destination destination) {
     long ticksAhead = 5;
+    PredictionState predictedState = _wallCheckState.set(currentState);
     for (int x = 0; x < ticksAhead; x++) {
-      currentState = _predictor.nextLocation(currentState, 8.0,
-          DiaUtils.absoluteBearing(currentState.location, destination.location),
+      _predictor.nextLocation(predictedState, 8.0,
+          DiaUtils.absoluteBearing(
+              predictedState.x, predictedState.y, destination.location),
           true);
-      if (!_battleField.rectangle.contains(currentState.location)) {
+      if (!_battleField.rectangle.contains(
+              predictedState.x, predictedState.y)) {
         return true;
       }
     }
@@ -2,6 +2,7 @@ package voidious.move;
 
 import java.awt.Color;
 import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
 import java.io.PrintStream;
 import java.util.Collection;
 import java.util.List;
@@ -24,8 +25,6 @@ import voidious.utils.TimestampedGuessFactor;
 import voidious.utils.Wave;
 import voidious.utils.WaveManager;
 import voidious.utils.WaveManager.WaveBreakListener;
-import voidious.utils.geom.Circle;
-import voidious.utils.geom.LineSeg;
 import ags.utils.KdTree;
 import ags.utils.KdTree.Entry;
 
@@ -304,6 +303,12 @@ public class MoveEnemy extends Enemy<TimestampedGuessFactor> {
     }
   }
 
+  public void clearNeighborCache(Wave w) {
+    for (KnnView<TimestampedGuessFactor> view : views.values()) {
+      view.clearCache(w);
+    }
+  }
+
   public double getGunHeat(long time) {
     double gunHeat;
     if (time <= 30) {
@@ -356,69 +361,175 @@ public class MoveEnemy extends Enemy<TimestampedGuessFactor> {
   //     Would be nice to prove it or fix this code.
   public void setShadows(Wave w, FiredBullet bullet) {
     long startTime = Math.max(w.fireTime, bullet.fireTime);
-    if (!w.processedBulletHit()
-        && w.sourceLocation.distanceSq(bullet.position(startTime))
-            > DiaUtils.square(w.distanceTraveled(startTime))) {
-      long time = startTime;
-      do {
-        time++;
-        if (w.sourceLocation.distanceSq(bullet.position(time))
-                < DiaUtils.square(w.distanceTraveled(time))
-            && time < bullet.deathTime) {
-          addBulletShadows(w, bullet, time);
-          break;
-        }
-      } while (_battleField.rectangle.contains(bullet.position(time)));
+    if (!w.processedBulletHit() && bulletDistanceSq(w, bullet, startTime)
+        > DiaUtils.square(w.distanceTraveled(startTime))) {
+      long time = crossingTime(w, bullet, startTime);
+      if (time > startTime && time < bullet.deathTime) {
+        addBulletShadows(w, bullet, time);
+      }
     }
   }
 
-  private void addBulletShadows(Wave w, FiredBullet b, long time) {
-    Circle waveCircle1 =
-        new Circle(w.sourceLocation, w.distanceTraveled(time - 1));
-    Circle waveCircle2 =
-        new Circle(w.sourceLocation, w.distanceTraveled(time));
-    Point2D.Double bulletPoint1 = b.position(time-1);
-    Point2D.Double bulletPoint2 = b.position(time);
-    LineSeg bulletSeg = new LineSeg(bulletPoint1, bulletPoint2);
-    Point2D.Double[] xPoints1 = waveCircle1.intersects(bulletSeg);
-    Point2D.Double[] xPoints2 = waveCircle2.intersects(bulletSeg);
-
-    if (xPoints1[0] == null && xPoints2[0] == null) {
-      // whole bullet line segment is between two wave circles,
-      // shadow cast along all firing angles covered by line segment
-      w.castShadow(bulletPoint1, bulletPoint2);
-      // TODO: It's possible the previous bullet line intersected the
-      //     inner wave circle (then the outer wave circle) last tick
-      //     and cast 2 shadows, while remaining outside the wave on
-      //     either endpoint. Should be super rare and probably could
-      //     never be a reachable shadow anyway.
-    } else if (xPoints1[0] != null) {
-      if (xPoints2[0] != null) {
-        // line segment intersects both wave circles, shadow cast
-        // from one intersection to the other
-        w.castShadow(xPoints2[0], xPoints1[0]);
-      } else if (xPoints1[1] != null) {
-        // line segment begins and ends between wave circles,
-        // intersects inner circle in two spots, casts 2 shadows
-        Point2D.Double intersect1, intersect2;
-        if (bulletPoint1.distanceSq(xPoints1[0])
-                < bulletPoint1.distanceSq(xPoints1[1])) {
-          intersect1 = xPoints1[0];
-          intersect2 = xPoints1[1];
-        } else {
-          intersect1 = xPoints1[1];
-          intersect2 = xPoints1[0];
-        }
-        w.castShadow(bulletPoint1, intersect1);
-        w.castShadow(intersect2, bulletPoint2);
-      } else {
-        // line segment crosses inner wave circle in one spot
-        w.castShadow(bulletPoint1, xPoints1[0]);
+  /**
+   * First tick after startTime that the bullet is inside the wave, checking
+   * ticks up to and including the first one it's out of the field, or -1 if
+   * there's none. Solves for when the distance from the wave source to the
+   * bullet, which moves in a straight line, equals the wave's radius, which
+   * grows linearly, instead of stepping through every tick.
+   */
+  long crossingTime(Wave w, FiredBullet bullet, long startTime) {
+    // f(ticks) = |e + d * ticks|^2 - (r + v * ticks)^2, with f(0) > 0
+    double ex = bulletX(bullet, startTime) - w.sourceLocation.x;
+    double ey = bulletY(bullet, startTime) - w.sourceLocation.y;
+    double r = w.distanceTraveled(startTime);
+    double v = w.bulletSpeed();
+    double a = DiaUtils.square(bullet.bulletSpeed) - (v * v);
+    double b = 2 * ((ex * bullet.dx) + (ey * bullet.dy) - (r * v));
+    double c = (ex * ex) + (ey * ey) - (r * r);
+
+    long lastTime = fieldExitTime(bullet, startTime);
+    double firstNegative;
+    if (a == 0) {
+      if (b >= 0) {
+        return -1;
       }
-    } else if (xPoints2[0] != null) {
-      // line segment crosses outer wave circle in one spot
-      w.castShadow(xPoints2[0], bulletPoint2);
+      firstNegative = -c / b;
+    } else {
+      double discriminant = (b * b) - (4 * a * c);
+      if (discriminant <= 0) {
+        return -1;
+      }
+      double sqrtDiscriminant = Math.sqrt(discriminant);
+      double root1 = (-b - sqrtDiscriminant) / (2 * a);
+      double root2 = (-b + sqrtDiscriminant) / (2 * a);
+      // If a > 0, f < 0 between the roots, else beyond the positive one.
+      firstNegative = (a > 0) ? root1 : Math.max(root1, root2);
+    }
+
+    if (firstNegative < 0 || firstNegative > lastTime - startTime) {
+      return -1;
+    }
+    long estimate = startTime + (long) Math.floor(firstNegative);
+    // Check the ticks around the estimate in case of rounding error.
+    for (long time = Math.max(startTime + 1, estimate);
+         time <= Math.min(lastTime, estimate + 2); time++) {
+      if (bulletInsideWave(w, bullet, time)) {
+        return time;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * First tick after startTime that the bullet is out of the field.
+   */
+  long fieldExitTime(FiredBullet bullet, long startTime) {
+    Rectangle2D.Double field = _battleField.rectangle;
+    double exitTicks = Math.min(
+        ticksToExit(bulletX(bullet, startTime), bullet.dx,
+            field.getMinX(), field.getMaxX()),
+        ticksToExit(bulletY(bullet, startTime), bullet.dy,
+            field.getMinY(), field.getMaxY()));
+    long time = startTime + 1;
+    if (exitTicks > 1 && !Double.isInfinite(exitTicks)) {
+      time = startTime + (long) Math.ceil(exitTicks);
+      while (time > startTime + 1 && !bulletInField(bullet, time - 1)) {
+        time--;
+      }
+    }
+    while (bulletInField(bullet, time)) {
+      time++;
+    }
+    return time;
+  }
+
+  private static double ticksToExit(
+      double position, double velocity, double min, double max) {
+    if (velocity > 0) {
+      return (max - position) / velocity;
+    } else if (velocity < 0) {
+      return (min - position) / velocity;
     }
+    return Double.POSITIVE_INFINITY;
+  }
+
+  private boolean bulletInField(FiredBullet bullet, long time) {
+    return _battleField.rectangle.contains(
+        bulletX(bullet, time), bulletY(bullet, time));
+  }
+
+  private static boolean bulletInsideWave(
+      Wave w, FiredBullet bullet, long time) {
+    return bulletDistanceSq(w, bullet, time)
+        < DiaUtils.square(w.distanceTraveled(time));
+  }
+
+  private static double bulletDistanceSq(
+      Wave w, FiredBullet bullet, long time) {
+    return DiaUtils.square(bulletX(bullet, time) - w.sourceLocation.x)
+        + DiaUtils.square(bulletY(bullet, time) - w.sourceLocation.y);
+  }
+
+  private static double bulletX(FiredBullet bullet, long time) {
+    return bullet.sourceLocation.x + (bullet.dx * (time - bullet.fireTime));
+  }
+
+  private static double bulletY(FiredBullet bullet, long time) {
+    return bullet.sourceLocation.y + (bullet.dy * (time - bullet.fireTime));
+  }
+
+  /**
+   * Casts shadows over the parts of the bullet's line segment from the tick
+   * before to this tick that are between the wave's circles at the same two
+   * ticks. With s from 0 to 1 along the segment, the squared distance to the
+   * wave source is a quadratic in s, so each circle's crossings come from its
+   * roots: the segment is inside the outer circle between its roots, and
+   * outside the inner circle beyond the inner one's roots.
+   */
+  private void addBulletShadows(Wave w, FiredBullet b, long time) {
+    double x1 = bulletX(b, time - 1);
+    double y1 = bulletY(b, time - 1);
+    double ex = x1 - w.sourceLocation.x;
+    double ey = y1 - w.sourceLocation.y;
+    double qa = DiaUtils.square(b.bulletSpeed);
+    double qb = 2 * ((ex * b.dx) + (ey * b.dy));
+    double qc = (ex * ex) + (ey * ey);
+
+    double innerRadius = w.distanceTraveled(time - 1);
+    double outerRadius = w.distanceTraveled(time);
+    double outerDiscriminant =
+        (qb * qb) - (4 * qa * (qc - (outerRadius * outerRadius)));
+    if (outerDiscriminant <= 0) {
+      return;
+    }
+    double sqrtOuter = Math.sqrt(outerDiscriminant);
+    double start = Math.max(0, (-qb - sqrtOuter) / (2 * qa));
+    double end = Math.min(1, (-qb + sqrtOuter) / (2 * qa));
+
+    double innerDiscriminant =
+        (qb * qb) - (4 * qa * (qc - (innerRadius * innerRadius)));
+    if (innerDiscriminant <= 0) {
+      castShadow(w, x1, y1, b, start, end);
+    } else {
+      double sqrtInner = Math.sqrt(innerDiscriminant);
+      double innerStart = (-qb - sqrtInner) / (2 * qa);
+      double innerEnd = (-qb + sqrtInner) / (2 * qa);
+      castShadow(w, x1, y1, b, start, Math.min(end, innerStart));
+      castShadow(w, x1, y1, b, Math.max(start, innerEnd), end);
+    }
+  }
+
+  private static void castShadow(Wave w, double x1, double y1,
+      FiredBullet b, double start, double end) {
+    if (start < end) {
+      w.castShadow(
+          absoluteBearing(w, x1 + (b.dx * start), y1 + (b.dy * start)),
+          absoluteBearing(w, x1 + (b.dx * end), y1 + (b.dy * end)));
+    }
+  }
+
+  private static double absoluteBearing(Wave w, double x, double y) {
+    return Math.atan2(x - w.sourceLocation.x, y - w.sourceLocation.y);
   }
 
   public Wave newMoveWave(Point2D.Double sourceLocation,
@@ -456,7 +567,6 @@ public class MoveEnemy extends Enemy<TimestampedGuessFactor> {
 
     double enemyGunHeat = getGunHeat(currentTime);
     if (_imaginaryWaveIndex >= 0 && enemyGunHeat < 0.1000001) {
-      clearNeighborCache();
       Point2D.Double aimedFromLocation = null;
 
       if (enemyGunHeat < 0.0000001 && _waveManager.size() >= 2) {
@@ -487,6 +597,7 @@ public class MoveEnemy extends Enemy<TimestampedGuessFactor> {
                 lastBulletPower, -_imaginaryWave.orbitDirection));
         _imaginaryWave.absBearing = DiaUtils.absoluteBearing(
             aimedFromLocation, _imaginaryWave.targetLocation);
+        clearNeighborCache(_imaginaryWave);
       }
     }
   }
@@ -534,9 +645,7 @@ public class MoveEnemy extends Enemy<TimestampedGuessFactor> {
               enemyWave.targetLocation, lastBulletPower,
               -enemyWave.orbitDirection));
 
-      if (_imaginaryWave != null) {
-        clearNeighborCache();
-      }
+      clearNeighborCache(enemyWave);
       _imaginaryWave = null;
 
       enemyWave.firingWave = true;
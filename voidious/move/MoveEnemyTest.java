@@ -0,0 +1,198 @@
+package voidious.move;
+
+import static org.junit.Assert.*;
+
+import java.awt.geom.Point2D;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import voidious.gfx.RoboGraphic;
+import voidious.gun.FireListener.FiredBullet;
+import voidious.utils.BattleField;
+import voidious.utils.DiaUtils;
+import voidious.utils.MovementPredictor;
+import voidious.utils.Wave;
+
+/**
+ * Copyright (c) 2012 - Voidious
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+public class MoveEnemyTest {
+  private static final int RANDOM_TRIALS = 20000;
+
+  private BattleField _battleField;
+  private MoveEnemy _moveEnemy;
+  private Random _random;
+
+  @Before
+  public void setUp() {
+    _battleField = new BattleField(800, 600);
+    _moveEnemy = new MoveEnemy("Shadow", 400, 100, newLocation(400, 300), 0,
+        0, Math.PI, 1, 10L, new ArrayList<RoboGraphic>(), _battleField,
+        new MovementPredictor(_battleField),
+        new PrintStream(new ByteArrayOutputStream()));
+    _random = new Random(1);
+  }
+
+  @Test
+  public void testCrossingTimeMatchesStepping() {
+    int crossings = 0;
+    for (int x = 0; x < RANDOM_TRIALS; x++) {
+      Wave w = randomWave();
+      FiredBullet bullet = randomBullet();
+      long startTime = Math.max(w.fireTime, bullet.fireTime);
+      if (w.sourceLocation.distanceSq(bullet.position(startTime))
+          > DiaUtils.square(w.distanceTraveled(startTime))) {
+        long expected = steppedCrossingTime(w, bullet, startTime);
+        assertEquals(expected, _moveEnemy.crossingTime(w, bullet, startTime));
+        if (expected > 0) {
+          crossings++;
+        }
+      }
+    }
+    assertTrue(crossings > RANDOM_TRIALS / 10);
+  }
+
+  @Test
+  public void testFieldExitTimeMatchesStepping() {
+    for (int x = 0; x < RANDOM_TRIALS; x++) {
+      FiredBullet bullet = randomBullet();
+      long startTime = bullet.fireTime + _random.nextInt(10);
+      long expected = startTime + 1;
+      while (_battleField.rectangle.contains(bullet.position(expected))) {
+        expected++;
+      }
+      assertEquals(expected, _moveEnemy.fieldExitTime(bullet, startTime));
+    }
+  }
+
+  @Test
+  public void testSetShadowsBetweenWaveCircles() {
+    int shadowed = 0;
+    for (int x = 0; x < RANDOM_TRIALS; x++) {
+      Wave w = randomWave();
+      FiredBullet bullet = randomBullet();
+      long startTime = Math.max(w.fireTime, bullet.fireTime);
+      if (w.sourceLocation.distanceSq(bullet.position(startTime))
+          <= DiaUtils.square(w.distanceTraveled(startTime))) {
+        continue;
+      }
+      long time = steppedCrossingTime(w, bullet, startTime);
+      _moveEnemy.setShadows(w, bullet);
+      if (time < 0) {
+        assertTrue(w.shadows.isEmpty());
+        continue;
+      }
+
+      Point2D.Double start = bullet.position(time - 1);
+      double innerRadius = w.distanceTraveled(time - 1);
+      double outerRadius = w.distanceTraveled(time);
+      for (int y = 1; y < 20; y++) {
+        Point2D.Double p = new Point2D.Double(start.x + (bullet.dx * y / 20),
+            start.y + (bullet.dy * y / 20));
+        double distance = w.sourceLocation.distance(p);
+        if (distance > innerRadius + 1e-6 && distance < outerRadius - 1e-6) {
+          assertTrue(w.shadowed(
+              DiaUtils.absoluteBearing(w.sourceLocation, p)));
+          shadowed++;
+        }
+      }
+    }
+    assertTrue(shadowed > RANDOM_TRIALS);
+  }
+
+  @Test
+  public void testSetShadowsBulletLeavesField() {
+    Wave w = newWave(newLocation(400, 300), 10L, 2.0);
+    FiredBullet bullet = new FiredBullet(10L, newLocation(50, 300),
+        -Math.PI / 2, 11);
+    _moveEnemy.setShadows(w, bullet);
+    assertTrue(w.shadows.isEmpty());
+  }
+
+  @Test
+  public void testSetShadowsDeadBullet() {
+    Wave w = newWave(newLocation(400, 300), 10L, 2.0);
+    FiredBullet bullet = new FiredBullet(10L, newLocation(400, 100), 0, 11);
+    bullet.deathTime = 15L;
+    _moveEnemy.setShadows(w, bullet);
+    assertTrue(w.shadows.isEmpty());
+  }
+
+  @Test
+  public void testSetShadowsCrossingBullet() {
+    // Crosses the wave between ticks 25 and 26, around x = 470.
+    Wave w = newWave(newLocation(400, 300), 10L, 2.0);
+    FiredBullet bullet =
+        new FiredBullet(10L, newLocation(300, 100), Math.PI / 2, 11);
+    _moveEnemy.setShadows(w, bullet);
+    assertTrue(w.shadowed(Math.atan2(70, -200)));
+    assertFalse(w.shadowed(Math.atan2(50, -200)));
+    assertFalse(w.shadowed(Math.atan2(90, -200)));
+  }
+
+  /**
+   * The tick by tick search setShadows used before it solved for it.
+   */
+  private long steppedCrossingTime(
+      Wave w, FiredBullet bullet, long startTime) {
+    long time = startTime;
+    do {
+      time++;
+      if (w.sourceLocation.distanceSq(bullet.position(time))
+          < DiaUtils.square(w.distanceTraveled(time))) {
+        return time;
+      }
+    } while (_battleField.rectangle.contains(bullet.position(time)));
+    return -1;
+  }
+
+  private Wave randomWave() {
+    return newWave(randomLocation(), _random.nextInt(50),
+        0.1 + (_random.nextDouble() * 2.9));
+  }
+
+  private FiredBullet randomBullet() {
+    return new FiredBullet(_random.nextInt(50), randomLocation(),
+        _random.nextDouble() * 2 * Math.PI,
+        20 - (3 * (0.1 + (_random.nextDouble() * 2.9))));
+  }
+
+  private Point2D.Double randomLocation() {
+    return newLocation(18 + (_random.nextDouble() * 764),
+        18 + (_random.nextDouble() * 564));
+  }
+
+  private Wave newWave(
+      Point2D.Double sourceLocation, long fireTime, double bulletPower) {
+    return new Wave("Shadow", sourceLocation, newLocation(400, 500), 1,
+        fireTime, bulletPower, 0, 8, 1, _battleField,
+        new MovementPredictor(_battleField));
+  }
+
+  private Point2D.Double newLocation(double x, double y) {
+    return new Point2D.Double(x, y);
+  }
+}
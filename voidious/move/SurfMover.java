@@ -20,15 +20,16 @@ import voidious.utils.DiaUtils;
 import voidious.utils.KnnView;
 import voidious.utils.MaxEscapeTarget;
 import voidious.utils.MovementPredictor;
+import voidious.utils.PredictedPath;
 import voidious.utils.RobotState;
-import voidious.utils.RobotStateLog;
 import voidious.utils.RobotStateLog.AllStateListener;
-import voidious.utils.Timestamped;
+import voidious.utils.TickProfiler;
+import voidious.utils.TickProfiler.Section;
 import voidious.utils.TimestampedGuessFactor;
 import voidious.utils.Wave;
 import voidious.utils.Wave.BulletShadow;
 import voidious.utils.Wave.WavePosition;
-import ags.utils.KdTree;
+import ags.utils.FlatKdTree.NeighborBuffer;
 
 /**
  * Copyright (c) 2012 - Voidious
@@ -58,6 +59,7 @@ public class SurfMover {
   private static final double DISTANCING_DANGER_BASE = 2.5;
   private static final double MAX_ATTACK_ANGLE = Math.PI * .45;
   private static final double BASE_DANGER_FACTOR = 1.0;
+  private static final long SURF_BUDGET_NANOS = 2000000;
 
   private static final Color SHADOW_COLOR = new Color(50, 255, 50);
   private static final int WAVES_TO_DRAW = 5;
@@ -75,6 +77,16 @@ public class SurfMover {
   private DistanceController _distancer;
   private Wave _lastWaveSurfed;
   private MovementPredictor _predictor;
+  private double[] _decayWeights;
+  private Wave[] _surfWaves;
+  private List<KnnView<TimestampedGuessFactor>> _surfViews;
+  private TickProfiler _profiler;
+  private double[] _passDangers;
+  private int _surfDepth;
+  private Map<Wave, DangerProfile> _dangerProfiles;
+  private long _dangerProfileTime;
+  private double[] _profileAngles;
+  private double[] _profileWeights;
 
   public SurfMover(AdvancedRobot robot, BattleField battleField,
       Collection<RoboGraphic> renderables, OutputStream out) {
@@ -87,6 +99,15 @@ public class SurfMover {
     _surfOptionDangers = new HashMap<SurfOption, Double>();
     _surfOptionDestinations = new HashMap<SurfOption, Point2D.Double>();
     _distancer = new DistanceController();
+    _decayWeights = new double[0];
+    _surfWaves = new Wave[0];
+    _surfViews = new ArrayList<KnnView<TimestampedGuessFactor>>();
+    _profiler = TickProfiler.getInstance();
+    _passDangers = new double[SurfOption.values().length];
+    _dangerProfiles = new HashMap<Wave, DangerProfile>();
+    _dangerProfileTime = -1;
+    _profileAngles = new double[0];
+    _profileWeights = new double[0];
   }
 
   public void initRound() {
@@ -147,7 +168,6 @@ public class SurfMover {
   void surf(RobotState myRobotState, MoveEnemy duelEnemy, Wave surfWave,
       int wavesToSurf, boolean painting) {
     if (surfWave != _lastWaveSurfed) {
-      duelEnemy.clearNeighborCache();
       _lastWaveSurfed = surfWave;
       _lastSurfDestination = null;
       _stopDestination = null;
@@ -193,17 +213,96 @@ public class SurfMover {
 
   private void updateSurfDangers(RobotState myRobotState, MoveEnemy duelEnemy,
       int wavesToSurf, boolean goingClockwise) {
-    List<SurfOption> surfOptions = getSortedSurfOptions();
-    double bestSurfDanger = Double.POSITIVE_INFINITY;
-    for (SurfOption testOption : surfOptions) {
-      double testDanger = checkDanger(myRobotState, duelEnemy,
-          myRobotState, testOption, goingClockwise, Wave.FIRST_WAVE,
-          wavesToSurf, bestSurfDanger, new RobotStateLog());
-      _surfOptionDangers.put(testOption, testDanger);
-      bestSurfDanger = Math.min(bestSurfDanger, testDanger);
+    long startTime = System.nanoTime();
+    int numWaves = cacheNearestNeighbors(myRobotState, duelEnemy, wavesToSurf);
+    clearDangerProfiles();
+    updateSurfDangers(myRobotState, duelEnemy, Math.max(1, numWaves),
+        goingClockwise, startTime + SURF_BUDGET_NANOS);
+  }
+
+  /**
+   * Anytime surfing: rates every surf option one wave deep, then surfs a wave
+   * deeper each pass while there's time left before the deadline, keeping the
+   * dangers from the deepest pass that finished. Each pass tries the options
+   * in order of the last pass's dangers, so the best one sets a tight cutoff
+   * for the rest. A pass isn't started if it likely won't finish in time,
+   * guessing it costs as much as the last pass times the number of options.
+   */
+  void updateSurfDangers(RobotState myRobotState, MoveEnemy duelEnemy,
+      int maxDepth, boolean goingClockwise, long deadline) {
+    SurfOption[] allOptions = SurfOption.values();
+    long lastPassNanos = 0;
+    _surfDepth = 0;
+    for (int depth = 1; depth <= maxDepth; depth++) {
+      long passStartTime = System.nanoTime();
+      if (depth > 1
+          && passStartTime + (lastPassNanos * allOptions.length) > deadline) {
+        break;
+      }
+
+      List<SurfOption> surfOptions = getSortedSurfOptions();
+      double bestSurfDanger = Double.POSITIVE_INFINITY;
+      boolean outOfTime = false;
+      for (SurfOption testOption : surfOptions) {
+        if (depth > 1 && System.nanoTime() > deadline) {
+          outOfTime = true;
+          break;
+        }
+        _profiler.start(Section.DANGER);
+        double testDanger = checkDanger(myRobotState, duelEnemy,
+            myRobotState, testOption, goingClockwise, Wave.FIRST_WAVE,
+            depth, bestSurfDanger, new PredictedPath());
+        _profiler.stop();
+        _passDangers[testOption.ordinal()] = testDanger;
+        bestSurfDanger = Math.min(bestSurfDanger, testDanger);
+      }
+      if (outOfTime) {
+        break;
+      }
+
+      for (SurfOption surfOption : allOptions) {
+        _surfOptionDangers.put(surfOption, _passDangers[surfOption.ordinal()]);
+      }
+      _surfDepth = depth;
+      lastPassNanos = System.nanoTime() - passStartTime;
     }
   }
 
+  /**
+   * How many waves deep the last surf decision looked.
+   */
+  int surfDepth() {
+    return _surfDepth;
+  }
+
+  private int cacheNearestNeighbors(
+      RobotState myRobotState, MoveEnemy duelEnemy, int wavesToSurf) {
+    if (_surfWaves.length < wavesToSurf) {
+      _surfWaves = new Wave[wavesToSurf];
+    }
+    int numWaves = 0;
+    for (int x = 0; x < wavesToSurf; x++) {
+      Wave surfWave = duelEnemy.findSurfableWave(x, myRobotState);
+      if (surfWave == null) {
+        break;
+      }
+      _surfWaves[numWaves++] = surfWave;
+    }
+
+    double hitPercentage = normalizedEnemyHitPercentage(duelEnemy);
+    double marginOfError = hitPercentageMarginOfError(duelEnemy);
+    for (KnnView<TimestampedGuessFactor> view : duelEnemy.views.values()) {
+      view.retainCache(_surfWaves, numWaves);
+      if (view.enabled(hitPercentage, marginOfError)) {
+        _surfViews.add(view);
+      }
+    }
+    KnnView.cacheNearestNeighbors(_surfViews, _surfWaves, numWaves, false);
+    Arrays.fill(_surfWaves, null);
+    _surfViews.clear();
+    return numWaves;
+  }
+
   List<SurfOption> getSortedSurfOptions() {
     List<SurfOption> surfOptions = Arrays.asList(SurfOption.values());
     for (int x = 0; x < surfOptions.size(); x++) {
@@ -232,7 +331,7 @@ public class SurfMover {
   double checkDanger(RobotState myRobotState, MoveEnemy duelEnemy,
       RobotState startState, SurfOption surfOption,
       boolean previouslyMovingClockwise, int surfWaveIndex, int numWavesToSurf,
-      double cutoffDanger, RobotStateLog predictedStateLog) {
+      double cutoffDanger, PredictedPath predictedPath) {
     Wave surfWave = duelEnemy.findSurfableWave(surfWaveIndex, myRobotState);
     if (surfWave == null) {
       return 0;
@@ -242,8 +341,10 @@ public class SurfMover {
     WavePosition startWavePosition = surfWave.checkWavePosition(startState);
     if (surfWaveIndex > Wave.FIRST_WAVE
         && startWavePosition != WavePosition.MIDAIR) {
+      _profiler.start(Section.PREDICTION);
       dangerStates.addAll(
-          replaySurfStates(surfWave, predictedStateLog, startState));
+          replaySurfStates(surfWave, predictedPath, startState));
+      _profiler.stop();
     }
 
     if (startWavePosition == WavePosition.GONE && dangerStates.isEmpty()) {
@@ -280,6 +381,7 @@ public class SurfMover {
       _surfOptionDestinations.put(surfOption, surfDestination);
     }
 
+    _profiler.start(Section.PREDICTION);
     do {
       if (!waveHit && surfWave.checkWavePosition(
               predictedState, WavePosition.BREAKING_FRONT)
@@ -301,17 +403,18 @@ public class SurfMover {
         passedState = predictedState;
         wavePassed = true;
       } else {
-        predictedStateLog.addState(predictedState);
+        predictedPath.addState(predictedState);
         predictedState = predictSurfLocation(
             predictedState, surfDestination, maxVelocity, smoothingSurfOption);
       }
     } while (!wavePassed);
+    _profiler.stop();
 
     Wave.Intersection intersection = surfWave.preciseIntersection(dangerStates);
     double baseDangerScore =
         normalizedEnemyHitRate(duelEnemy) * BASE_DANGER_FACTOR;
     double danger = baseDangerScore + getDangerScore(
-        duelEnemy, surfWave, intersection, surfWaveIndex);
+        duelEnemy, surfWave, intersection);
     danger *= surfWave.shadowFactor(intersection);
     danger *= Rules.getBulletDamage(surfWave.bulletPower());
     double currentDistanceToWaveSource =
@@ -329,14 +432,14 @@ public class SurfMover {
       double nextCounterClockwiseDanger = checkDanger(myRobotState, duelEnemy,
           passedState, SurfOption.COUNTER_CLOCKWISE, predictClockwise,
           surfWaveIndex + 1, numWavesToSurf, cutoffDanger,
-          (RobotStateLog) predictedStateLog.clone());
+          predictedPath.branch());
       double nextStopDanger = checkDanger(myRobotState, duelEnemy, passedState,
           SurfOption.STOP, predictClockwise, surfWaveIndex + 1, numWavesToSurf,
-          cutoffDanger, (RobotStateLog) predictedStateLog.clone());
+          cutoffDanger, predictedPath.branch());
       double nextClockwiseDanger = checkDanger(myRobotState, duelEnemy,
           passedState, SurfOption.CLOCKWISE, predictClockwise,
           surfWaveIndex + 1, numWavesToSurf, cutoffDanger,
-          (RobotStateLog) predictedStateLog.clone());
+          predictedPath.branch());
 
       danger += Math.min(nextCounterClockwiseDanger,
                          Math.min(nextStopDanger, nextClockwiseDanger));
@@ -355,9 +458,9 @@ public class SurfMover {
   }
 
   List<RobotState> replaySurfStates(final Wave surfWave,
-      RobotStateLog predictedStateLog, RobotState startState) {
+      PredictedPath predictedPath, RobotState startState) {
     final List<RobotState> dangerStates = new ArrayList<RobotState>();
-    predictedStateLog.forAllStates(new AllStateListener() {
+    predictedPath.forAllStates(new AllStateListener() {
       @Override
       public void onRobotState(RobotState state) {
         WavePosition pastWavePosition = surfWave.checkWavePosition(state);
@@ -411,62 +514,84 @@ public class SurfMover {
   }
 
   double getDangerScore(MoveEnemy duelEnemy, Wave w,
-        Point2D.Double dangerLocation, int surfWaveIndex) {
+        Point2D.Double dangerLocation) {
     Wave.Intersection intersection = new Wave.Intersection(
         DiaUtils.absoluteBearing(w.sourceLocation, dangerLocation), 0.05);
-    return getDangerScore(duelEnemy, w, intersection, surfWaveIndex);
+    return getDangerScore(duelEnemy, w, intersection);
   }
 
   double getDangerScore(MoveEnemy duelEnemy, Wave w,
-      Wave.Intersection intersection, int surfWaveIndex) {
-    double dangerAngle = intersection.angle;
-    double bandwidth = intersection.bandwidth;
-    double totalDanger = 0;
+      Wave.Intersection intersection) {
+    DangerProfile dangerProfile = getDangerProfile(duelEnemy, w);
+    if (dangerProfile == null) {
+      return defaultDanger(w, intersection);
+    }
+    return dangerProfile.danger(intersection.angle, intersection.bandwidth);
+  }
+
+  void clearDangerProfiles() {
+    _dangerProfiles.clear();
+  }
+
+  /**
+   * The wave's danger profile, built once per tick since the neighbors,
+   * views and bullet shadows can all change between ticks. Null if none of
+   * the enabled views have any data.
+   */
+  DangerProfile getDangerProfile(MoveEnemy duelEnemy, Wave w) {
+    long currentTime = _robot.getTime();
+    if (currentTime != _dangerProfileTime) {
+      _dangerProfiles.clear();
+      _dangerProfileTime = currentTime;
+    }
+    if (_dangerProfiles.containsKey(w)) {
+      return _dangerProfiles.get(w);
+    }
+
     double totalScanWeight = 0;
     int enabledSize = 0;
+    int numAngles = 0;
     double hitPercentage = normalizedEnemyHitPercentage(duelEnemy);
     double marginOfError = hitPercentageMarginOfError(duelEnemy);
     for (KnnView<TimestampedGuessFactor> view : duelEnemy.views.values()) {
       if (view.enabled(hitPercentage, marginOfError)) {
         enabledSize += view.size();
-        List<KdTree.Entry<TimestampedGuessFactor>> nearestNeighbors =
-            getNearestNeighbors(view, w, surfWaveIndex);
-        Map<Timestamped, Double> weightMap =
-            view.getDecayWeights(nearestNeighbors);
+        NeighborBuffer<TimestampedGuessFactor> nearestNeighbors =
+            view.cachedNearestNeighbors(w, false);
+        int numScans = nearestNeighbors.size();
+        if (_decayWeights.length < numScans) {
+          _decayWeights = new double[numScans];
+        }
+        if (_profileAngles.length < numAngles + numScans) {
+          _profileAngles = Arrays.copyOf(_profileAngles, numAngles + numScans);
+          _profileWeights =
+              Arrays.copyOf(_profileWeights, numAngles + numScans);
+        }
+        view.getDecayWeights(nearestNeighbors, _decayWeights);
 
-        double density = 0;
         double viewScanWeight = 0;
-        int numScans = nearestNeighbors.size();
         for (int x = 0; x < numScans; x++) {
-          TimestampedGuessFactor tsgf = nearestNeighbors.get(x).value;
+          TimestampedGuessFactor tsgf = nearestNeighbors.value(x);
           double scanWeight =
-              weightMap.get(tsgf) / Math.sqrt(nearestNeighbors.get(x).distance);
+              _decayWeights[x] / Math.sqrt(nearestNeighbors.distance(x));
           double xFiringAngle = DiaUtils.normalizeAngle(
-              w.firingAngle(tsgf.guessFactor), dangerAngle);
+              w.firingAngle(tsgf.guessFactor), w.absBearing);
           if (!w.shadowed(xFiringAngle)) {
-            double ux = (xFiringAngle - dangerAngle) / bandwidth;
-            density += scanWeight * Math.pow(2, -Math.abs(ux));
+            _profileAngles[numAngles] = xFiringAngle;
+            _profileWeights[numAngles] = view.weight * scanWeight;
+            numAngles++;
           }
           viewScanWeight += scanWeight;
         }
         totalScanWeight += viewScanWeight * view.weight;
-        totalDanger += view.weight * density;
       }
     }
 
-    if (enabledSize == 0) {
-      return defaultDanger(w, intersection);
-    }
-
-    return totalDanger / totalScanWeight;
-  }
-
-  private List<KdTree.Entry<TimestampedGuessFactor>> getNearestNeighbors(
-      KnnView<TimestampedGuessFactor> view, Wave w, int surfWaveIndex) {
-    if (!view.cachedNeighbors.containsKey(surfWaveIndex)) {
-      view.cachedNeighbors.put(surfWaveIndex, view.nearestNeighbors(w, false));
-    }
-    return view.cachedNeighbors.get(surfWaveIndex);
+    DangerProfile dangerProfile = (enabledSize == 0) ? null
+        : new DangerProfile(w.absBearing, _profileAngles, _profileWeights,
+            numAngles, totalScanWeight);
+    _dangerProfiles.put(w, dangerProfile);
+    return dangerProfile;
   }
 
   // TODO: move these to MoveEnemy
@@ -550,7 +675,7 @@ public class SurfMover {
       } else {
         gfShadowed[x] = false;
         gfDangers[x] = getDangerScore(
-            duelEnemy, surfWave, dangerLocation, surfWaveIndex);
+            duelEnemy, surfWave, dangerLocation);
       }
 
       if (gfDangers[x] < minDanger) {
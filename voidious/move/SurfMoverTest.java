@@ -29,6 +29,7 @@ import voidious.test.RobocodeEventTestHelper;
 import voidious.utils.BattleField;
 import voidious.utils.DiaUtils;
 import voidious.utils.MovementPredictor;
+import voidious.utils.PredictedPath;
 import voidious.utils.RobotState;
 import voidious.utils.RobotStateLog;
 import voidious.utils.Wave;
@@ -251,10 +252,10 @@ public class SurfMoverTest {
     when(diamond.getTime()).thenReturn(210L);
     double clockwiseDanger = mover.checkDanger(newRobotState(400, 500), duelEnemy,
         startState, SurfOption.CLOCKWISE, true, Wave.FIRST_WAVE, 1,
-        Double.POSITIVE_INFINITY, new RobotStateLog());
+        Double.POSITIVE_INFINITY, new PredictedPath());
     double counterDanger = mover.checkDanger(newRobotState(400, 500), duelEnemy,
         startState, SurfOption.COUNTER_CLOCKWISE, true, Wave.FIRST_WAVE, 1,
-        Double.POSITIVE_INFINITY, new RobotStateLog());
+        Double.POSITIVE_INFINITY, new PredictedPath());
     assertTrue(clockwiseDanger > counterDanger * 10);
   }
 
@@ -279,13 +280,35 @@ public class SurfMoverTest {
     when(diamond.getTime()).thenReturn(210L);
     double clockwiseDanger = mover.checkDanger(newRobotState(400, 500), duelEnemy,
         startState, SurfOption.CLOCKWISE, true, Wave.FIRST_WAVE, 1,
-        Double.POSITIVE_INFINITY, new RobotStateLog());
+        Double.POSITIVE_INFINITY, new PredictedPath());
     double counterDanger = mover.checkDanger(newRobotState(400, 500), duelEnemy,
         startState, SurfOption.COUNTER_CLOCKWISE, true, Wave.FIRST_WAVE, 1,
-        Double.POSITIVE_INFINITY, new RobotStateLog());
+        Double.POSITIVE_INFINITY, new PredictedPath());
     assertTrue(clockwiseDanger > counterDanger * 10);
   }
 
+  @Test
+  public void testUpdateSurfDangersDeepens() {
+    SurfMover mover = newSurfMover();
+    MoveEnemy duelEnemy = newDuelEnemy();
+    setupSurfWave(duelEnemy);
+    when(diamond.getTime()).thenReturn(210L);
+    mover.updateSurfDangers(newSurfState(), duelEnemy, 2, true,
+        Long.MAX_VALUE);
+    assertEquals(2, mover.surfDepth());
+  }
+
+  @Test
+  public void testUpdateSurfDangersOutOfTime() {
+    SurfMover mover = newSurfMover();
+    MoveEnemy duelEnemy = newDuelEnemy();
+    setupSurfWave(duelEnemy);
+    when(diamond.getTime()).thenReturn(210L);
+    mover.updateSurfDangers(newSurfState(), duelEnemy, 2, true,
+        System.nanoTime() - 1);
+    assertEquals(1, mover.surfDepth());
+  }
+
   private Wave setupHitWave(MoveEnemy duelEnemy) {
     Wave w = duelEnemy.newMoveWave(newLocation(400, 100), newLocation(400, 500),
         0, 1, 31L, 3.0, 100, Math.PI * .6, 5.0, 1, 1, 50, 150, 250, 6, 0);
@@ -355,7 +378,7 @@ public class SurfMoverTest {
         .setVelocity(-8)
         .setTime(140L)
         .build();
-    RobotStateLog stateLog = new RobotStateLog();
+    PredictedPath predictedPath = new PredictedPath();
     for (long time = 139L; time > 126L; time--) {
       RobotState oldState = RobotState.newBuilder()
           .setLocation(DiaUtils.project(startState.location,
@@ -365,10 +388,10 @@ public class SurfMoverTest {
           .setVelocity(startState.velocity)
           .setTime(time)
           .build();
-      stateLog.addState(oldState);
+      predictedPath.addState(oldState);
     }
     List<RobotState> dangerStates =
-        mover.replaySurfStates(surfWave, stateLog, startState);
+        mover.replaySurfStates(surfWave, predictedPath, startState);
     assertFalse(dangerStates.isEmpty());
     assertTrue(dangerStates.size() <= 4);
   }
@@ -519,12 +542,9 @@ public class SurfMoverTest {
     Wave.Intersection intersection = new Wave.Intersection(angle, 0.05);
     Wave.Intersection intersection2 = new Wave.Intersection(angle + 0.01, 0.05);
     Wave.Intersection intersection3 = new Wave.Intersection(angle - 0.01, 0.05);
-    double d1 = mover.getDangerScore(
-        duelEnemy, surfWave, intersection, Wave.FIRST_WAVE);
-    double d2 = mover.getDangerScore(
-        duelEnemy, surfWave, intersection2, Wave.FIRST_WAVE);
-    double d3 = mover.getDangerScore(
-        duelEnemy, surfWave, intersection3, Wave.FIRST_WAVE);
+    double d1 = mover.getDangerScore(duelEnemy, surfWave, intersection);
+    double d2 = mover.getDangerScore(duelEnemy, surfWave, intersection2);
+    double d3 = mover.getDangerScore(duelEnemy, surfWave, intersection3);
     assertTrue(d1 > d2);
     assertTrue(d1 > d3);
   }
@@ -542,6 +562,15 @@ public class SurfMoverTest {
     return new Point2D.Double(x, y);
   }
 
+  private RobotState newSurfState() {
+    return RobotState.newBuilder()
+        .setLocation(newLocation(410, 500))
+        .setHeading(Math.PI / 2)
+        .setVelocity(8.0)
+        .setTime(210L)
+        .build();
+  }
+
   private RobotState newRobotState(double x, double y) {
     return RobotState.newBuilder().setLocation(newLocation(x, y)).build();
   }
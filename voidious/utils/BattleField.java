@@ -30,11 +30,26 @@ public class BattleField {
   public final Rectangle2D.Double rectangle;
   public final double width;
   public final double height;
+  private boolean _fastWallSmoothing;
 
   public BattleField(double width, double height) {
     rectangle = new Rectangle2D.Double(18, 18, width - 36, height - 36);
     this.width = width;
     this.height = height;
+    _fastWallSmoothing = false;
+  }
+
+  /**
+   * Use WallSmoothingTable instead of Math.acos when smoothing along a
+   * single wall. Near corners, it still iterates with the exact method.
+   */
+  public BattleField setFastWallSmoothing(boolean fastWallSmoothing) {
+    _fastWallSmoothing = fastWallSmoothing;
+    return this;
+  }
+
+  public boolean fastWallSmoothing() {
+    return _fastWallSmoothing;
   }
 
   public Point2D.Double translateToField(Point2D.Double p) {
@@ -90,18 +105,44 @@ public class BattleField {
    */
   public double wallSmoothing(Point2D.Double startLocation, double startAngle,
       int orientation, double wallStick) {
-    double wallDistanceX = Math.min(startLocation.x - 18,
-                                    width - startLocation.x - 18);
-    double wallDistanceY = Math.min(startLocation.y - 18,
-                                    height - startLocation.y - 18);
+    return wallSmoothing(startLocation.x, startLocation.y, startAngle,
+        orientation, wallStick);
+  }
+
+  public double wallSmoothing(double startX, double startY, double startAngle,
+      int orientation, double wallStick) {
+    double wallDistanceX = Math.min(startX - 18, width - startX - 18);
+    double wallDistanceY = Math.min(startY - 18, height - startY - 18);
 
     if (wallDistanceX > wallStick && wallDistanceY > wallStick) {
       return startAngle;
     }
 
+    if (_fastWallSmoothing && wallDistanceX >= 0 && wallDistanceY >= 0) {
+      if (wallDistanceX > wallStick
+          && height - 36 - wallDistanceY > wallStick) {
+        double testY = startY + (Math.cos(startAngle) * wallStick);
+        if (testY - 18 >= 0 && height - testY - 18 >= 0) {
+          return startAngle;
+        }
+        return ((testY < 18) ? Math.PI : 0) + orientation
+            * (WallSmoothingTable.smoothingAngle(wallDistanceY, wallStick)
+                + 0.0005);
+      } else if (wallDistanceY > wallStick
+          && width - 36 - wallDistanceX > wallStick) {
+        double testX = startX + (Math.sin(startAngle) * wallStick);
+        if (testX - 18 >= 0 && width - testX - 18 >= 0) {
+          return startAngle;
+        }
+        return ((testX < 18) ? (3 * HALF_PI) : HALF_PI) + orientation
+            * (WallSmoothingTable.smoothingAngle(wallDistanceX, wallStick)
+                + 0.0005);
+      }
+    }
+
     double angle = startAngle;
-    double testX = startLocation.x + (Math.sin(angle) * wallStick);
-    double testY = startLocation.y + (Math.cos(angle) * wallStick);
+    double testX = startX + (Math.sin(angle) * wallStick);
+    double testY = startY + (Math.cos(angle) * wallStick);
     double testDistanceX =
         Math.min(testX - 18, width - testX - 18);
     double testDistanceY =
@@ -132,8 +173,8 @@ public class BattleField {
         angle +=
             orientation * (Math.abs(Math.acos(adjacent/wallStick)) + 0.0005);
       }
-      testX = startLocation.x + (Math.sin(angle) * wallStick);
-      testY = startLocation.y + (Math.cos(angle) * wallStick);
+      testX = startX + (Math.sin(angle) * wallStick);
+      testY = startY + (Math.cos(angle) * wallStick);
       testDistanceX = Math.min(testX - 18, width - testX - 18);
       testDistanceY = Math.min(testY - 18, height - testY - 18);
     }
@@ -4,6 +4,7 @@ import static org.junit.Assert.*;
 
 import java.awt.geom.Point2D;
 import java.awt.geom.Point2D.Double;
+import java.util.Random;
 
 import org.junit.Test;
 
@@ -271,6 +272,54 @@ public class BattleFieldTest {
     assertTrue(goAngle > Math.PI && goAngle < Math.PI * 1.5);
   }
 
+  @Test
+  public void testFastWallSmoothingMatches800x600() {
+    assertFastWallSmoothingMatches(800, 600, 31);
+  }
+
+  @Test
+  public void testFastWallSmoothingMatches1000x1000() {
+    assertFastWallSmoothingMatches(1000, 1000, 37);
+  }
+
+  private void assertFastWallSmoothingMatches(
+      double width, double height, long seed) {
+    BattleField exact = newBattleField(width, height);
+    BattleField fast = newBattleField(width, height).setFastWallSmoothing(true);
+    for (double[] sample : wallSmoothingSamples(exact, 100000, seed)) {
+      double exactAngle = exact.wallSmoothing(
+          sample[0], sample[1], sample[2], (int) sample[3], sample[4]);
+      double fastAngle = fast.wallSmoothing(
+          sample[0], sample[1], sample[2], (int) sample[3], sample[4]);
+      assertEquals(0,
+          Utils.normalRelativeAngle(fastAngle - exactAngle), 0.00001);
+    }
+  }
+
+  // x, y, angle, orientation, wall stick; mostly near the walls
+  private double[][] wallSmoothingSamples(
+      BattleField battleField, int numSamples, long seed) {
+    Random random = new Random(seed);
+    double[] wallSticks = new double[]{100, 120, 160};
+    double[][] samples = new double[numSamples][];
+    for (int x = 0; x < numSamples; x++) {
+      double wallStick = wallSticks[random.nextInt(wallSticks.length)];
+      double margin = 18 + (random.nextDouble() * wallStick * 1.2);
+      double sampleX = 18 + (random.nextDouble() * (battleField.width - 36));
+      double sampleY = 18 + (random.nextDouble() * (battleField.height - 36));
+      switch (random.nextInt(4)) {
+        case 0: sampleX = margin; break;
+        case 1: sampleX = battleField.width - margin; break;
+        case 2: sampleY = margin; break;
+        default: sampleY = battleField.height - margin;
+      }
+      samples[x] = new double[]{sampleX, sampleY,
+          random.nextDouble() * 2 * Math.PI, random.nextBoolean() ? 1 : -1,
+          wallStick};
+    }
+    return samples;
+  }
+
   private BattleField newBattleField(double width, double height) {
     return new BattleField(width, height);
   }
@@ -49,6 +49,11 @@ public class DiaUtils {
         target.y - sourceLocation.y);
   }
 
+  public static double absoluteBearing(double sourceX, double sourceY,
+       Point2D.Double target) {
+    return Math.atan2(target.x - sourceX, target.y - sourceY);
+  }
+
   public static int nonZeroSign(double d) {
     if (d < 0) { return -1; }
     return 1;
@@ -1,5 +1,9 @@
 package voidious.utils;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * Copyright (c) 2009-2011 - Voidious
  *
@@ -22,10 +26,60 @@ package voidious.utils;
  */
 
 abstract public class DistanceFormula {
+  private static final Map<String, Integer> _featureIds =
+      new HashMap<String, Integer>();
+
   public double[] weights;
+  private int _featureId = -1;
+
   abstract public double[] dataPointFromWave(Wave w, boolean aiming);
 
   public double[] dataPointFromWave(Wave w) {
     return dataPointFromWave(w, false);
   }
+
+  /**
+   * Data point for this wave, computed once and then shared with every
+   * formula that has the same feature key, until the wave's cached data
+   * points are cleared. The returned array must not be modified, since
+   * trees keep the points they're given.
+   */
+  public double[] cachedDataPointFromWave(Wave w, boolean aiming) {
+    int key = (featureId() << 1) | (aiming ? 1 : 0);
+    double[] dataPoint = w.cachedDataPoint(key);
+    if (dataPoint == null) {
+      dataPoint = dataPointFromWave(w, aiming);
+      w.cacheDataPoint(key, dataPoint);
+    }
+    return dataPoint;
+  }
+
+  /**
+   * Formulas with equal feature keys produce the same data points from the
+   * same wave. Override to add any other state that affects the data points.
+   */
+  public String featureKey() {
+    return getClass().getName();
+  }
+
+  /**
+   * Formulas with equal keys produce the same data points from the same
+   * wave and weigh them the same way, so their views can share a tree.
+   */
+  public String indexKey() {
+    return featureKey() + Arrays.toString(weights);
+  }
+
+  int featureId() {
+    if (_featureId < 0) {
+      String featureKey = featureKey();
+      Integer featureId = _featureIds.get(featureKey);
+      if (featureId == null) {
+        featureId = _featureIds.size();
+        _featureIds.put(featureKey, featureId);
+      }
+      _featureId = featureId;
+    }
+    return _featureId;
+  }
 }
@@ -0,0 +1,135 @@
+package voidious.utils;
+
+import static org.junit.Assert.*;
+
+import java.awt.geom.Point2D;
+
+import org.junit.Test;
+
+/**
+ * Copyright (c) 2012 - Voidious
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+public class DistanceFormulaTest {
+  @Test
+  public void testCachedDataPointSharedByFormula() {
+    CountingFormula formula1 = new CountingFormula(1);
+    CountingFormula formula2 = new CountingFormula(2);
+    Wave w = newWave(4);
+    double[] dataPoint = formula1.cachedDataPointFromWave(w, false);
+    assertSame(dataPoint, formula1.cachedDataPointFromWave(w, false));
+    assertSame(dataPoint, formula2.cachedDataPointFromWave(w, false));
+    assertEquals(1, formula1.computed + formula2.computed);
+  }
+
+  @Test
+  public void testCachedDataPointAiming() {
+    CountingFormula formula = new CountingFormula(1);
+    Wave w = newWave(4);
+    double[] dataPoint = formula.cachedDataPointFromWave(w, false);
+    double[] aimingPoint = formula.cachedDataPointFromWave(w, true);
+    assertNotSame(dataPoint, aimingPoint);
+    assertEquals(4, dataPoint[0], 0);
+    assertEquals(0, aimingPoint[0], 0);
+    assertEquals(2, formula.computed);
+  }
+
+  @Test
+  public void testCachedDataPointDifferentFeatureKeys() {
+    CountingFormula formula = new CountingFormula(1);
+    OtherFormula otherFormula = new OtherFormula();
+    Wave w = newWave(4);
+    assertEquals(4, formula.cachedDataPointFromWave(w, false)[0], 0);
+    assertEquals(-4, otherFormula.cachedDataPointFromWave(w, false)[0], 0);
+    assertTrue(formula.featureId() != otherFormula.featureId());
+  }
+
+  @Test
+  public void testClearCachedDataPoints() {
+    CountingFormula formula = new CountingFormula(1);
+    Wave w = newWave(4);
+    double[] dataPoint = formula.cachedDataPointFromWave(w, false);
+    w.targetVelocity = 6;
+    w.clearCachedDataPoints();
+    double[] newDataPoint = formula.cachedDataPointFromWave(w, false);
+    assertEquals(4, dataPoint[0], 0);
+    assertEquals(6, newDataPoint[0], 0);
+    assertEquals(2, formula.computed);
+  }
+
+  @Test
+  public void testSetBulletPowerClearsCachedDataPoints() {
+    CountingFormula formula = new CountingFormula(1);
+    Wave w = newWave(4);
+    double[] dataPoint = formula.cachedDataPointFromWave(w, false);
+    w.setBulletPower(3);
+    assertNotSame(dataPoint, formula.cachedDataPointFromWave(w, false));
+  }
+
+  @Test
+  public void testCloneDoesNotShareCachedDataPoints() {
+    CountingFormula formula = new CountingFormula(1);
+    Wave w = newWave(4);
+    formula.cachedDataPointFromWave(w, false);
+    Wave clone = (Wave) w.clone();
+    clone.targetVelocity = 6;
+    assertEquals(6, formula.cachedDataPointFromWave(clone, false)[0], 0);
+    assertEquals(4, formula.cachedDataPointFromWave(w, false)[0], 0);
+  }
+
+  @Test
+  public void testIndexKey() {
+    assertEquals(new CountingFormula(1).indexKey(),
+        new CountingFormula(1).indexKey());
+    assertFalse(new CountingFormula(1).indexKey().equals(
+        new CountingFormula(2).indexKey()));
+  }
+
+  private Wave newWave(double targetVelocity) {
+    return new Wave("Shadow", new Point2D.Double(400, 100),
+        new Point2D.Double(400, 400), 1, 10L, 1.95, 0, targetVelocity, 1,
+        null, null);
+  }
+
+  private static class CountingFormula extends DistanceFormula {
+    int computed = 0;
+
+    public CountingFormula(double weight) {
+      weights = new double[]{weight};
+    }
+
+    @Override
+    public double[] dataPointFromWave(Wave w, boolean aiming) {
+      computed++;
+      return new double[]{aiming ? 0 : w.targetVelocity};
+    }
+  }
+
+  private static class OtherFormula extends DistanceFormula {
+    public OtherFormula() {
+      weights = new double[]{1};
+    }
+
+    @Override
+    public double[] dataPointFromWave(Wave w, boolean aiming) {
+      return new double[]{-w.targetVelocity};
+    }
+  }
+}
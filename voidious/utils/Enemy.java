@@ -92,6 +92,11 @@ public class Enemy<T extends Timestamped> {
   }
 
   public void addView(KnnView<T> view) {
+    for (KnnView<T> otherView : views.values()) {
+      if (view.shareIndex(otherView)) {
+        break;
+      }
+    }
     views.put(view.name, view);
   }
 
@@ -0,0 +1,171 @@
+package voidious.utils;
+
+import java.awt.geom.Point2D;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import robocode.util.Utils;
+
+/**
+ * Copyright (c) 2012 - Voidious
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+/**
+ * Least recently used cache of precise escape angle simulations, shared by
+ * every MovementPredictor so the gun and movement don't repeat the same
+ * ones. Inputs are quantized finely enough that only simulations that are
+ * effectively identical share a result, and fields with fast wall smoothing
+ * never share one with fields without it.
+ */
+public class EscapeAngleCache {
+  private static final int DEFAULT_CAPACITY = 512;
+  private static final double LOCATION_QUANTUM = 0.01;
+  private static final double ANGLE_QUANTUM = 0.0001;
+  private static final double VELOCITY_QUANTUM = 0.001;
+
+  private static EscapeAngleCache _instance;
+  private final Map<Key, MaxEscapeTarget> _cache;
+  private final Key _probe;
+  private long _hits;
+  private long _misses;
+
+  EscapeAngleCache(final int capacity) {
+    _cache = new LinkedHashMap<Key, MaxEscapeTarget>(
+        capacity * 2, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(
+          Map.Entry<Key, MaxEscapeTarget> eldest) {
+        return size() > capacity;
+      }
+    };
+    _probe = new Key();
+    _hits = 0;
+    _misses = 0;
+  }
+
+  public static EscapeAngleCache getInstance() {
+    if (_instance == null) {
+      _instance = new EscapeAngleCache(DEFAULT_CAPACITY);
+    }
+    return _instance;
+  }
+
+  public MaxEscapeTarget get(BattleField battleField, int predictDirection,
+      Point2D.Double sourceLocation, long fireTime, double bulletSpeed,
+      RobotState startState, double attackAngle, double wallStick) {
+    _probe.set(battleField, predictDirection, sourceLocation, fireTime,
+        bulletSpeed, startState, attackAngle, wallStick);
+    MaxEscapeTarget target = _cache.get(_probe);
+    if (target == null) {
+      _misses++;
+    } else {
+      _hits++;
+    }
+    return target;
+  }
+
+  public void put(BattleField battleField, int predictDirection,
+      Point2D.Double sourceLocation, long fireTime, double bulletSpeed,
+      RobotState startState, double attackAngle, double wallStick,
+      MaxEscapeTarget target) {
+    Key key = new Key();
+    key.set(battleField, predictDirection, sourceLocation, fireTime,
+        bulletSpeed, startState, attackAngle, wallStick);
+    _cache.put(key, target);
+  }
+
+  public int size() {
+    return _cache.size();
+  }
+
+  public long hits() {
+    return _hits;
+  }
+
+  public long misses() {
+    return _misses;
+  }
+
+  public void clear() {
+    _cache.clear();
+  }
+
+  private static long quantize(double value, double quantum) {
+    return Math.round(value / quantum);
+  }
+
+  private static class Key {
+    private final long[] _values = new long[15];
+    private int _hashCode;
+
+    void set(BattleField battleField, int predictDirection,
+        Point2D.Double sourceLocation, long fireTime, double bulletSpeed,
+        RobotState startState, double attackAngle, double wallStick) {
+      _values[0] = quantize(battleField.width, LOCATION_QUANTUM);
+      _values[1] = quantize(battleField.height, LOCATION_QUANTUM);
+      _values[2] = predictDirection;
+      _values[3] = quantize(sourceLocation.x, LOCATION_QUANTUM);
+      _values[4] = quantize(sourceLocation.y, LOCATION_QUANTUM);
+      _values[5] = fireTime;
+      _values[6] = quantize(bulletSpeed, VELOCITY_QUANTUM);
+      _values[7] = quantize(startState.location.x, LOCATION_QUANTUM);
+      _values[8] = quantize(startState.location.y, LOCATION_QUANTUM);
+      _values[9] = quantize(
+          Utils.normalAbsoluteAngle(startState.heading), ANGLE_QUANTUM);
+      _values[10] = quantize(startState.velocity, VELOCITY_QUANTUM);
+      _values[11] = startState.time;
+      _values[12] = quantize(attackAngle, ANGLE_QUANTUM);
+      _values[13] = quantize(wallStick, LOCATION_QUANTUM);
+      _values[14] = battleField.fastWallSmoothing() ? 1 : 0;
+      long hash = 17;
+      for (long value : _values) {
+        hash = (hash * 31) + value;
+      }
+      _hashCode = (int) (hash ^ (hash >>> 32));
+    }
+
+    @Override
+    public int hashCode() {
+      return _hashCode;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      if (_hashCode != other._hashCode) {
+        return false;
+      }
+      for (int x = 0; x < _values.length; x++) {
+        if (_values[x] != other._values[x]) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+}
@@ -0,0 +1,148 @@
+package voidious.utils;
+
+import static org.junit.Assert.*;
+
+import java.awt.geom.Point2D;
+
+import org.junit.Test;
+
+/**
+ * Copyright (c) 2012 - Voidious
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+public class EscapeAngleCacheTest {
+
+  @Test
+  public void testGetMiss() {
+    EscapeAngleCache cache = new EscapeAngleCache(10);
+    assertNull(cache.get(newBattleField(), 1, newLocation(400, 100), 10L,
+        14.3, newStartState(400, 400, 10L), 0, 120));
+    assertEquals(1, cache.misses());
+  }
+
+  @Test
+  public void testGetHit() {
+    EscapeAngleCache cache = new EscapeAngleCache(10);
+    MaxEscapeTarget target = newTarget();
+    cache.put(newBattleField(), 1, newLocation(400, 100), 10L, 14.3,
+        newStartState(400, 400, 10L), 0, 120, target);
+    assertSame(target, cache.get(newBattleField(), 1, newLocation(400, 100),
+        10L, 14.3, newStartState(400, 400, 10L), 0, 120));
+    assertEquals(1, cache.hits());
+  }
+
+  @Test
+  public void testGetHitWithinQuantum() {
+    EscapeAngleCache cache = new EscapeAngleCache(10);
+    MaxEscapeTarget target = newTarget();
+    cache.put(newBattleField(), 1, newLocation(400, 100), 10L, 14.3,
+        newStartState(400, 400, 10L), 0, 120, target);
+    assertSame(target, cache.get(newBattleField(), 1,
+        newLocation(400.0000001, 100), 10L, 14.3,
+        newStartState(400, 399.9999999, 10L), 0, 120));
+  }
+
+  @Test
+  public void testGetDifferentInputs() {
+    EscapeAngleCache cache = new EscapeAngleCache(10);
+    cache.put(newBattleField(), 1, newLocation(400, 100), 10L, 14.3,
+        newStartState(400, 400, 10L), 0, 120, newTarget());
+    assertNull(cache.get(newBattleField(), -1, newLocation(400, 100), 10L,
+        14.3, newStartState(400, 400, 10L), 0, 120));
+    assertNull(cache.get(newBattleField(), 1, newLocation(400, 100), 10L,
+        14.3, newStartState(400, 400, 10L), 0.1, 120));
+    assertNull(cache.get(newBattleField(), 1, newLocation(400, 100), 10L,
+        14.3, newStartState(400, 400, 11L), 0, 120));
+    assertNull(cache.get(new BattleField(1000, 1000), 1,
+        newLocation(400, 100), 10L, 14.3, newStartState(400, 400, 10L), 0,
+        120));
+  }
+
+  @Test
+  public void testFastWallSmoothingNotShared() {
+    EscapeAngleCache cache = new EscapeAngleCache(10);
+    MaxEscapeTarget exactTarget = newTarget();
+    MaxEscapeTarget fastTarget = newTarget();
+    cache.put(newBattleField(), 1, newLocation(400, 100), 10L, 14.3,
+        newStartState(400, 400, 10L), 0, 120, exactTarget);
+    assertNull(cache.get(newBattleField().setFastWallSmoothing(true), 1,
+        newLocation(400, 100), 10L, 14.3, newStartState(400, 400, 10L), 0,
+        120));
+    cache.put(newBattleField().setFastWallSmoothing(true), 1,
+        newLocation(400, 100), 10L, 14.3, newStartState(400, 400, 10L), 0,
+        120, fastTarget);
+    assertEquals(2, cache.size());
+    assertSame(exactTarget, cache.get(newBattleField(), 1,
+        newLocation(400, 100), 10L, 14.3, newStartState(400, 400, 10L), 0,
+        120));
+    assertSame(fastTarget, cache.get(
+        newBattleField().setFastWallSmoothing(true), 1, newLocation(400, 100),
+        10L, 14.3, newStartState(400, 400, 10L), 0, 120));
+  }
+
+  @Test
+  public void testLeastRecentlyUsedEvicted() {
+    EscapeAngleCache cache = new EscapeAngleCache(2);
+    cache.put(newBattleField(), 1, newLocation(400, 100), 10L, 14.3,
+        newStartState(400, 400, 10L), 0, 120, newTarget());
+    cache.put(newBattleField(), 1, newLocation(400, 100), 11L, 14.3,
+        newStartState(400, 400, 11L), 0, 120, newTarget());
+    assertNotNull(cache.get(newBattleField(), 1, newLocation(400, 100), 10L,
+        14.3, newStartState(400, 400, 10L), 0, 120));
+    cache.put(newBattleField(), 1, newLocation(400, 100), 12L, 14.3,
+        newStartState(400, 400, 12L), 0, 120, newTarget());
+    assertEquals(2, cache.size());
+    assertNotNull(cache.get(newBattleField(), 1, newLocation(400, 100), 10L,
+        14.3, newStartState(400, 400, 10L), 0, 120));
+    assertNull(cache.get(newBattleField(), 1, newLocation(400, 100), 11L,
+        14.3, newStartState(400, 400, 11L), 0, 120));
+  }
+
+  @Test
+  public void testPredictorUsesCache() {
+    MovementPredictor predictor = new MovementPredictor(newBattleField());
+    RobotState startState = newStartState(400, 400, 10L);
+    MaxEscapeTarget target = predictor.preciseEscapeAngle(
+        1, newLocation(400, 100), 10L, 14.3, startState, 0.1, 120);
+    assertSame(target, predictor.preciseEscapeAngle(
+        1, newLocation(400, 100), 10L, 14.3, startState, 0.1, 120));
+  }
+
+  private MaxEscapeTarget newTarget() {
+    return new MaxEscapeTarget(0.8, newLocation(600, 300), 30L, false);
+  }
+
+  private RobotState newStartState(double x, double y, long time) {
+    return RobotState.newBuilder()
+        .setLocation(newLocation(x, y))
+        .setHeading(Math.PI / 2)
+        .setVelocity(8)
+        .setTime(time)
+        .build();
+  }
+
+  private BattleField newBattleField() {
+    return new BattleField(800, 600);
+  }
+
+  private Point2D.Double newLocation(double x, double y) {
+    return new Point2D.Double(x, y);
+  }
+}
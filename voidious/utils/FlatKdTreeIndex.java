@@ -0,0 +1,70 @@
+package voidious.utils;
+
+import ags.utils.FlatKdTree;
+import ags.utils.FlatKdTree.NeighborBuffer;
+
+/**
+ * Copyright (c) 2012 - Voidious
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+/**
+ * SpatialIndex backed by FlatKdTree, which numbers its points and searches
+ * by id natively, and searches several locations in one pass.
+ */
+class FlatKdTreeIndex<T> implements SpatialIndex<T> {
+  private final FlatKdTree.WeightedSqrEuclid<T> _tree;
+
+  FlatKdTreeIndex(int dimensions, Integer sizeLimit) {
+    _tree = new FlatKdTree.WeightedSqrEuclid<T>(dimensions, sizeLimit);
+  }
+
+  @Override
+  public int size() {
+    return _tree.size();
+  }
+
+  @Override
+  public void addPoint(double[] location, T value) {
+    _tree.addPoint(location, value);
+  }
+
+  @Override
+  public void setWeights(double[] weights) {
+    _tree.setWeights(weights);
+  }
+
+  @Override
+  public void nearestNeighbor(double[] location, int count, int minId,
+      NeighborBuffer<T> results) {
+    _tree.nearestNeighbor(location, count, minId, results);
+  }
+
+  @Override
+  public void nearestNeighbor(double[][] locations, int[] counts,
+      int[] minIds, NeighborBuffer<T>[] results, int numQueries) {
+    _tree.nearestNeighbor(locations, counts, minIds, results, numQueries);
+  }
+
+  @Override
+  public void offerPoint(double[] location, double[] point, T value, int id,
+      NeighborBuffer<T> results) {
+    _tree.offerPoint(location, point, value, id, results);
+  }
+}
@@ -0,0 +1,125 @@
+package voidious.utils;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+import ags.utils.FlatKdTree.NeighborBuffer;
+import ags.utils.KdTree;
+
+/**
+ * Copyright (c) 2012 - Voidious
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+/**
+ * SpatialIndex backed by KdTree. Each value is stored with its id, and a
+ * search walks the tree's nearest neighbor iterator, skipping points older
+ * than the minimum id, until it has found enough. The tree's own size limit
+ * drops old points, so unless views with different windows share the index,
+ * nothing needs skipping.
+ */
+class KdTreeIndex<T> implements SpatialIndex<T> {
+  private final KdTree.WeightedSqrEuclid<Numbered<T>> _tree;
+  private double[] _weights;
+  private int _nextId;
+
+  KdTreeIndex(int dimensions, Integer sizeLimit) {
+    _tree = new KdTree.WeightedSqrEuclid<Numbered<T>>(dimensions, sizeLimit);
+    _weights = new double[dimensions];
+    Arrays.fill(_weights, 1.0);
+    _nextId = 0;
+  }
+
+  @Override
+  public int size() {
+    return _tree.size();
+  }
+
+  @Override
+  public void addPoint(double[] location, T value) {
+    _tree.addPoint(location, new Numbered<T>(_nextId++, value));
+  }
+
+  @Override
+  public void setWeights(double[] weights) {
+    _weights = weights;
+    _tree.setWeights(weights);
+  }
+
+  @Override
+  public void nearestNeighbor(double[] location, int count, int minId,
+      NeighborBuffer<T> results) {
+    results.reset(count);
+    if (count <= 0) {
+      return;
+    }
+    Iterator<KdTree.Entry<Numbered<T>>> neighbors =
+        _tree.nearestNeighborIterator(location);
+    while (results.size() < count && neighbors.hasNext()) {
+      KdTree.Entry<Numbered<T>> neighbor = neighbors.next();
+      if (neighbor.value.id >= minId) {
+        results.addValue(
+            neighbor.distance, neighbor.value.value, neighbor.value.id);
+      }
+    }
+  }
+
+  @Override
+  public void nearestNeighbor(double[][] locations, int[] counts,
+      int[] minIds, NeighborBuffer<T>[] results, int numQueries) {
+    for (int x = 0; x < numQueries; x++) {
+      nearestNeighbor(locations[x], counts[x],
+          (minIds == null) ? Integer.MIN_VALUE : minIds[x], results[x]);
+    }
+  }
+
+  @Override
+  public void offerPoint(double[] location, double[] point, T value, int id,
+      NeighborBuffer<T> results) {
+    results.addValue(distance(location, point, _weights), value, id);
+  }
+
+  /**
+   * Weighted squared distance, skipping missing (NaN) attributes like the
+   * trees do.
+   */
+  static double distance(double[] p1, double[] p2, double[] weights) {
+    double d = 0;
+    for (int x = 0; x < p1.length; x++) {
+      double diff = (p1[x] - p2[x]) * weights[x];
+      if (!Double.isNaN(diff)) {
+        d += diff * diff;
+      }
+    }
+    return d;
+  }
+
+  /**
+   * A value and the id of its point.
+   */
+  static class Numbered<T> {
+    final int id;
+    final T value;
+
+    Numbered(int id, T value) {
+      this.id = id;
+      this.value = value;
+    }
+  }
+}
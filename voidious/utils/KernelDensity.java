@@ -0,0 +1,222 @@
+package voidious.utils;
+
+import java.util.Arrays;
+
+/**
+ * Copyright (c) 2012 - Voidious
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+/**
+ * Kernel density of weighted firing angles, for guns that aim at the
+ * densest of a set of candidate angles.
+ *
+ * With the cubic kernel, 1 - |u|^3 within a bandwidth of an angle, the
+ * points are sorted once and the density at any angle comes from prefix
+ * sums of w, wa, wa^2 and wa^3 over the points on either side of it within
+ * the bandwidth, found by binary search. So m candidates against n points
+ * cost O((n + m) log n) instead of O(nm). The Gaussian kernel has no
+ * cutoff, so it's summed over every point.
+ */
+public class KernelDensity {
+  private static final int INITIAL_CAPACITY = 32;
+
+  public enum Kernel {
+    CUBIC,
+    GAUSSIAN
+  }
+
+  private final Kernel _kernel;
+  private double _bandwidth;
+  private double[] _angles;
+  private double[] _weights;
+  private int _size;
+  private boolean _sorted;
+  private double[] _scratchAngles;
+  private double[] _scratchWeights;
+  private double[] _sums0;
+  private double[] _sums1;
+  private double[] _sums2;
+  private double[] _sums3;
+
+  public KernelDensity(Kernel kernel) {
+    _kernel = kernel;
+    _bandwidth = 1;
+    _angles = new double[INITIAL_CAPACITY];
+    _weights = new double[INITIAL_CAPACITY];
+    _scratchAngles = new double[INITIAL_CAPACITY];
+    _scratchWeights = new double[INITIAL_CAPACITY];
+    _sums0 = new double[INITIAL_CAPACITY + 1];
+    _sums1 = new double[INITIAL_CAPACITY + 1];
+    _sums2 = new double[INITIAL_CAPACITY + 1];
+    _sums3 = new double[INITIAL_CAPACITY + 1];
+    _size = 0;
+    _sorted = true;
+  }
+
+  public void clear(double bandwidth) {
+    _bandwidth = bandwidth;
+    _size = 0;
+    _sorted = true;
+  }
+
+  public void add(double angle, double weight) {
+    if (_size == _angles.length) {
+      int capacity = _size * 2;
+      _angles = Arrays.copyOf(_angles, capacity);
+      _weights = Arrays.copyOf(_weights, capacity);
+      _scratchAngles = new double[capacity];
+      _scratchWeights = new double[capacity];
+      _sums0 = new double[capacity + 1];
+      _sums1 = new double[capacity + 1];
+      _sums2 = new double[capacity + 1];
+      _sums3 = new double[capacity + 1];
+    }
+    _angles[_size] = angle;
+    _weights[_size] = weight;
+    _size++;
+    _sorted = false;
+  }
+
+  public int size() {
+    return _size;
+  }
+
+  public double density(double angle) {
+    if (_kernel == Kernel.GAUSSIAN) {
+      double density = 0;
+      for (int x = 0; x < _size; x++) {
+        double ux = (angle - _angles[x]) / _bandwidth;
+        density += Math.exp(-0.5 * ux * ux) * _weights[x];
+      }
+      return density;
+    }
+
+    sort();
+    int start = firstAbove(angle - _bandwidth, false);
+    int middle = firstAbove(angle, false);
+    int end = firstAbove(angle + _bandwidth, true);
+    double bandwidthCubed = _bandwidth * _bandwidth * _bandwidth;
+
+    // Points at or before the angle: sum of w * (angle - a)^3.
+    double w0 = _sums0[middle] - _sums0[start];
+    double w1 = _sums1[middle] - _sums1[start];
+    double w2 = _sums2[middle] - _sums2[start];
+    double w3 = _sums3[middle] - _sums3[start];
+    double before = w0
+        - ((((angle * w0) - (3 * w1)) * angle + (3 * w2)) * angle - w3)
+            / bandwidthCubed;
+
+    // Points after it: sum of w * (a - angle)^3.
+    w0 = _sums0[end] - _sums0[middle];
+    w1 = _sums1[end] - _sums1[middle];
+    w2 = _sums2[end] - _sums2[middle];
+    w3 = _sums3[end] - _sums3[middle];
+    double after = w0
+        - ((((3 * w1) - (angle * w0)) * angle - (3 * w2)) * angle + w3)
+            / bandwidthCubed;
+
+    return before + after;
+  }
+
+  /**
+   * Index of the densest of the candidate angles, the first one if there's
+   * a tie. Fills in each candidate's density if densities isn't null.
+   */
+  public int densestIndex(
+      double[] angles, int numAngles, double[] densities) {
+    int bestIndex = -1;
+    double bestDensity = Double.NEGATIVE_INFINITY;
+    for (int x = 0; x < numAngles; x++) {
+      double density = density(angles[x]);
+      if (density > bestDensity) {
+        bestIndex = x;
+        bestDensity = density;
+      }
+      if (densities != null) {
+        densities[x] = density;
+      }
+    }
+    return bestIndex;
+  }
+
+  // First sorted index whose angle is above this one, or at or above it.
+  private int firstAbove(double angle, boolean inclusive) {
+    int low = 0;
+    int high = _size;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (_angles[middle] > angle || (inclusive && _angles[middle] == angle)) {
+        high = middle;
+      } else {
+        low = middle + 1;
+      }
+    }
+    return low;
+  }
+
+  private void sort() {
+    if (_sorted) {
+      return;
+    }
+    // Bottom-up merge sort, carrying the weights along.
+    double[] angles = _angles;
+    double[] weights = _weights;
+    double[] toAngles = _scratchAngles;
+    double[] toWeights = _scratchWeights;
+    for (int width = 1; width < _size; width *= 2) {
+      for (int start = 0; start < _size; start += 2 * width) {
+        int middle = Math.min(start + width, _size);
+        int end = Math.min(start + (2 * width), _size);
+        int left = start;
+        int right = middle;
+        for (int x = start; x < end; x++) {
+          if (left < middle
+              && (right >= end || angles[left] <= angles[right])) {
+            toAngles[x] = angles[left];
+            toWeights[x] = weights[left++];
+          } else {
+            toAngles[x] = angles[right];
+            toWeights[x] = weights[right++];
+          }
+        }
+      }
+      double[] swap = angles;
+      angles = toAngles;
+      toAngles = swap;
+      swap = weights;
+      weights = toWeights;
+      toWeights = swap;
+    }
+    _angles = angles;
+    _weights = weights;
+    _scratchAngles = toAngles;
+    _scratchWeights = toWeights;
+
+    for (int x = 0; x < _size; x++) {
+      double a = _angles[x];
+      double w = _weights[x];
+      _sums0[x + 1] = _sums0[x] + w;
+      _sums1[x + 1] = _sums1[x] + (w * a);
+      _sums2[x + 1] = _sums2[x] + (w * a * a);
+      _sums3[x + 1] = _sums3[x] + (w * a * a * a);
+    }
+    _sorted = true;
+  }
+}
@@ -0,0 +1,173 @@
+package voidious.utils;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Copyright (c) 2012 - Voidious
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+public class KernelDensityTest {
+  private static final double BANDWIDTH = 0.1;
+
+  @Test
+  public void testCubicDensity() {
+    KernelDensity density = new KernelDensity(KernelDensity.Kernel.CUBIC);
+    density.clear(BANDWIDTH);
+    density.add(0, 1);
+    density.add(0.05, 2);
+    density.add(-0.2, 4);
+    assertEquals(3, density.size());
+    assertEquals(1 + (2 * (1 - 0.125)), density.density(0), 0.000001);
+    assertEquals((1 - 0.125) + 2, density.density(0.05), 0.000001);
+    assertEquals(4, density.density(-0.2), 0.000001);
+    assertEquals(0, density.density(0.16), 0.000001);
+  }
+
+  @Test
+  public void testCubicDensityMatchesSum() {
+    Random random = new Random(14);
+    KernelDensity density = new KernelDensity(KernelDensity.Kernel.CUBIC);
+    for (int x = 0; x < 20; x++) {
+      double bandwidth = 0.02 + (random.nextDouble() * 0.2);
+      double[] angles = randomAngles(random, 1 + random.nextInt(300));
+      double[] weights = randomWeights(random, angles.length);
+      addPoints(density, bandwidth, angles, weights);
+      for (int y = 0; y < 100; y++) {
+        double angle = (random.nextDouble() * 2.4) - 1.2;
+        assertEquals(cubicDensity(angles, weights, bandwidth, angle),
+            density.density(angle), 0.0000001);
+      }
+      for (int y = 0; y < angles.length; y++) {
+        assertEquals(cubicDensity(angles, weights, bandwidth, angles[y]),
+            density.density(angles[y]), 0.0000001);
+      }
+    }
+  }
+
+  @Test
+  public void testGaussianDensityMatchesSum() {
+    Random random = new Random(15);
+    KernelDensity density = new KernelDensity(KernelDensity.Kernel.GAUSSIAN);
+    double[] angles = randomAngles(random, 50);
+    double[] weights = randomWeights(random, angles.length);
+    addPoints(density, BANDWIDTH, angles, weights);
+    for (int x = 0; x < 100; x++) {
+      double angle = (random.nextDouble() * 2.4) - 1.2;
+      double expected = 0;
+      for (int y = 0; y < angles.length; y++) {
+        double ux = (angle - angles[y]) / BANDWIDTH;
+        expected += Math.exp(-0.5 * ux * ux) * weights[y];
+      }
+      assertEquals(expected, density.density(angle), 0.0000001);
+    }
+  }
+
+  @Test
+  public void testDensestIndex() {
+    Random random = new Random(16);
+    KernelDensity density = new KernelDensity(KernelDensity.Kernel.CUBIC);
+    double[] candidates = DiaUtils.generateFiringAngles(59, 0.8);
+    double[] densities = new double[candidates.length];
+    for (int x = 0; x < 20; x++) {
+      double[] angles = randomAngles(random, 1 + random.nextInt(100));
+      double[] weights = randomWeights(random, angles.length);
+      addPoints(density, BANDWIDTH, angles, weights);
+      int bestIndex = -1;
+      double bestDensity = Double.NEGATIVE_INFINITY;
+      for (int y = 0; y < candidates.length; y++) {
+        double expected =
+            cubicDensity(angles, weights, BANDWIDTH, candidates[y]);
+        if (expected > bestDensity) {
+          bestIndex = y;
+          bestDensity = expected;
+        }
+      }
+      int densestIndex =
+          density.densestIndex(candidates, candidates.length, densities);
+      assertEquals(bestDensity, densities[densestIndex], 0.0000001);
+      assertEquals(bestDensity, density.density(candidates[bestIndex]),
+          0.0000001);
+    }
+  }
+
+  @Test
+  public void testDensestIndexNoPoints() {
+    KernelDensity density = new KernelDensity(KernelDensity.Kernel.CUBIC);
+    density.clear(BANDWIDTH);
+    assertEquals(0, density.densestIndex(new double[]{-0.1, 0, 0.1}, 3, null));
+    assertEquals(-1, density.densestIndex(new double[0], 0, null));
+  }
+
+  @Test
+  public void testClearReusesPoints() {
+    KernelDensity density = new KernelDensity(KernelDensity.Kernel.CUBIC);
+    density.clear(BANDWIDTH);
+    for (int x = 0; x < 100; x++) {
+      density.add(x * 0.01, 1);
+    }
+    density.clear(BANDWIDTH);
+    density.add(0.5, 2);
+    assertEquals(1, density.size());
+    assertEquals(2, density.density(0.5), 0.000001);
+    assertEquals(0, density.density(0.3), 0.000001);
+  }
+
+  private static void addPoints(KernelDensity density, double bandwidth,
+      double[] angles, double[] weights) {
+    density.clear(bandwidth);
+    for (int x = 0; x < angles.length; x++) {
+      density.add(angles[x], weights[x]);
+    }
+  }
+
+  private static double cubicDensity(
+      double[] angles, double[] weights, double bandwidth, double angle) {
+    double density = 0;
+    for (int x = 0; x < angles.length; x++) {
+      double ux = (angle - angles[x]) / bandwidth;
+      if (Math.abs(ux) < 1) {
+        density += (1 - DiaUtils.cube(Math.abs(ux))) * weights[x];
+      }
+    }
+    return density;
+  }
+
+  private static double[] randomAngles(Random random, int count) {
+    double[] angles = new double[count];
+    for (int x = 0; x < count; x++) {
+      // Some repeats, like neighbors that hit at the same guess factor.
+      angles[x] = (x > 0 && random.nextInt(5) == 0)
+          ? angles[random.nextInt(x)] : (random.nextDouble() * 2) - 1;
+    }
+    return angles;
+  }
+
+  private static double[] randomWeights(Random random, int count) {
+    double[] weights = new double[count];
+    for (int x = 0; x < count; x++) {
+      weights[x] = 1 / Math.sqrt(0.01 + random.nextDouble() * 10);
+    }
+    return weights;
+  }
+}
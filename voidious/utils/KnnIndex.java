@@ -0,0 +1,228 @@
+package voidious.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import ags.utils.FlatKdTree.NeighborBuffer;
+import ags.utils.KdTree;
+import voidious.utils.TickProfiler.Section;
+
+/**
+ * Copyright (c) 2012 - Voidious
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+/**
+ * The tree behind one or more KnnViews that log the same data points, ie
+ * same formula and weights and the same kinds of waves. Each point is stored
+ * once, and each view projects its own window of recent points, k and decay
+ * over it. Points are numbered in the order they're added, so a view's
+ * window is just a minimum id.
+ */
+class KnnIndex<T> {
+  private final int _dimensions;
+  private double[] _weights;
+  private final List<KnnView<T>> _views;
+  private final SpatialIndex.Backend _backend;
+  private SpatialIndex<T> _tree;
+  private int _version;
+  private final TickProfiler _profiler;
+
+  private double[][] _batchPoints;
+  private int[] _batchCounts;
+  private int[] _batchMinIds;
+  private NeighborBuffer<T>[] _batchNeighbors;
+  private KnnView<T>[] _batchViews;
+  private Wave[] _batchWaves;
+  int batchStamp;
+
+  KnnIndex(int dimensions, double[] weights, SpatialIndex.Backend backend) {
+    _dimensions = dimensions;
+    _backend = backend;
+    _weights = weights;
+    _views = new ArrayList<KnnView<T>>();
+    _tree = null;
+    _version = 0;
+    _profiler = TickProfiler.getInstance();
+    ensureBatchSize(0);
+  }
+
+  void attach(KnnView<T> view) {
+    _views.add(view);
+  }
+
+  void detach(KnnView<T> view) {
+    _views.remove(view);
+  }
+
+  boolean isShared() {
+    return _views.size() > 1;
+  }
+
+  /**
+   * The number of points ever added, which is also the id of the next one.
+   */
+  int version() {
+    return _version;
+  }
+
+  int size() {
+    return (_tree == null) ? 0 : _tree.size();
+  }
+
+  void addPoint(double[] dataPoint, T value) {
+    if (_tree == null) {
+      _tree = _backend.newIndex(_dimensions, sizeLimit());
+      _tree.setWeights(_weights);
+    }
+    _tree.addPoint(dataPoint, value);
+    _version++;
+  }
+
+  // Big enough for the largest window, or unlimited if any view keeps all.
+  private Integer sizeLimit() {
+    int sizeLimit = 0;
+    for (KnnView<T> view : _views) {
+      if (view.maxDataPoints == 0) {
+        return null;
+      }
+      sizeLimit = Math.max(sizeLimit, view.maxDataPoints);
+    }
+    return sizeLimit;
+  }
+
+  void setWeights(double[] weights) {
+    _weights = weights;
+    if (_tree != null) {
+      _tree.setWeights(weights);
+    }
+  }
+
+  List<KdTree.Entry<T>> nearestNeighbors(double[] dataPoint, int k, int minId) {
+    if (_tree == null) {
+      return new ArrayList<KdTree.Entry<T>>();
+    }
+    NeighborBuffer<T> neighbors = new NeighborBuffer<T>(k);
+    nearestNeighbors(dataPoint, k, minId, neighbors);
+    return neighbors.entries();
+  }
+
+  void nearestNeighbors(
+      double[] dataPoint, int k, int minId, NeighborBuffer<T> neighbors) {
+    if (_tree == null) {
+      neighbors.reset(k);
+    } else {
+      _profiler.start(Section.KNN);
+      _tree.nearestNeighbor(dataPoint, k, minId, neighbors);
+      _profiler.stop();
+    }
+  }
+
+  void offerPoint(double[] dataPoint, double[] point, T value, int id,
+      NeighborBuffer<T> neighbors) {
+    _tree.offerPoint(dataPoint, point, value, id, neighbors);
+  }
+
+  void nearestNeighbors(double[][] dataPoints, int[] counts, int[] minIds,
+      NeighborBuffer<T>[] neighbors, int numQueries) {
+    if (_tree == null) {
+      for (int x = 0; x < numQueries; x++) {
+        neighbors[x].reset(counts[x]);
+      }
+    } else {
+      _profiler.start(Section.KNN);
+      _tree.nearestNeighbor(
+          dataPoints, counts, minIds, neighbors, numQueries);
+      _profiler.stop();
+    }
+  }
+
+  /**
+   * For each of the given views on this index, caches the nearest neighbors
+   * of each wave that isn't cached yet or whose cached neighbors are out of
+   * date. All of the searches share one pass over the tree, and each wave's
+   * data point is only computed once.
+   */
+  void cacheNearestNeighbors(Iterable<KnnView<T>> views, Wave[] waves,
+      int numWaves, boolean aiming) {
+    int numQueries = 0;
+    for (int x = 0; x < numWaves; x++) {
+      double[] dataPoint = null;
+      for (KnnView<T> view : views) {
+        if (view.index() == this && !view.isCached(waves[x], aiming)) {
+          if (dataPoint == null) {
+            dataPoint = view.formula.cachedDataPointFromWave(
+                waves[x], aiming);
+          }
+          ensureBatchSize(numQueries + 1);
+          _batchPoints[numQueries] = dataPoint;
+          _batchCounts[numQueries] = view.k();
+          _batchMinIds[numQueries] = view.minId();
+          _batchNeighbors[numQueries] = view.newNeighborBuffer();
+          _batchViews[numQueries] = view;
+          _batchWaves[numQueries] = waves[x];
+          numQueries++;
+        }
+      }
+    }
+
+    if (numQueries > 0) {
+      nearestNeighbors(_batchPoints, _batchCounts, _batchMinIds,
+          _batchNeighbors, numQueries);
+      for (int x = 0; x < numQueries; x++) {
+        _batchViews[x].putCache(_batchWaves[x], aiming, _batchPoints[x],
+            _batchCounts[x], _batchNeighbors[x]);
+      }
+      Arrays.fill(_batchPoints, 0, numQueries, null);
+      Arrays.fill(_batchNeighbors, 0, numQueries, null);
+      Arrays.fill(_batchViews, 0, numQueries, null);
+      Arrays.fill(_batchWaves, 0, numQueries, null);
+    }
+  }
+
+  private void ensureBatchSize(int size) {
+    if (_batchPoints == null) {
+      _batchPoints = new double[size][];
+      _batchCounts = new int[size];
+      _batchMinIds = new int[size];
+      _batchNeighbors = newNeighborBuffers(size);
+      _batchViews = newViews(size);
+      _batchWaves = new Wave[size];
+    } else if (_batchPoints.length < size) {
+      int newSize = Math.max(size, _batchPoints.length * 2);
+      _batchPoints = Arrays.copyOf(_batchPoints, newSize);
+      _batchCounts = Arrays.copyOf(_batchCounts, newSize);
+      _batchMinIds = Arrays.copyOf(_batchMinIds, newSize);
+      _batchNeighbors = Arrays.copyOf(_batchNeighbors, newSize);
+      _batchViews = Arrays.copyOf(_batchViews, newSize);
+      _batchWaves = Arrays.copyOf(_batchWaves, newSize);
+    }
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private static <T> NeighborBuffer<T>[] newNeighborBuffers(int size) {
+    return new NeighborBuffer[size];
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private static <T> KnnView<T>[] newViews(int size) {
+    return new KnnView[size];
+  }
+}
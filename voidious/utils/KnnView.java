@@ -1,10 +1,16 @@
 package voidious.utils;
 
+import java.util.ArrayDeque;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
+import ags.utils.FlatKdTree.NeighborBuffer;
 import ags.utils.KdTree;
 import ags.utils.KdTree.Entry;
 
@@ -44,9 +50,19 @@ public class KnnView<T> {
   public double paddedHitThreshold;
   public double decayRate;
   public String name;
+  public SpatialIndex.Backend backend;
 
-  private KdTree.WeightedSqrEuclid<T> _tree;
-  public Map<Integer, List<KdTree.Entry<T>>> cachedNeighbors;
+  private static int _batchStamp = 0;
+
+  private KnnIndex<T> _index;
+  private int _logged;
+  private final List<KnnView<T>> _selfList;
+  private Map<Wave, CachedNeighbors<T>> _cache;
+  private ArrayDeque<NeighborBuffer<T>> _spareBuffers;
+  private int[] _decayOrder;
+  private double[][] _batchPoints;
+  private int[] _batchCounts;
+  private int[] _batchMinIds;
 
   public static final double NO_DECAY = 0;
 
@@ -63,21 +79,30 @@ public class KnnView<T> {
     paddedHitThreshold = 0;
     maxDataPoints = 0;
     decayRate = NO_DECAY;
+    backend = SpatialIndex.Backend.FLAT_KD_TREE;
     name = (new Long(Math.round(Math.random() * 10000000))).toString()
         + "-" + _nameIndex++;
-    initTree();
-    cachedNeighbors = new HashMap<Integer, List<KdTree.Entry<T>>>();
+    _selfList = Collections.singletonList(this);
+    initIndex();
+    _cache = new IdentityHashMap<Wave, CachedNeighbors<T>>();
+    _spareBuffers = new ArrayDeque<NeighborBuffer<T>>();
+    _decayOrder = new int[0];
+    ensureBatchSize(0);
   }
 
-  private void initTree() {
-    _tree = new KdTree.WeightedSqrEuclid<T>(
-        formula.weights.length, maxDataPoints == 0 ? null : maxDataPoints);
-    _tree.setWeights(formula.weights);
+  private void initIndex() {
+    if (_index != null) {
+      _index.detach(this);
+    }
+    _index =
+        new KnnIndex<T>(formula.weights.length, formula.weights, backend);
+    _index.attach(this);
+    _logged = 0;
   }
 
   public KnnView<T> setFormula(DistanceFormula formula) {
     this.formula = formula;
-    initTree();
+    initIndex();
     return this;
   }
 
@@ -128,7 +153,17 @@ public class KnnView<T> {
 
   public KnnView<T> setMaxDataPoints(int maxDataPoints) {
     this.maxDataPoints = maxDataPoints;
-    initTree();
+    if (!_index.isShared()) {
+      initIndex();
+    }
+    return this;
+  }
+
+  public KnnView<T> setBackend(SpatialIndex.Backend backend) {
+    this.backend = backend;
+    if (!_index.isShared()) {
+      initIndex();
+    }
     return this;
   }
 
@@ -143,17 +178,171 @@ public class KnnView<T> {
   }
 
   public double[] logWave(Wave w, T value) {
-    double[] dataPoint = formula.dataPointFromWave(w);
+    double[] dataPoint = formula.cachedDataPointFromWave(w, false);
     return logDataPoint(dataPoint, value);
   }
 
+  // Views sharing an index are all logged the same points, so only the
+  // first view to see each point needs to add it.
   protected double[] logDataPoint(double[] dataPoint, T value) {
-    _tree.addPoint(dataPoint, value);
+    if (_logged == _index.version()) {
+      _index.addPoint(dataPoint, value);
+    }
+    _logged++;
+    updateCache(dataPoint, value, _logged - 1);
     return dataPoint;
   }
 
+  // Merges a new point into the cached neighbors that were up to date. They
+  // go stale instead if k changed or one of them left the window.
+  private void updateCache(double[] dataPoint, T value, int id) {
+    int k = k();
+    int minId = minId();
+    for (CachedNeighbors<T> cached : _cache.values()) {
+      if (cached.version == id && cached.k == k
+          && !hasEvicted(cached.neighbors, minId)) {
+        _index.offerPoint(
+            cached.dataPoint, dataPoint, value, id, cached.neighbors);
+        cached.version = _logged;
+      }
+    }
+  }
+
+  private static boolean hasEvicted(NeighborBuffer<?> neighbors, int minId) {
+    for (int x = 0; x < neighbors.size(); x++) {
+      if (neighbors.id(x) < minId) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Starts sharing the other view's tree if both views would log exactly
+   * the same data points and neither has logged any yet.
+   */
+  boolean shareIndex(KnnView<T> other) {
+    if (other._index == _index || _index.version() > 0
+        || other._index.version() > 0
+        || !formula.indexKey().equals(other.formula.indexKey())
+        || backend != other.backend
+        || logBulletHits != other.logBulletHits
+        || logVisits != other.logVisits
+        || logVirtual != other.logVirtual
+        || logMelee != other.logMelee) {
+      return false;
+    }
+    _index.detach(this);
+    _index = other._index;
+    _index.attach(this);
+    _logged = 0;
+    return true;
+  }
+
+  KnnIndex<T> index() {
+    return _index;
+  }
+
+  int k() {
+    return DiaUtils.limit(1, size() / kDivisor, kSize);
+  }
+
+  // Lowest id in this view's window of the index.
+  int minId() {
+    return (maxDataPoints > 0)
+        ? _index.version() - maxDataPoints : Integer.MIN_VALUE;
+  }
+
+  NeighborBuffer<T> newNeighborBuffer() {
+    return _spareBuffers.isEmpty()
+        ? new NeighborBuffer<T>(kSize) : _spareBuffers.pop();
+  }
+
   public void clearCache() {
-    cachedNeighbors.clear();
+    for (CachedNeighbors<T> cached : _cache.values()) {
+      _spareBuffers.push(cached.neighbors);
+    }
+    _cache.clear();
+  }
+
+  /**
+   * Drops the cached neighbors and data points for one wave, eg because its
+   * attributes changed.
+   */
+  public void clearCache(Wave w) {
+    w.clearCachedDataPoints();
+    CachedNeighbors<T> cached = _cache.remove(w);
+    if (cached != null) {
+      _spareBuffers.push(cached.neighbors);
+    }
+  }
+
+  /**
+   * Drops the cached neighbors for all but the first numWaves waves.
+   */
+  public void retainCache(Wave[] waves, int numWaves) {
+    Iterator<Map.Entry<Wave, CachedNeighbors<T>>> cacheIterator =
+        _cache.entrySet().iterator();
+    while (cacheIterator.hasNext()) {
+      Map.Entry<Wave, CachedNeighbors<T>> entry = cacheIterator.next();
+      if (!contains(waves, numWaves, entry.getKey())) {
+        _spareBuffers.push(entry.getValue().neighbors);
+        cacheIterator.remove();
+      }
+    }
+  }
+
+  private static boolean contains(Wave[] waves, int numWaves, Wave w) {
+    for (int x = 0; x < numWaves; x++) {
+      if (waves[x] == w) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Nearest neighbors for the given wave, cached until the wave's cache is
+   * cleared. Points logged in the meantime are merged into the cached
+   * neighbors, so they only need to be searched for again if k changes or
+   * one of them leaves the window. The returned buffer is owned by this view.
+   */
+  public NeighborBuffer<T> cachedNearestNeighbors(Wave w, boolean aiming) {
+    CachedNeighbors<T> cached = _cache.get(w);
+    if (cached == null || !isFresh(cached, aiming)) {
+      double[] dataPoint = formula.cachedDataPointFromWave(w, aiming);
+      int k = k();
+      NeighborBuffer<T> neighbors = newNeighborBuffer();
+      _index.nearestNeighbors(dataPoint, k, minId(), neighbors);
+      putCache(w, aiming, dataPoint, k, neighbors);
+      return neighbors;
+    }
+    return cached.neighbors;
+  }
+
+  boolean isCached(Wave w, boolean aiming) {
+    CachedNeighbors<T> cached = _cache.get(w);
+    return (cached != null && isFresh(cached, aiming));
+  }
+
+  private boolean isFresh(CachedNeighbors<T> cached, boolean aiming) {
+    return (cached.version == _logged && cached.aiming == aiming);
+  }
+
+  void putCache(Wave w, boolean aiming, double[] dataPoint,
+      int k, NeighborBuffer<T> neighbors) {
+    CachedNeighbors<T> cached = _cache.get(w);
+    if (cached == null) {
+      cached = new CachedNeighbors<T>();
+      _cache.put(w, cached);
+    } else {
+      _spareBuffers.push(cached.neighbors);
+    }
+    cached.aiming = aiming;
+    cached.dataPoint = dataPoint;
+    cached.k = k;
+    cached.version = _logged;
+    cached.neighbors = neighbors;
   }
 
   public boolean enabled(double hitPercentage, double marginOfError) {
@@ -162,22 +351,88 @@ public class KnnView<T> {
   }
 
   public int size() {
-    return _tree.size();
+    int indexSize = _index.size();
+    return (maxDataPoints > 0) ? Math.min(indexSize, maxDataPoints) : indexSize;
   }
 
   public List<Entry<T>> nearestNeighbors(Wave w, boolean aiming) {
-    return nearestNeighbors(
-        w, aiming, DiaUtils.limit(1, size() / kDivisor, kSize));
+    return nearestNeighbors(w, aiming, k());
   }
 
   public List<KdTree.Entry<T>> nearestNeighbors(Wave w, boolean aiming, int k) {
-    double[] wavePoint = formula.dataPointFromWave(w, aiming);
-    return _tree.nearestNeighbor(wavePoint, k, false);
+    double[] wavePoint = formula.cachedDataPointFromWave(w, aiming);
+    return _index.nearestNeighbors(wavePoint, k, minId());
+  }
+
+  public void nearestNeighbors(
+      Wave w, boolean aiming, NeighborBuffer<T> neighbors) {
+    nearestNeighbors(w, aiming, k(), neighbors);
+  }
+
+  public void nearestNeighbors(
+      Wave w, boolean aiming, int k, NeighborBuffer<T> neighbors) {
+    double[] wavePoint = formula.cachedDataPointFromWave(w, aiming);
+    _index.nearestNeighbors(wavePoint, k, minId(), neighbors);
+  }
+
+  /**
+   * Nearest neighbors for several waves, found in a single pass over the
+   * tree. k is chosen as in nearestNeighbors(Wave, boolean).
+   */
+  public void nearestNeighbors(Wave[] waves, int numWaves, boolean aiming,
+      NeighborBuffer<T>[] neighbors) {
+    ensureBatchSize(numWaves);
+    int k = k();
+    int minId = minId();
+    for (int x = 0; x < numWaves; x++) {
+      _batchPoints[x] = formula.cachedDataPointFromWave(waves[x], aiming);
+      _batchCounts[x] = k;
+      _batchMinIds[x] = minId;
+    }
+    _index.nearestNeighbors(
+        _batchPoints, _batchCounts, _batchMinIds, neighbors, numWaves);
+    Arrays.fill(_batchPoints, 0, numWaves, null);
+  }
+
+  /**
+   * Caches the nearest neighbors of each wave that isn't cached yet or whose
+   * cached neighbors are out of date, with a single pass over the tree.
+   */
+  public void cacheNearestNeighbors(
+      Wave[] waves, int numWaves, boolean aiming) {
+    _index.cacheNearestNeighbors(_selfList, waves, numWaves, aiming);
+  }
+
+  /**
+   * Same as above for several views at once. Views that share a tree are
+   * searched together, in one pass over it.
+   */
+  public static <T> void cacheNearestNeighbors(Collection<KnnView<T>> views,
+      Wave[] waves, int numWaves, boolean aiming) {
+    int stamp = ++_batchStamp;
+    for (KnnView<T> view : views) {
+      if (view._index.batchStamp != stamp) {
+        view._index.batchStamp = stamp;
+        view._index.cacheNearestNeighbors(views, waves, numWaves, aiming);
+      }
+    }
+  }
+
+  private void ensureBatchSize(int size) {
+    if (_batchPoints == null || _batchPoints.length < size) {
+      _batchPoints = new double[size][];
+      _batchCounts = new int[size];
+      _batchMinIds = new int[size];
+    }
   }
 
   public void setWeights(double[] weights) {
+    if (_index.isShared()) {
+      throw new IllegalStateException(
+          "Can't set weights on a view that shares its tree: " + name);
+    }
     formula.weights = weights;
-    _tree.setWeights(weights);
+    _index.setWeights(weights);
   }
 
   public Map<Timestamped, Double> getDecayWeights(
@@ -201,4 +456,44 @@ public class KnnView<T> {
     }
     return weightMap;
   }
+
+  /**
+   * Same weights as above, written into decayWeights[i] for the i-th
+   * neighbor in the buffer instead of a map.
+   */
+  public void getDecayWeights(
+      NeighborBuffer<? extends Timestamped> neighbors, double[] decayWeights) {
+    int numScans = neighbors.size();
+    if (decayRate == KnnView.NO_DECAY) {
+      Arrays.fill(decayWeights, 0, numScans, 1.0);
+    } else {
+      if (_decayOrder.length < numScans) {
+        _decayOrder = new int[numScans];
+      }
+      // stable insertion sort by timestamp, like Arrays.sort on the values
+      for (int x = 0; x < numScans; x++) {
+        Timestamped value = neighbors.value(x);
+        int y = x;
+        while (y > 0
+            && neighbors.value(_decayOrder[y - 1]).compareTo(value) > 0) {
+          _decayOrder[y] = _decayOrder[y - 1];
+          y--;
+        }
+        _decayOrder[y] = x;
+      }
+      for (int x = 0; x < numScans; x++) {
+        decayWeights[_decayOrder[x]] =
+            1.0 / DiaUtils.power(decayRate, numScans - x - 1);
+      }
+    }
+  }
+
+  private static class CachedNeighbors<T> {
+    boolean aiming;
+    double[] dataPoint;
+    int k;
+    // this view's number of logged points as of the last update
+    int version;
+    NeighborBuffer<T> neighbors;
+  }
 }
@@ -0,0 +1,278 @@
+package voidious.utils;
+
+import static org.junit.Assert.*;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ags.utils.FlatKdTree.NeighborBuffer;
+import ags.utils.KdTree;
+
+/**
+ * Copyright (c) 2012 - Voidious
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+public class KnnViewTest {
+
+  @Test
+  public void testShareIndex() {
+    KnnView<Integer> view1 = newView(new VelocityFormula()).bulletHitsOn();
+    KnnView<Integer> view2 = newView(new VelocityFormula()).bulletHitsOn();
+    assertTrue(view2.shareIndex(view1));
+    assertSame(view1.index(), view2.index());
+  }
+
+  @Test
+  public void testShareIndexDifferentFlags() {
+    KnnView<Integer> view1 = newView(new VelocityFormula()).bulletHitsOn();
+    KnnView<Integer> view2 = newView(new VelocityFormula()).visitsOn();
+    assertFalse(view2.shareIndex(view1));
+  }
+
+  @Test
+  public void testShareIndexDifferentWeights() {
+    KnnView<Integer> view1 = newView(new VelocityFormula());
+    VelocityFormula formula2 = new VelocityFormula();
+    formula2.weights = new double[]{2};
+    KnnView<Integer> view2 = newView(formula2);
+    assertFalse(view2.shareIndex(view1));
+  }
+
+  @Test
+  public void testShareIndexAfterLogging() {
+    KnnView<Integer> view1 = newView(new VelocityFormula());
+    KnnView<Integer> view2 = newView(new VelocityFormula());
+    view1.logWave(newWave(1), 1);
+    assertFalse(view2.shareIndex(view1));
+  }
+
+  @Test
+  public void testShareIndexDifferentBackends() {
+    KnnView<Integer> view1 = newView(new VelocityFormula());
+    KnnView<Integer> view2 = newView(new VelocityFormula())
+        .setBackend(SpatialIndex.Backend.KD_TREE);
+    assertFalse(view2.shareIndex(view1));
+  }
+
+  @Test
+  public void testBackendsMatch() {
+    for (SpatialIndex.Backend backend : SpatialIndex.Backend.values()) {
+      KnnView<Integer> flat =
+          newView(new VelocityFormula()).setK(10).setMaxDataPoints(30);
+      KnnView<Integer> view = newView(new VelocityFormula()).setK(10)
+          .setMaxDataPoints(30).setBackend(backend);
+      assertEquals(backend, view.backend);
+      Random random = new Random(31);
+      Wave w = newWave(4);
+      for (int x = 0; x < 100; x++) {
+        Wave logWave = newWave(random.nextDouble() * 8);
+        flat.logWave(logWave, x);
+        view.logWave(logWave, x);
+        assertEquals(flat.size(), view.size());
+        NeighborBuffer<Integer> flatNeighbors = new NeighborBuffer<Integer>(1);
+        flat.nearestNeighbors(w, false, flatNeighbors);
+        assertArrayEquals(sortedDistances(flatNeighbors),
+            sortedDistances(view.cachedNearestNeighbors(w, false)), 0);
+      }
+    }
+  }
+
+  @Test
+  public void testSharedIndexLogsOnce() {
+    KnnView<Integer> view1 = newView(new VelocityFormula());
+    KnnView<Integer> view2 = newView(new VelocityFormula());
+    view2.shareIndex(view1);
+    for (int x = 0; x < 10; x++) {
+      view1.logWave(newWave(x), x);
+      view2.logWave(newWave(x), x);
+    }
+    assertEquals(10, view1.size());
+    assertEquals(10, view2.size());
+    assertEquals(10, view1.index().size());
+  }
+
+  @Test
+  public void testSharedIndexWindows() {
+    KnnView<Integer> all = newView(new VelocityFormula()).setK(100);
+    KnnView<Integer> recent =
+        newView(new VelocityFormula()).setK(100).setMaxDataPoints(5);
+    recent.shareIndex(all);
+    for (int x = 0; x < 20; x++) {
+      all.logWave(newWave(x), x);
+      recent.logWave(newWave(x), x);
+    }
+    assertEquals(20, all.size());
+    assertEquals(5, recent.size());
+
+    List<KdTree.Entry<Integer>> allNeighbors =
+        all.nearestNeighbors(newWave(0), false);
+    assertEquals(20, allNeighbors.size());
+
+    NeighborBuffer<Integer> recentNeighbors = new NeighborBuffer<Integer>(1);
+    recent.nearestNeighbors(newWave(0), false, recentNeighbors);
+    assertEquals(5, recentNeighbors.size());
+    for (int x = 0; x < recentNeighbors.size(); x++) {
+      assertTrue(recentNeighbors.value(x) >= 15);
+    }
+  }
+
+  @Test
+  public void testCachedNeighborsUpdatedInPlace() {
+    KnnView<Integer> view = newView(new VelocityFormula()).setK(10);
+    Random random = new Random(23);
+    for (int x = 0; x < 50; x++) {
+      view.logWave(newWave(random.nextDouble() * 8), x);
+    }
+    Wave w = newWave(4);
+    NeighborBuffer<Integer> cached = view.cachedNearestNeighbors(w, false);
+    for (int x = 50; x < 200; x++) {
+      view.logWave(newWave(random.nextDouble() * 8), x);
+      assertSame(cached, view.cachedNearestNeighbors(w, false));
+      assertNeighborsMatch(view, w, cached);
+    }
+  }
+
+  @Test
+  public void testCachedNeighborsWithWindow() {
+    KnnView<Integer> view =
+        newView(new VelocityFormula()).setK(10).setMaxDataPoints(30);
+    Random random = new Random(29);
+    Wave w = newWave(4);
+    for (int x = 0; x < 200; x++) {
+      view.logWave(newWave(random.nextDouble() * 8), x);
+      assertNeighborsMatch(view, w, view.cachedNearestNeighbors(w, false));
+    }
+  }
+
+  @Test
+  public void testRetainCache() {
+    KnnView<Integer> view = newView(new VelocityFormula()).setK(10);
+    for (int x = 0; x < 50; x++) {
+      view.logWave(newWave(x % 8), x);
+    }
+    Wave w1 = newWave(1);
+    Wave w2 = newWave(2);
+    view.cachedNearestNeighbors(w1, false);
+    NeighborBuffer<Integer> cached2 = view.cachedNearestNeighbors(w2, false);
+    view.retainCache(new Wave[]{w2}, 1);
+    assertTrue(view.isCached(w2, false));
+    assertFalse(view.isCached(w1, false));
+    assertSame(cached2, view.cachedNearestNeighbors(w2, false));
+  }
+
+  @Test
+  public void testCacheNearestNeighborsSharedWindows() {
+    List<KnnView<Integer>> views = new ArrayList<KnnView<Integer>>();
+    views.add(newView(new VelocityFormula()).setK(10));
+    int[] windows = {1, 5, 20, 100};
+    for (int window : windows) {
+      KnnView<Integer> view =
+          newView(new VelocityFormula()).setK(10).setMaxDataPoints(window);
+      view.shareIndex(views.get(0));
+      views.add(view);
+    }
+    Random random = new Random(37);
+    for (int x = 0; x < 1000; x++) {
+      Wave w = newWave(random.nextDouble() * 8);
+      for (KnnView<Integer> view : views) {
+        view.logWave(w, x);
+      }
+    }
+    int numWaves = 50;
+    Wave[] waves = new Wave[numWaves];
+    for (int x = 0; x < numWaves; x++) {
+      waves[x] = newWave(random.nextDouble() * 8);
+    }
+    KnnView.cacheNearestNeighbors(views, waves, numWaves, false);
+
+    NeighborBuffer<Integer> fresh = new NeighborBuffer<Integer>(1);
+    for (KnnView<Integer> view : views) {
+      for (int x = 0; x < numWaves; x++) {
+        assertTrue(view.isCached(waves[x], false));
+        view.nearestNeighbors(waves[x], false, fresh);
+        assertArrayEquals(sortedDistances(fresh),
+            sortedDistances(view.cachedNearestNeighbors(waves[x], false)), 0);
+      }
+    }
+  }
+
+  @Test
+  public void testClearCacheForWave() {
+    KnnView<Integer> view = newView(new VelocityFormula()).setK(10);
+    for (int x = 0; x < 50; x++) {
+      view.logWave(newWave(x % 8), x);
+    }
+    Wave w = newWave(1);
+    view.cachedNearestNeighbors(w, false);
+    assertTrue(view.isCached(w, false));
+    view.clearCache(w);
+    assertFalse(view.isCached(w, false));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testSetWeightsOnSharedIndex() {
+    KnnView<Integer> view1 = newView(new VelocityFormula());
+    KnnView<Integer> view2 = newView(new VelocityFormula());
+    view2.shareIndex(view1);
+    view2.setWeights(new double[]{2});
+  }
+
+  private void assertNeighborsMatch(
+      KnnView<Integer> view, Wave w, NeighborBuffer<Integer> cached) {
+    NeighborBuffer<Integer> fresh = new NeighborBuffer<Integer>(1);
+    view.nearestNeighbors(w, false, fresh);
+    assertArrayEquals(sortedDistances(fresh), sortedDistances(cached), 0);
+  }
+
+  private double[] sortedDistances(NeighborBuffer<Integer> neighbors) {
+    double[] distances = new double[neighbors.size()];
+    for (int x = 0; x < distances.length; x++) {
+      distances[x] = neighbors.distance(x);
+    }
+    Arrays.sort(distances);
+    return distances;
+  }
+
+  private KnnView<Integer> newView(DistanceFormula formula) {
+    return new KnnView<Integer>(formula);
+  }
+
+  private Wave newWave(double targetVelocity) {
+    return new Wave("Shadow", new Point2D.Double(400, 100),
+        new Point2D.Double(400, 400), 1, 10L, 1.95, 0, targetVelocity, 1,
+        null, null);
+  }
+
+  private static class VelocityFormula extends DistanceFormula {
+    public VelocityFormula() {
+      weights = new double[]{1};
+    }
+
+    @Override
+    public double[] dataPointFromWave(Wave w, boolean aiming) {
+      return new double[]{w.targetVelocity};
+    }
+  }
+}
@@ -8,6 +8,7 @@ import java.awt.geom.Rectangle2D;
 import robocode.Rules;
 import robocode.util.Utils;
 import voidious.Diamond;
+import voidious.utils.TickProfiler.Section;
 
 /**
  * Copyright (c) 2012 - Voidious
@@ -39,15 +40,36 @@ public class MovementPredictor {
 
   private final BattleField _battleField;
   private final Rectangle2D.Double _rectangle;
+  // scratch states, reused so predictions don't allocate
+  private final PredictionState _predictionState;
+  private final PredictionState _meaState;
+  private final EscapeAngleCache _escapeAngleCache;
+  private final TickProfiler _profiler;
 
   public MovementPredictor(BattleField battleField) {
     _battleField = battleField;
     _rectangle = _battleField.rectangle;
+    _predictionState = new PredictionState();
+    _meaState = new PredictionState();
+    _escapeAngleCache = EscapeAngleCache.getInstance();
+    _profiler = TickProfiler.getInstance();
   }
 
   public RobotState predict(RobotState startState, double distance, double turn,
       double maxVelocity, long ticks, boolean ignoreWalls) {
-    RobotState state = startState;
+    if (ticks <= 0) {
+      return startState;
+    }
+    PredictionState state = _predictionState.set(startState);
+    predict(state, distance, turn, maxVelocity, ticks, ignoreWalls);
+    return state.toRobotState();
+  }
+
+  /**
+   * Same as above, but advances the given state in place.
+   */
+  public void predict(PredictionState state, double distance, double turn,
+      double maxVelocity, long ticks, boolean ignoreWalls) {
     for (long x = 0; x < ticks; x++) {
       double nextHeading = state.heading;
       double maxTurnRate = Math.abs(Rules.getTurnRateRadians(state.velocity));
@@ -64,32 +86,27 @@ public class MovementPredictor {
           getNewVelocity(state.velocity, distance, maxVelocity);
       distance -= nextVelocity;
 
-      Point2D.Double nextLocation =
-          DiaUtils.project(state.location, nextHeading, nextVelocity);
-      if (!ignoreWalls && !_rectangle.contains(nextLocation)) {
-        adjustForWalls(nextLocation, nextHeading);
+      state.x += Math.sin(nextHeading) * nextVelocity;
+      state.y += Math.cos(nextHeading) * nextVelocity;
+      if (!ignoreWalls && !_rectangle.contains(state.x, state.y)) {
+        adjustForWalls(state, nextHeading);
       }
-      state = RobotState.newBuilder()
-          .setLocation(nextLocation)
-          .setHeading(nextHeading)
-          .setVelocity(nextVelocity)
-          .setTime(state.time + 1)
-          .build();
+      state.heading = nextHeading;
+      state.velocity = nextVelocity;
+      state.time++;
     }
-
-    return state;
   }
 
   // Examined net.sf.robocode.battle.peer.RobotPeer to see how Robocode
   // handles the physics of wall collisions, but rewrote the code myself.
-  private void adjustForWalls(Point2D.Double location, double heading) {
-    double xOut = Math.min(0, _rectangle.getMaxX() - location.x);
-    double yOut = Math.min(0, _rectangle.getMaxY() - location.y);
+  private void adjustForWalls(PredictionState state, double heading) {
+    double xOut = Math.min(0, _rectangle.getMaxX() - state.x);
+    double yOut = Math.min(0, _rectangle.getMaxY() - state.y);
     if (xOut == 0) {
-      xOut = Math.max(0, _rectangle.getMinX() - location.x);
+      xOut = Math.max(0, _rectangle.getMinX() - state.x);
     }
     if (yOut == 0) {
-      yOut = Math.max(0, _rectangle.getMinY() - location.y);
+      yOut = Math.max(0, _rectangle.getMinY() - state.y);
     }
 
     double xOffset = xOut;
@@ -114,8 +131,8 @@ public class MovementPredictor {
       }
     }
 
-    location.x += xOffset;
-    location.y += yOffset;
+    state.x += xOffset;
+    state.y += yOffset;
   }
 
   // The following 3 methods adapted from:
@@ -210,22 +227,45 @@ public class MovementPredictor {
         robotState, absBearing, 8.0, attackAngle, orientation, 0, ignoreWallHits);
   }
 
+  public void nextPerpendicularLocation(PredictionState state,
+      double absBearing, int orientation, double attackAngle,
+      boolean ignoreWallHits) {
+    nextPerpendicularWallSmoothedLocation(
+        state, absBearing, 8.0, attackAngle, orientation, 0, ignoreWallHits);
+  }
+
   public RobotState nextPerpendicularWallSmoothedLocation(RobotState robotState,
       double absBearing, double maxVelocity, double attackAngle,
       int orientation, double wallStick, boolean ignoreWallHits) {
+    PredictionState state = _predictionState.set(robotState);
+    nextPerpendicularWallSmoothedLocation(state, absBearing, maxVelocity,
+        attackAngle, orientation, wallStick, ignoreWallHits);
+    return state.toRobotState();
+  }
+
+  public void nextPerpendicularWallSmoothedLocation(PredictionState state,
+      double absBearing, double maxVelocity, double attackAngle,
+      int orientation, double wallStick, boolean ignoreWallHits) {
     double goAngle = Utils.normalRelativeAngle(
         absBearing + (orientation * (HALF_PI + attackAngle)));
     if (wallStick != 0) {
       goAngle = _battleField.wallSmoothing(
-          robotState.location, goAngle, orientation, wallStick);
+          state.x, state.y, goAngle, orientation, wallStick);
     }
 
-    return nextLocation(robotState, maxVelocity, goAngle, ignoreWallHits);
+    nextLocation(state, maxVelocity, goAngle, ignoreWallHits);
   }
 
   public RobotState nextLocation(RobotState robotState, double maxVelocity,
       double goAngle, boolean ignoreWallHits) {
-    double futureTurn = Utils.normalRelativeAngle(goAngle - robotState.heading);
+    PredictionState state = _predictionState.set(robotState);
+    nextLocation(state, maxVelocity, goAngle, ignoreWallHits);
+    return state.toRobotState();
+  }
+
+  public void nextLocation(PredictionState state, double maxVelocity,
+      double goAngle, boolean ignoreWallHits) {
+    double futureTurn = Utils.normalRelativeAngle(goAngle - state.heading);
     double futureDistance;
     if (Math.abs(futureTurn) > HALF_PI) {
       futureTurn = futureTurn - (Math.signum(futureTurn) * Math.PI);
@@ -234,8 +274,7 @@ public class MovementPredictor {
       futureDistance = 1000;
     }
 
-    return predict(
-        robotState, futureDistance, futureTurn, maxVelocity, 1, ignoreWallHits);
+    predict(state, futureDistance, futureTurn, maxVelocity, 1, ignoreWallHits);
   }
 
   public double escapeAngleRange(Point2D.Double sourceLocation,
@@ -254,9 +293,31 @@ public class MovementPredictor {
         bulletSpeed, startState, 0, wallStick);
   }
 
+  /**
+   * Results are memoized in the shared EscapeAngleCache.
+   */
   public MaxEscapeTarget preciseEscapeAngle(int predictDirection,
       Point2D.Double sourceLocation, long fireTime, double bulletSpeed,
       RobotState startState, double attackAngle, double wallStick) {
+    MaxEscapeTarget meaTarget = _escapeAngleCache.get(_battleField,
+        predictDirection, sourceLocation, fireTime, bulletSpeed, startState,
+        attackAngle, wallStick);
+    if (meaTarget == null) {
+      _profiler.start(Section.PREDICTION);
+      meaTarget = calculatePreciseEscapeAngle(predictDirection,
+          sourceLocation, fireTime, bulletSpeed, startState, attackAngle,
+          wallStick);
+      _profiler.stop();
+      _escapeAngleCache.put(_battleField, predictDirection, sourceLocation,
+          fireTime, bulletSpeed, startState, attackAngle, wallStick,
+          meaTarget);
+    }
+    return meaTarget;
+  }
+
+  MaxEscapeTarget calculatePreciseEscapeAngle(int predictDirection,
+      Point2D.Double sourceLocation, long fireTime, double bulletSpeed,
+      RobotState startState, double attackAngle, double wallStick) {
     double absBearing =
         DiaUtils.absoluteBearing(sourceLocation, startState.location);
 
@@ -283,13 +344,13 @@ public class MovementPredictor {
       double absBearing, Point2D.Double sourceLocation, long fireTime,
       double bulletSpeed, RobotState startState, double attackAngle) {
     double straightEscapeAngle = 0;
-    RobotState predictedState = startState;
+    PredictionState predictedState = _meaState.set(startState);
     boolean hitWall = false;
     boolean wavePassed = false;
     do {
-      predictedState = nextPerpendicularLocation(
+      nextPerpendicularLocation(
           predictedState, absBearing, predictDirection, attackAngle, true);
-      if (!_rectangle.contains(predictedState.location)) {
+      if (!_rectangle.contains(predictedState.x, predictedState.y)) {
         hitWall = true;
       } else if (wavePassed(
           sourceLocation, fireTime, bulletSpeed, predictedState)) {
@@ -298,7 +359,7 @@ public class MovementPredictor {
     } while (!hitWall && !wavePassed);
 
     Point2D.Double meaLocation =
-        _battleField.translateToField(predictedState.location);
+        _battleField.translateToField(predictedState.location());
     straightEscapeAngle = predictDirection * Utils.normalRelativeAngle(
         absoluteBearing(sourceLocation, meaLocation) - absBearing);
     return new MaxEscapeTarget(
@@ -319,22 +380,21 @@ public class MovementPredictor {
         startState.location, goAngle, predictDirection, wallStick);
     for (int x = 0; x < iterations; x++) {
       wavePassed = false;
-      RobotState predictedState = startState;
+      PredictionState predictedState = _meaState.set(startState);
       do {
         // TODO: try fancy stick
-        predictedState =
-            nextLocation(predictedState, FULL_SPEED, goAngle, true);
+        nextLocation(predictedState, FULL_SPEED, goAngle, true);
         if (wavePassed(
                 sourceLocation, fireTime, bulletSpeed, predictedState)) {
           wavePassed = true;
         } else {
-          goAngle = _battleField.wallSmoothing(
-              predictedState.location, goAngle, predictDirection, wallStick);
+          goAngle = _battleField.wallSmoothing(predictedState.x,
+              predictedState.y, goAngle, predictDirection, wallStick);
         }
       } while (!wavePassed);
 
       Point2D.Double predictedLocation =
-          _battleField.translateToField(predictedState.location);
+          _battleField.translateToField(predictedState.location());
       double thisSmoothingEscapeAngle =
           predictDirection * Utils.normalRelativeAngle(
               absoluteBearing(sourceLocation, predictedLocation) - absBearing);
@@ -351,9 +411,9 @@ public class MovementPredictor {
   }
 
   private boolean wavePassed(Point2D.Double sourceLocation,
-      long fireTime, double bulletSpeed, RobotState enemyState) {
+      long fireTime, double bulletSpeed, PredictionState enemyState) {
     double threshold = bulletSpeed * (enemyState.time - fireTime) + bulletSpeed;
-    if (enemyState.location.distanceSq(sourceLocation)
+    if (enemyState.distanceSq(sourceLocation)
             < DiaUtils.square(threshold) * Math.signum(threshold)) {
       return true;
     } else {
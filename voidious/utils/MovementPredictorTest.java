@@ -559,6 +559,15 @@ public class MovementPredictorTest {
     assertEquals(endY, endState.location.y, 0.01);
     assertEquals(Utils.normalAbsoluteAngle(endHeading),
         Utils.normalAbsoluteAngle(endState.heading), 0.01);
+
+    PredictionState predictionState = new PredictionState(startState);
+    predictor.predict(predictionState, distance, turn, maxVelocity, ticks,
+        false);
+    assertEquals(endX, predictionState.x, 0.01);
+    assertEquals(endY, predictionState.y, 0.01);
+    assertEquals(Utils.normalAbsoluteAngle(endHeading),
+        Utils.normalAbsoluteAngle(predictionState.heading), 0.01);
+    assertEquals(endTime, predictionState.time);
   }
 
   @Test
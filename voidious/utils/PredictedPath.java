@@ -0,0 +1,89 @@
+package voidious.utils;
+
+import java.util.Arrays;
+
+import voidious.utils.RobotStateLog.AllStateListener;
+
+/**
+ * Copyright (c) 2012 - Voidious
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+/**
+ * The states along a predicted path, for surfing several waves in a row.
+ * Each branch shares every state before it with the path it branched from,
+ * so branching is O(1) no matter how long the path is, and each branch only
+ * stores the states added to it. States added to a path after it branches
+ * are not seen by the branch.
+ */
+public class PredictedPath {
+  private static final int INITIAL_CAPACITY = 32;
+
+  private final PredictedPath _parent;
+  private final int _parentLength;
+  private final int _inheritedSize;
+  private RobotState[] _states;
+  private int _length;
+
+  public PredictedPath() {
+    this(null, 0, 0);
+  }
+
+  private PredictedPath(
+      PredictedPath parent, int parentLength, int inheritedSize) {
+    _parent = parent;
+    _parentLength = parentLength;
+    _inheritedSize = inheritedSize;
+    _length = 0;
+  }
+
+  public PredictedPath branch() {
+    return new PredictedPath(this, _length, _inheritedSize + _length);
+  }
+
+  public void addState(RobotState state) {
+    if (_states == null) {
+      _states = new RobotState[INITIAL_CAPACITY];
+    } else if (_length == _states.length) {
+      _states = Arrays.copyOf(_states, _length * 2);
+    }
+    _states[_length++] = state;
+  }
+
+  /**
+   * Calls the listener for each state on the path, in the order they were
+   * added, starting from the root.
+   */
+  public void forAllStates(AllStateListener listener) {
+    forStates(listener, _length);
+  }
+
+  private void forStates(AllStateListener listener, int length) {
+    if (_parent != null) {
+      _parent.forStates(listener, _parentLength);
+    }
+    for (int x = 0; x < length; x++) {
+      listener.onRobotState(_states[x]);
+    }
+  }
+
+  public int size() {
+    return _inheritedSize + _length;
+  }
+}
@@ -0,0 +1,119 @@
+package voidious.utils;
+
+import static org.junit.Assert.*;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Copyright (c) 2012 - Voidious
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+public class PredictedPathTest {
+
+  @Test
+  public void testForAllStates() {
+    PredictedPath path = new PredictedPath();
+    for (long time = 0; time < 100; time++) {
+      path.addState(newState(time));
+    }
+    assertEquals(100, path.size());
+    assertTimes(path, 0, 100);
+  }
+
+  @Test
+  public void testBranchSharesPrefix() {
+    PredictedPath path = new PredictedPath();
+    for (long time = 0; time < 10; time++) {
+      path.addState(newState(time));
+    }
+    PredictedPath branch = path.branch();
+    for (long time = 10; time < 15; time++) {
+      branch.addState(newState(time));
+    }
+    assertEquals(15, branch.size());
+    assertTimes(branch, 0, 15);
+    assertEquals(10, path.size());
+    assertTimes(path, 0, 10);
+  }
+
+  @Test
+  public void testSiblingBranchesIndependent() {
+    PredictedPath path = new PredictedPath();
+    path.addState(newState(0));
+    PredictedPath branch1 = path.branch();
+    PredictedPath branch2 = path.branch();
+    branch1.addState(newState(1));
+    branch1.addState(newState(2));
+    branch2.addState(newState(1));
+    assertTimes(branch1, 0, 3);
+    assertTimes(branch2, 0, 2);
+  }
+
+  @Test
+  public void testBranchIgnoresLaterParentStates() {
+    PredictedPath path = new PredictedPath();
+    path.addState(newState(0));
+    PredictedPath branch = path.branch();
+    for (long time = 1; time < 100; time++) {
+      path.addState(newState(time));
+    }
+    assertEquals(1, branch.size());
+    assertTimes(branch, 0, 1);
+  }
+
+  @Test
+  public void testNestedBranches() {
+    PredictedPath path = new PredictedPath();
+    PredictedPath branch = path;
+    for (long time = 0; time < 20; time++) {
+      branch.addState(newState(time));
+      branch = branch.branch();
+    }
+    assertEquals(20, branch.size());
+    assertTimes(branch, 0, 20);
+  }
+
+  private void assertTimes(PredictedPath path, long start, long end) {
+    final List<Long> times = new ArrayList<Long>();
+    path.forAllStates(new RobotStateLog.AllStateListener() {
+      @Override
+      public void onRobotState(RobotState state) {
+        times.add(state.time);
+      }
+    });
+    assertEquals(end - start, times.size());
+    for (int x = 0; x < times.size(); x++) {
+      assertEquals(start + x, (long) times.get(x));
+    }
+  }
+
+  private RobotState newState(long time) {
+    return RobotState.newBuilder()
+        .setLocation(new Point2D.Double(100 + time, 200))
+        .setHeading(0)
+        .setVelocity(8)
+        .setTime(time)
+        .build();
+  }
+}
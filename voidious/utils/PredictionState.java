@@ -0,0 +1,82 @@
+package voidious.utils;
+
+import java.awt.geom.Point2D;
+
+/**
+ * Copyright (c) 2012 - Voidious
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+/**
+ * A mutable robot state for MovementPredictor to advance in place, so long
+ * predictions don't create a RobotState for every tick. Call toRobotState()
+ * for any state that needs to be kept.
+ */
+public class PredictionState {
+  public double x;
+  public double y;
+  public double heading;
+  public double velocity;
+  public long time;
+
+  public PredictionState() {
+    time = -1;
+  }
+
+  public PredictionState(RobotState robotState) {
+    set(robotState);
+  }
+
+  public PredictionState set(RobotState robotState) {
+    x = robotState.location.x;
+    y = robotState.location.y;
+    heading = robotState.heading;
+    velocity = robotState.velocity;
+    time = robotState.time;
+    return this;
+  }
+
+  public PredictionState set(PredictionState state) {
+    x = state.x;
+    y = state.y;
+    heading = state.heading;
+    velocity = state.velocity;
+    time = state.time;
+    return this;
+  }
+
+  public double distanceSq(Point2D.Double location) {
+    double dx = x - location.x;
+    double dy = y - location.y;
+    return (dx * dx) + (dy * dy);
+  }
+
+  public Point2D.Double location() {
+    return new Point2D.Double(x, y);
+  }
+
+  public RobotState toRobotState() {
+    return RobotState.newBuilder()
+        .setLocation(location())
+        .setHeading(heading)
+        .setVelocity(velocity)
+        .setTime(time)
+        .build();
+  }
+}
@@ -1,9 +1,7 @@
 package voidious.utils;
 
 import java.awt.geom.Point2D;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 /**
  * Copyright (c) 2012 - Voidious
@@ -26,19 +24,90 @@ import java.util.Map;
  *    distribution.
  */
 
+/**
+ * A log of a robot's states over time, kept in a circular buffer indexed
+ * directly by tick, so looking up a state is O(1) however long the round
+ * runs. The times of the non-interpolated states are also kept in order, so
+ * finding the states to interpolate between is a binary search.
+ *
+ * States are kept for at least the retention horizon, counting back from the
+ * newest one. The buffer starts small and doubles as needed up to the
+ * smallest power of two that covers the horizon, then older states fall out
+ * of it as newer ones come in.
+ */
 public class RobotStateLog implements Cloneable {
-  private Map<Long, RobotState> _robotStates;
+  public static final int DEFAULT_HORIZON = 256;
+  private static final int INITIAL_CAPACITY = 16;
+  private static final long NO_STATE = Long.MIN_VALUE;
+
+  private final int _maxCapacity;
+  private long[] _times;
+  private RobotState[] _states;
+  private int _mask;
+  private int _size;
+  private long _oldestTime;
+  private long _newestTime;
+  private long[] _realTimes;
+  private int _realStart;
+  private int _realEnd;
 
   public RobotStateLog() {
-    _robotStates = new HashMap<Long, RobotState>();
+    this(DEFAULT_HORIZON);
+  }
+
+  public RobotStateLog(int horizon) {
+    _maxCapacity = powerOfTwoCapacity(horizon);
+    int capacity = Math.min(INITIAL_CAPACITY, _maxCapacity);
+    _times = new long[capacity];
+    _states = new RobotState[capacity];
+    _mask = capacity - 1;
+    _realTimes = new long[capacity];
+    clear();
   }
 
   public void clear() {
-    _robotStates.clear();
+    Arrays.fill(_times, NO_STATE);
+    Arrays.fill(_states, null);
+    _size = 0;
+    _realStart = 0;
+    _realEnd = 0;
   }
 
   public void addState(RobotState state) {
-    _robotStates.put(state.time, state);
+    long time = state.time;
+    if (_size == 0) {
+      _oldestTime = time;
+      _newestTime = time;
+    } else if (time > _newestTime) {
+      long span = time - _oldestTime + 1;
+      ensureCapacity(span);
+      if (span > _times.length) {
+        evictBefore(time - _times.length + 1);
+      }
+      _newestTime = time;
+    } else if (time < _oldestTime) {
+      long span = _newestTime - time + 1;
+      if (span > _maxCapacity) {
+        return;
+      }
+      ensureCapacity(span);
+      _oldestTime = time;
+    }
+
+    int slot = (int) (time & _mask);
+    RobotState previousState = (_times[slot] == time) ? _states[slot] : null;
+    if (previousState == null) {
+      _size++;
+    }
+    _times[slot] = time;
+    _states[slot] = state;
+    if (!state.interpolated) {
+      if (previousState == null || previousState.interpolated) {
+        insertRealTime(time);
+      }
+    } else if (previousState != null && !previousState.interpolated) {
+      removeRealTime(time);
+    }
   }
 
   public RobotState getState(long time) {
@@ -46,30 +115,16 @@ public class RobotStateLog implements Cloneable {
   }
 
   public RobotState getState(long time, boolean interpolate) {
-    if (_robotStates.containsKey(time)) {
-      RobotState robotState = _robotStates.get(time);
+    RobotState robotState = storedState(time);
+    if (robotState != null) {
       return (interpolate || !robotState.interpolated) ? robotState : null;
     } else if (interpolate) {
-      RobotState beforeState = null;
-      RobotState afterState = null;
-      for (RobotState state : _robotStates.values()) {
-        if (!state.interpolated) {
-          if (state.time < time) {
-            if (beforeState == null || state.time > beforeState.time) {
-              beforeState = state;
-            }
-          }
-          if (state.time > time) {
-            if (afterState == null || state.time < afterState.time) {
-              afterState = state;
-            }
-          }
-        }
-      }
-
-      if (beforeState == null || afterState == null) {
+      int afterIndex = realTimeIndex(time);
+      if (afterIndex == _realStart || afterIndex == _realEnd) {
         return null;
       }
+      RobotState beforeState = storedState(_realTimes[afterIndex - 1]);
+      RobotState afterState = storedState(_realTimes[afterIndex]);
 
       Interpolator interpolator =
           new Interpolator(time, beforeState.time, afterState.time);
@@ -83,7 +138,7 @@ public class RobotStateLog implements Cloneable {
           .setTime(time)
           .setInterpolated(true)
           .build();
-      _robotStates.put(time, interpolatedRobotState);
+      addState(interpolatedRobotState);
       return interpolatedRobotState;
     } else {
       return null;
@@ -98,25 +153,157 @@ public class RobotStateLog implements Cloneable {
   }
 
   private RobotState getOldestState() {
-    return _robotStates.get(Collections.min(_robotStates.keySet()));
+    if (_size > 0) {
+      for (long time = _oldestTime; time <= _newestTime; time++) {
+        RobotState state = storedState(time);
+        if (state != null) {
+          _oldestTime = time;
+          return state;
+        }
+      }
+    }
+    return null;
   }
 
+  /**
+   * Calls the listener for each state in the log, oldest first.
+   */
   public void forAllStates(AllStateListener listener) {
-    for (RobotState state : _robotStates.values()) {
-      listener.onRobotState(state);
+    if (_size > 0) {
+      for (long time = _oldestTime; time <= _newestTime; time++) {
+        RobotState state = storedState(time);
+        if (state != null) {
+          listener.onRobotState(state);
+        }
+      }
     }
   }
 
   public int size() {
-    return _robotStates.size();
+    return _size;
   }
 
   public Object clone() {
-    RobotStateLog newLog = new RobotStateLog();
-    for (Long time : _robotStates.keySet()) {
-      newLog.addState(_robotStates.get(time));
+    try {
+      RobotStateLog newLog = (RobotStateLog) super.clone();
+      newLog._times = _times.clone();
+      newLog._states = _states.clone();
+      newLog._realTimes = _realTimes.clone();
+      return newLog;
+    } catch (CloneNotSupportedException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  private RobotState storedState(long time) {
+    int slot = (int) (time & _mask);
+    return (_times[slot] == time) ? _states[slot] : null;
+  }
+
+  private void ensureCapacity(long span) {
+    int capacity = _times.length;
+    while (capacity < span && capacity < _maxCapacity) {
+      capacity *= 2;
+    }
+    if (capacity == _times.length) {
+      return;
+    }
+
+    long[] times = new long[capacity];
+    RobotState[] states = new RobotState[capacity];
+    Arrays.fill(times, NO_STATE);
+    int mask = capacity - 1;
+    for (int x = 0; x < _times.length; x++) {
+      if (_times[x] != NO_STATE) {
+        int slot = (int) (_times[x] & mask);
+        times[slot] = _times[x];
+        states[slot] = _states[x];
+      }
+    }
+    _times = times;
+    _states = states;
+    _mask = mask;
+  }
+
+  private void evictBefore(long minTime) {
+    if (minTime - _oldestTime >= _times.length) {
+      for (int x = 0; x < _times.length; x++) {
+        if (_times[x] != NO_STATE && _times[x] < minTime) {
+          evictSlot(x);
+        }
+      }
+    } else {
+      for (long time = _oldestTime; time < minTime; time++) {
+        int slot = (int) (time & _mask);
+        if (_times[slot] == time) {
+          evictSlot(slot);
+        }
+      }
+    }
+    _oldestTime = minTime;
+    while (_realStart < _realEnd && _realTimes[_realStart] < minTime) {
+      _realStart++;
+    }
+  }
+
+  private void evictSlot(int slot) {
+    _times[slot] = NO_STATE;
+    _states[slot] = null;
+    _size--;
+  }
+
+  /**
+   * Index of the first non-interpolated time at or after the given time.
+   */
+  private int realTimeIndex(long time) {
+    int low = _realStart;
+    int high = _realEnd;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (_realTimes[mid] < time) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  private void insertRealTime(long time) {
+    if (_realEnd == _realTimes.length) {
+      int count = _realEnd - _realStart;
+      if (count * 2 > _realTimes.length) {
+        _realTimes = Arrays.copyOfRange(
+            _realTimes, _realStart, _realStart + (_realTimes.length * 2));
+      } else {
+        System.arraycopy(_realTimes, _realStart, _realTimes, 0, count);
+      }
+      _realStart = 0;
+      _realEnd = count;
+    }
+    // Almost always the newest time, so this is an append.
+    int index = realTimeIndex(time);
+    System.arraycopy(
+        _realTimes, index, _realTimes, index + 1, _realEnd - index);
+    _realTimes[index] = time;
+    _realEnd++;
+  }
+
+  private void removeRealTime(long time) {
+    int index = realTimeIndex(time);
+    if (index < _realEnd && _realTimes[index] == time) {
+      System.arraycopy(
+          _realTimes, index + 1, _realTimes, index, _realEnd - index - 1);
+      _realEnd--;
+    }
+  }
+
+  private static int powerOfTwoCapacity(int horizon) {
+    int capacity = 1;
+    while (capacity < horizon) {
+      capacity *= 2;
     }
-    return newLog;
+    return capacity;
   }
 
   public interface AllStateListener {
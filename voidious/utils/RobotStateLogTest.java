@@ -0,0 +1,209 @@
+package voidious.utils;
+
+import static org.junit.Assert.*;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Copyright (c) 2012 - Voidious
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+public class RobotStateLogTest {
+
+  @Test
+  public void testGetState() {
+    RobotStateLog log = new RobotStateLog();
+    RobotState state = newState(100, 200, 5L);
+    log.addState(state);
+    assertSame(state, log.getState(5L));
+    assertSame(state, log.getState(5L, false));
+    assertNull(log.getState(6L));
+    assertEquals(1, log.size());
+  }
+
+  @Test
+  public void testGetStateReplaces() {
+    RobotStateLog log = new RobotStateLog();
+    log.addState(newState(100, 200, 5L));
+    RobotState state = newState(110, 200, 5L);
+    log.addState(state);
+    assertSame(state, log.getState(5L));
+    assertEquals(1, log.size());
+  }
+
+  @Test
+  public void testGetStateInterpolates() {
+    RobotStateLog log = new RobotStateLog();
+    log.addState(newState(100, 200, 10L));
+    log.addState(newState(140, 200, 14L));
+    RobotState state = log.getState(11L);
+    assertTrue(state.interpolated);
+    assertEquals(11L, state.time);
+    assertEquals(110, state.location.x, 0.0001);
+    assertEquals(200, state.location.y, 0.0001);
+    assertSame(state, log.getState(11L));
+    assertNull(log.getState(11L, false));
+    assertEquals(3, log.size());
+  }
+
+  @Test
+  public void testGetStateInterpolatesFromNearest() {
+    RobotStateLog log = new RobotStateLog();
+    for (long time = 0; time < 100; time += 10) {
+      log.addState(newState(100 + time, 200, time));
+    }
+    log.getState(41L);
+    RobotState state = log.getState(47L);
+    assertEquals(147, state.location.x, 0.0001);
+  }
+
+  @Test
+  public void testGetStateOutsideLog() {
+    RobotStateLog log = new RobotStateLog();
+    log.addState(newState(100, 200, 10L));
+    log.addState(newState(140, 200, 14L));
+    assertNull(log.getState(9L));
+    assertNull(log.getState(15L));
+  }
+
+  @Test
+  public void testAddStateOutOfOrder() {
+    RobotStateLog log = new RobotStateLog();
+    for (long time = 40; time >= 0; time -= 2) {
+      log.addState(newState(100 + time, 200, time));
+    }
+    assertEquals(21, log.size());
+    assertEquals(100, log.getState(0L).location.x, 0.0001);
+    assertEquals(140, log.getState(40L).location.x, 0.0001);
+    assertEquals(125, log.getState(25L).location.x, 0.0001);
+  }
+
+  @Test
+  public void testHorizonEvictsOldStates() {
+    RobotStateLog log = new RobotStateLog(32);
+    for (long time = 0; time < 100; time++) {
+      log.addState(newState(100 + time, 200, time));
+    }
+    assertEquals(32, log.size());
+    assertNull(log.getState(67L));
+    assertEquals(168, log.getState(68L).location.x, 0.0001);
+    assertEquals(199, log.getState(99L).location.x, 0.0001);
+  }
+
+  @Test
+  public void testHorizonIgnoresStatesTooOld() {
+    RobotStateLog log = new RobotStateLog(32);
+    log.addState(newState(100, 200, 100L));
+    log.addState(newState(100, 200, 60L));
+    assertNull(log.getState(60L));
+    assertEquals(1, log.size());
+  }
+
+  @Test
+  public void testHorizonEvictsAfterGap() {
+    RobotStateLog log = new RobotStateLog(32);
+    log.addState(newState(100, 200, 0L));
+    log.addState(newState(100, 200, 1L));
+    log.addState(newState(300, 200, 1000L));
+    assertEquals(1, log.size());
+    assertNull(log.getState(1L));
+    assertNull(log.getState(500L));
+  }
+
+  @Test
+  public void testGetDisplacementDistance() {
+    RobotStateLog log = new RobotStateLog();
+    for (long time = 0; time <= 20; time++) {
+      log.addState(newState(100 + time, 200, time));
+    }
+    assertEquals(8, log.getDisplacementDistance(
+        newLocation(120, 200), 20L, 8L), 0.0001);
+  }
+
+  @Test
+  public void testGetDisplacementDistanceUsesOldest() {
+    RobotStateLog log = new RobotStateLog();
+    for (long time = 10; time <= 20; time++) {
+      log.addState(newState(100 + time, 200, time));
+    }
+    assertEquals(10, log.getDisplacementDistance(
+        newLocation(120, 200), 20L, 40L), 0.0001);
+  }
+
+  @Test
+  public void testForAllStatesInOrder() {
+    RobotStateLog log = new RobotStateLog();
+    log.addState(newState(100, 200, 7L));
+    log.addState(newState(100, 200, 3L));
+    log.addState(newState(100, 200, 5L));
+    final List<Long> times = new ArrayList<Long>();
+    log.forAllStates(new RobotStateLog.AllStateListener() {
+      @Override
+      public void onRobotState(RobotState state) {
+        times.add(state.time);
+      }
+    });
+    assertEquals(3, times.size());
+    assertEquals(3L, (long) times.get(0));
+    assertEquals(5L, (long) times.get(1));
+    assertEquals(7L, (long) times.get(2));
+  }
+
+  @Test
+  public void testClone() {
+    RobotStateLog log = new RobotStateLog();
+    log.addState(newState(100, 200, 1L));
+    RobotStateLog clonedLog = (RobotStateLog) log.clone();
+    clonedLog.addState(newState(100, 200, 2L));
+    log.addState(newState(300, 200, 3L));
+    assertEquals(2, log.size());
+    assertEquals(2, clonedLog.size());
+    assertNull(log.getState(2L, false));
+    assertNull(clonedLog.getState(3L, false));
+  }
+
+  @Test
+  public void testClear() {
+    RobotStateLog log = new RobotStateLog();
+    log.addState(newState(100, 200, 1L));
+    log.addState(newState(100, 200, 3L));
+    log.clear();
+    assertEquals(0, log.size());
+    assertNull(log.getState(1L));
+    assertNull(log.getState(2L));
+  }
+
+  private RobotState newState(double x, double y, long time) {
+    return RobotState.newBuilder()
+        .setLocation(newLocation(x, y))
+        .setHeading(0)
+        .setVelocity(8)
+        .setTime(time)
+        .build();
+  }
+
+  private Point2D.Double newLocation(double x, double y) {
+    return new Point2D.Double(x, y);
+  }
+}
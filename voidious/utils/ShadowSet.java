@@ -0,0 +1,192 @@
+package voidious.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import voidious.utils.Wave.BulletShadow;
+
+/**
+ * Copyright (c) 2012 - Voidious
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+/**
+ * A wave's bullet shadows, kept as sorted, disjoint angle intervals, so
+ * checking whether an angle is shadowed is a binary search and so is finding
+ * the shadows that overlap an intersection. A new shadow is merged with any
+ * it touches as it's added.
+ *
+ * Angles are stored relative to a reference angle, normalized to [-Pi, Pi].
+ * A shadow that crosses Pi from the reference is split in two, one at each
+ * end, so every interval is in order.
+ */
+public class ShadowSet implements Iterable<BulletShadow> {
+  private static final int INITIAL_CAPACITY = 4;
+
+  private double _referenceAngle;
+  private double[] _mins;
+  private double[] _maxes;
+  private int _size;
+
+  public ShadowSet(double referenceAngle) {
+    _referenceAngle = referenceAngle;
+    _mins = new double[INITIAL_CAPACITY];
+    _maxes = new double[INITIAL_CAPACITY];
+    _size = 0;
+  }
+
+  public void clear() {
+    _size = 0;
+  }
+
+  /**
+   * Clears the shadows and measures new ones from a new reference angle.
+   */
+  public void reset(double referenceAngle) {
+    _referenceAngle = referenceAngle;
+    _size = 0;
+  }
+
+  public boolean isEmpty() {
+    return _size == 0;
+  }
+
+  /**
+   * Number of disjoint intervals, after merging.
+   */
+  public int size() {
+    return _size;
+  }
+
+  /**
+   * Adds a shadow from minAngle to maxAngle, going clockwise. Angles may be
+   * any multiple of 2Pi away from the reference.
+   */
+  public void add(double minAngle, double maxAngle) {
+    double min = relativeAngle(minAngle);
+    double max = min + (maxAngle - minAngle);
+    if (max > Math.PI) {
+      insert(min, Math.PI);
+      insert(-Math.PI, max - (2 * Math.PI));
+    } else {
+      insert(min, max);
+    }
+  }
+
+  public boolean shadowed(double angle) {
+    double relativeAngle = relativeAngle(angle);
+    int index = lastIndexStartingAtOrBefore(relativeAngle);
+    return index >= 0 && _maxes[index] >= relativeAngle;
+  }
+
+  /**
+   * Total angle covered by shadows between minAngle and maxAngle, going
+   * clockwise.
+   */
+  public double coverage(double minAngle, double maxAngle) {
+    double min = relativeAngle(minAngle);
+    double max = min + (maxAngle - minAngle);
+    if (max > Math.PI) {
+      return coverageInRange(min, Math.PI)
+          + coverageInRange(-Math.PI, max - (2 * Math.PI));
+    }
+    return coverageInRange(min, max);
+  }
+
+  public Iterator<BulletShadow> iterator() {
+    List<BulletShadow> shadows = new ArrayList<BulletShadow>(_size);
+    for (int x = 0; x < _size; x++) {
+      shadows.add(new BulletShadow(
+          _referenceAngle + _mins[x], _referenceAngle + _maxes[x]));
+    }
+    return shadows.iterator();
+  }
+
+  private void insert(double min, double max) {
+    // Intervals from first to last touch the new one.
+    int first = firstIndexEndingAtOrAfter(min);
+    int last = lastIndexStartingAtOrBefore(max);
+    if (first <= last) {
+      min = Math.min(min, _mins[first]);
+      max = Math.max(max, _maxes[last]);
+      _mins[first] = min;
+      _maxes[first] = max;
+      int removed = last - first;
+      if (removed > 0) {
+        System.arraycopy(_mins, last + 1, _mins, first + 1, _size - last - 1);
+        System.arraycopy(
+            _maxes, last + 1, _maxes, first + 1, _size - last - 1);
+        _size -= removed;
+      }
+    } else {
+      if (_size == _mins.length) {
+        _mins = Arrays.copyOf(_mins, _size * 2);
+        _maxes = Arrays.copyOf(_maxes, _size * 2);
+      }
+      System.arraycopy(_mins, first, _mins, first + 1, _size - first);
+      System.arraycopy(_maxes, first, _maxes, first + 1, _size - first);
+      _mins[first] = min;
+      _maxes[first] = max;
+      _size++;
+    }
+  }
+
+  private double coverageInRange(double min, double max) {
+    double coverage = 0;
+    for (int x = firstIndexEndingAtOrAfter(min);
+         x < _size && _mins[x] <= max; x++) {
+      coverage += Math.min(max, _maxes[x]) - Math.max(min, _mins[x]);
+    }
+    return coverage;
+  }
+
+  private int firstIndexEndingAtOrAfter(double angle) {
+    int low = 0;
+    int high = _size;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (_maxes[mid] < angle) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  private int lastIndexStartingAtOrBefore(double angle) {
+    int low = 0;
+    int high = _size;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (_mins[mid] <= angle) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low - 1;
+  }
+
+  private double relativeAngle(double angle) {
+    return DiaUtils.normalizeAngle(angle, _referenceAngle) - _referenceAngle;
+  }
+}
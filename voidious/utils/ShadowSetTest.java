@@ -0,0 +1,165 @@
+package voidious.utils;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import voidious.utils.Wave.BulletShadow;
+
+/**
+ * Copyright (c) 2012 - Voidious
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+public class ShadowSetTest {
+
+  @Test
+  public void testEmpty() {
+    ShadowSet shadows = new ShadowSet(1);
+    assertTrue(shadows.isEmpty());
+    assertFalse(shadows.shadowed(1));
+    assertEquals(0, shadows.coverage(0.9, 1.1), 0);
+  }
+
+  @Test
+  public void testShadowed() {
+    ShadowSet shadows = new ShadowSet(1);
+    shadows.add(1.1, 1.2);
+    assertTrue(shadows.shadowed(1.1));
+    assertTrue(shadows.shadowed(1.15));
+    assertTrue(shadows.shadowed(1.2));
+    assertTrue(shadows.shadowed(1.15 + (2 * Math.PI)));
+    assertFalse(shadows.shadowed(1.05));
+    assertFalse(shadows.shadowed(1.25));
+  }
+
+  @Test
+  public void testMergesOverlapping() {
+    ShadowSet shadows = new ShadowSet(0);
+    shadows.add(0.1, 0.2);
+    shadows.add(0.3, 0.4);
+    shadows.add(-0.2, -0.1);
+    assertEquals(3, shadows.size());
+    shadows.add(0.15, 0.35);
+    assertEquals(2, shadows.size());
+    assertTrue(shadows.shadowed(0.25));
+    assertEquals(0.3, shadows.coverage(0.1, 0.4), 1e-12);
+    shadows.add(-0.3, 0.5);
+    assertEquals(1, shadows.size());
+  }
+
+  @Test
+  public void testMergesTouching() {
+    ShadowSet shadows = new ShadowSet(0);
+    shadows.add(0.1, 0.2);
+    shadows.add(0.2, 0.3);
+    assertEquals(1, shadows.size());
+  }
+
+  @Test
+  public void testCoverage() {
+    ShadowSet shadows = new ShadowSet(0);
+    shadows.add(0.1, 0.2);
+    shadows.add(0.3, 0.4);
+    assertEquals(0.05, shadows.coverage(0, 0.15), 1e-12);
+    assertEquals(0.1, shadows.coverage(0.15, 0.35), 1e-12);
+    assertEquals(0.2, shadows.coverage(0, 0.5), 1e-12);
+    assertEquals(0.05, shadows.coverage(0.12, 0.17), 1e-12);
+    assertEquals(0, shadows.coverage(0.21, 0.29), 0);
+  }
+
+  @Test
+  public void testAcrossPi() {
+    ShadowSet shadows = new ShadowSet(0);
+    shadows.add(Math.PI - 0.1, Math.PI + 0.1);
+    assertEquals(2, shadows.size());
+    assertTrue(shadows.shadowed(Math.PI));
+    assertTrue(shadows.shadowed(-Math.PI + 0.05));
+    assertTrue(shadows.shadowed(Math.PI - 0.05));
+    assertFalse(shadows.shadowed(-Math.PI + 0.15));
+    assertEquals(0.2, shadows.coverage(Math.PI - 0.2, Math.PI + 0.2), 1e-12);
+    assertEquals(0.05, shadows.coverage(-Math.PI, -Math.PI + 0.05), 1e-12);
+  }
+
+  @Test
+  public void testClear() {
+    ShadowSet shadows = new ShadowSet(0);
+    shadows.add(0.1, 0.2);
+    shadows.clear();
+    assertTrue(shadows.isEmpty());
+    assertFalse(shadows.shadowed(0.15));
+  }
+
+  @Test
+  public void testIterator() {
+    ShadowSet shadows = new ShadowSet(2);
+    shadows.add(2.3, 2.4);
+    shadows.add(2.1, 2.2);
+    double lastMaxAngle = Double.NEGATIVE_INFINITY;
+    int count = 0;
+    for (BulletShadow shadow : shadows) {
+      assertTrue(shadow.minAngle > lastMaxAngle);
+      assertTrue(shadow.maxAngle > shadow.minAngle);
+      lastMaxAngle = shadow.maxAngle;
+      count++;
+    }
+    assertEquals(2, count);
+  }
+
+  @Test
+  public void testMatchesBruteForce() {
+    Random random = new Random(17);
+    for (int trial = 0; trial < 50; trial++) {
+      ShadowSet shadows = new ShadowSet(0.5);
+      int numShadows = 1 + random.nextInt(20);
+      double[] mins = new double[numShadows];
+      double[] maxes = new double[numShadows];
+      for (int x = 0; x < numShadows; x++) {
+        mins[x] = random.nextDouble() - 0.5;
+        maxes[x] = mins[x] + (random.nextDouble() * 0.1);
+        shadows.add(0.5 + mins[x], 0.5 + maxes[x]);
+      }
+      for (int x = 0; x < 200; x++) {
+        double angle = (random.nextDouble() * 1.4) - 0.7;
+        boolean shadowed = false;
+        for (int y = 0; y < numShadows; y++) {
+          shadowed |= (angle >= mins[y] && angle <= maxes[y]);
+        }
+        assertEquals(shadowed, shadows.shadowed(0.5 + angle));
+      }
+      double min = random.nextDouble() - 0.6;
+      double max = min + (random.nextDouble() * 0.2);
+      int samples = 100000;
+      int covered = 0;
+      for (int x = 0; x < samples; x++) {
+        double angle = min + ((max - min) * (x + 0.5) / samples);
+        for (int y = 0; y < numShadows; y++) {
+          if (angle >= mins[y] && angle <= maxes[y]) {
+            covered++;
+            break;
+          }
+        }
+      }
+      assertEquals((max - min) * covered / samples,
+          shadows.coverage(0.5 + min, 0.5 + max), 1e-5);
+    }
+  }
+}
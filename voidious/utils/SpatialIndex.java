@@ -0,0 +1,80 @@
+package voidious.utils;
+
+import ags.utils.FlatKdTree.NeighborBuffer;
+
+/**
+ * Copyright (c) 2012 - Voidious
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+/**
+ * A tree of weighted data points for nearest neighbor searches, as KnnIndex
+ * uses it. Points are numbered in the order they're added, starting at 0,
+ * and a search can skip points older than a given id. Each of the kd-tree
+ * implementations sits behind this, so a KnnView can choose its backend.
+ */
+public interface SpatialIndex<T> {
+  public enum Backend {
+    FLAT_KD_TREE,
+    KD_TREE,
+    THIRD_GEN_KD_TREE;
+
+    /**
+     * A new, empty index. With a size limit, only the newest sizeLimit
+     * points are kept, or at least only they are searched.
+     */
+    public <T> SpatialIndex<T> newIndex(int dimensions, Integer sizeLimit) {
+      switch (this) {
+        case KD_TREE:
+          return new KdTreeIndex<T>(dimensions, sizeLimit);
+        case THIRD_GEN_KD_TREE:
+          return new ThirdGenKdTreeIndex<T>(dimensions, sizeLimit);
+        default:
+          return new FlatKdTreeIndex<T>(dimensions, sizeLimit);
+      }
+    }
+  }
+
+  int size();
+
+  void addPoint(double[] location, T value);
+
+  void setWeights(double[] weights);
+
+  /**
+   * The nearest count points to location with ids of at least minId,
+   * written into results in heap order.
+   */
+  void nearestNeighbor(double[] location, int count, int minId,
+      NeighborBuffer<T> results);
+
+  /**
+   * Nearest neighbor searches for each of the first numQueries locations,
+   * each with its own count and minId, written into results.
+   */
+  void nearestNeighbor(double[][] locations, int[] counts, int[] minIds,
+      NeighborBuffer<T>[] results, int numQueries);
+
+  /**
+   * Updates the results of an earlier search for location with a point
+   * added since, as if it had been in the index at the time.
+   */
+  void offerPoint(double[] location, double[] point, T value, int id,
+      NeighborBuffer<T> results);
+}
@@ -0,0 +1,203 @@
+package voidious.utils;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ags.utils.FlatKdTree.NeighborBuffer;
+
+/**
+ * Copyright (c) 2012 - Voidious
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+public class SpatialIndexTest {
+  private static final int DIMENSIONS = 4;
+  private static final double[] WEIGHTS = new double[]{3, 1, 0.5, 2};
+
+  @Test
+  public void testNearestNeighborMatchesBruteForce() {
+    for (SpatialIndex.Backend backend : SpatialIndex.Backend.values()) {
+      assertMatchesBruteForce(backend, null, 2000, 0);
+    }
+  }
+
+  @Test
+  public void testNearestNeighborWithMinId() {
+    for (SpatialIndex.Backend backend : SpatialIndex.Backend.values()) {
+      assertMatchesBruteForce(backend, null, 2000, 1500);
+    }
+  }
+
+  @Test
+  public void testNearestNeighborWithSizeLimit() {
+    for (SpatialIndex.Backend backend : SpatialIndex.Backend.values()) {
+      assertMatchesBruteForce(backend, 400, 2000, 1600);
+      assertMatchesBruteForce(backend, 400, 2000, 1800);
+    }
+  }
+
+  @Test
+  public void testSizeWithSizeLimit() {
+    for (SpatialIndex.Backend backend : SpatialIndex.Backend.values()) {
+      SpatialIndex<Integer> index = newIndex(backend, 100);
+      Random random = new Random(37);
+      for (int x = 0; x < 500; x++) {
+        index.addPoint(randomPoint(random), x);
+      }
+      assertEquals(100, index.size());
+    }
+  }
+
+  @Test
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  public void testBatchedSearchMatchesSingleSearches() {
+    for (SpatialIndex.Backend backend : SpatialIndex.Backend.values()) {
+      SpatialIndex<Integer> index = newIndex(backend, null);
+      Random random = new Random(41);
+      for (int x = 0; x < 1000; x++) {
+        index.addPoint(randomPoint(random), x);
+      }
+      int numQueries = 5;
+      double[][] queries = new double[numQueries][];
+      int[] counts = new int[numQueries];
+      int[] minIds = new int[numQueries];
+      NeighborBuffer<Integer>[] batched = new NeighborBuffer[numQueries];
+      for (int x = 0; x < numQueries; x++) {
+        queries[x] = randomPoint(random);
+        counts[x] = x * 10;
+        minIds[x] = x * 100;
+        batched[x] = new NeighborBuffer<Integer>(1);
+      }
+      index.nearestNeighbor(queries, counts, minIds, batched, numQueries);
+
+      NeighborBuffer<Integer> single = new NeighborBuffer<Integer>(1);
+      for (int x = 0; x < numQueries; x++) {
+        index.nearestNeighbor(queries[x], counts[x], minIds[x], single);
+        assertArrayEquals(
+            sortedDistances(single), sortedDistances(batched[x]), 0);
+      }
+    }
+  }
+
+  @Test
+  public void testOfferPoint() {
+    for (SpatialIndex.Backend backend : SpatialIndex.Backend.values()) {
+      SpatialIndex<Integer> index = newIndex(backend, null);
+      Random random = new Random(43);
+      for (int x = 0; x < 200; x++) {
+        index.addPoint(randomPoint(random), x);
+      }
+      double[] query = randomPoint(random);
+      NeighborBuffer<Integer> offered = new NeighborBuffer<Integer>(1);
+      index.nearestNeighbor(query, 10, 0, offered);
+      for (int x = 200; x < 300; x++) {
+        double[] point = randomPoint(random);
+        index.addPoint(point, x);
+        index.offerPoint(query, point, x, x, offered);
+      }
+      NeighborBuffer<Integer> fresh = new NeighborBuffer<Integer>(1);
+      index.nearestNeighbor(query, 10, 0, fresh);
+      assertArrayEquals(
+          sortedDistances(fresh), sortedDistances(offered), 0.000001);
+    }
+  }
+
+  @Test
+  public void testMissingAttributes() {
+    for (SpatialIndex.Backend backend : SpatialIndex.Backend.values()) {
+      SpatialIndex<Integer> index = newIndex(backend, null);
+      index.addPoint(new double[]{0, 0, Double.NaN, 0}, 0);
+      index.addPoint(new double[]{1, 1, 1, 1}, 1);
+      NeighborBuffer<Integer> neighbors = new NeighborBuffer<Integer>(1);
+      index.nearestNeighbor(new double[]{0, 0, 5, 0}, 1, 0, neighbors);
+      assertEquals(0, (int) neighbors.value(0));
+      assertEquals(0, neighbors.distance(0), 0);
+    }
+  }
+
+  @Test
+  public void testEmptyIndex() {
+    for (SpatialIndex.Backend backend : SpatialIndex.Backend.values()) {
+      SpatialIndex<Integer> index = newIndex(backend, 10);
+      NeighborBuffer<Integer> neighbors = new NeighborBuffer<Integer>(1);
+      index.nearestNeighbor(new double[DIMENSIONS], 5, 0, neighbors);
+      assertEquals(0, index.size());
+      assertEquals(0, neighbors.size());
+    }
+  }
+
+  private static void assertMatchesBruteForce(SpatialIndex.Backend backend,
+      Integer sizeLimit, int numPoints, int minId) {
+    SpatialIndex<Integer> index = newIndex(backend, sizeLimit);
+    List<double[]> points = new ArrayList<double[]>();
+    Random random = new Random(47);
+    for (int x = 0; x < numPoints; x++) {
+      double[] point = randomPoint(random);
+      points.add(point);
+      index.addPoint(point, x);
+    }
+    NeighborBuffer<Integer> neighbors = new NeighborBuffer<Integer>(1);
+    for (int x = 0; x < 20; x++) {
+      double[] query = randomPoint(random);
+      index.nearestNeighbor(query, 25, minId, neighbors);
+      double[] expected = new double[numPoints - minId];
+      for (int y = minId; y < numPoints; y++) {
+        expected[y - minId] =
+            KdTreeIndex.distance(query, points.get(y), WEIGHTS);
+      }
+      Arrays.sort(expected);
+      assertArrayEquals(backend.toString(), Arrays.copyOf(expected, 25),
+          sortedDistances(neighbors), 0.000001);
+      for (int y = 0; y < neighbors.size(); y++) {
+        assertTrue(neighbors.id(y) >= minId);
+        assertEquals(neighbors.id(y), (int) neighbors.value(y));
+      }
+    }
+  }
+
+  private static SpatialIndex<Integer> newIndex(
+      SpatialIndex.Backend backend, Integer sizeLimit) {
+    SpatialIndex<Integer> index = backend.newIndex(DIMENSIONS, sizeLimit);
+    index.setWeights(WEIGHTS);
+    return index;
+  }
+
+  private static double[] sortedDistances(NeighborBuffer<Integer> neighbors) {
+    double[] distances = new double[neighbors.size()];
+    for (int x = 0; x < distances.length; x++) {
+      distances[x] = neighbors.distance(x);
+    }
+    Arrays.sort(distances);
+    return distances;
+  }
+
+  private static double[] randomPoint(Random random) {
+    double[] point = new double[DIMENSIONS];
+    for (int x = 0; x < DIMENSIONS; x++) {
+      point[x] = random.nextDouble();
+    }
+    return point;
+  }
+}
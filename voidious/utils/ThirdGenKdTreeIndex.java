@@ -0,0 +1,135 @@
+package voidious.utils;
+
+import java.util.Arrays;
+
+import ags.utils.FlatKdTree.NeighborBuffer;
+import ags.utils.dataStructures.trees.thirdGenKD.DistanceFunction;
+import ags.utils.dataStructures.trees.thirdGenKD.KdTree;
+import ags.utils.dataStructures.trees.thirdGenKD.NearestNeighborIterator;
+import voidious.utils.KdTreeIndex.Numbered;
+
+/**
+ * Copyright (c) 2012 - Voidious
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+/**
+ * SpatialIndex backed by the third generation KdTree, with a weighted
+ * distance function. That tree can't remove points, so a size limit is kept
+ * by skipping points that have fallen out of it, like points older than the
+ * minimum id. The skipped points stay in the tree, so it only suits views
+ * that keep every point, or a benchmark.
+ */
+class ThirdGenKdTreeIndex<T> implements SpatialIndex<T> {
+  private final KdTree<Numbered<T>> _tree;
+  private final Integer _sizeLimit;
+  private final WeightedDistanceFunction _distanceFunction;
+  private int _nextId;
+
+  ThirdGenKdTreeIndex(int dimensions, Integer sizeLimit) {
+    _tree = new KdTree<Numbered<T>>(dimensions);
+    _sizeLimit = sizeLimit;
+    _distanceFunction = new WeightedDistanceFunction(dimensions);
+    _nextId = 0;
+  }
+
+  @Override
+  public int size() {
+    return (_sizeLimit == null)
+        ? _tree.size() : Math.min(_sizeLimit, _tree.size());
+  }
+
+  @Override
+  public void addPoint(double[] location, T value) {
+    _tree.addPoint(location, new Numbered<T>(_nextId++, value));
+  }
+
+  @Override
+  public void setWeights(double[] weights) {
+    _distanceFunction.weights = weights;
+  }
+
+  @Override
+  public void nearestNeighbor(double[] location, int count, int minId,
+      NeighborBuffer<T> results) {
+    results.reset(count);
+    if (count <= 0 || _tree.size() == 0) {
+      return;
+    }
+    if (_sizeLimit != null) {
+      minId = Math.max(minId, _nextId - _sizeLimit);
+    }
+    NearestNeighborIterator<Numbered<T>> neighbors =
+        _tree.getNearestNeighborIterator(
+            location, _tree.size(), _distanceFunction);
+    while (results.size() < count && neighbors.hasNext()) {
+      Numbered<T> neighbor = neighbors.next();
+      if (neighbor.id >= minId) {
+        results.addValue(neighbors.distance(), neighbor.value, neighbor.id);
+      }
+    }
+  }
+
+  @Override
+  public void nearestNeighbor(double[][] locations, int[] counts,
+      int[] minIds, NeighborBuffer<T>[] results, int numQueries) {
+    for (int x = 0; x < numQueries; x++) {
+      nearestNeighbor(locations[x], counts[x],
+          (minIds == null) ? Integer.MIN_VALUE : minIds[x], results[x]);
+    }
+  }
+
+  @Override
+  public void offerPoint(double[] location, double[] point, T value, int id,
+      NeighborBuffer<T> results) {
+    results.addValue(KdTreeIndex.distance(location, point,
+        _distanceFunction.weights), value, id);
+  }
+
+  private static class WeightedDistanceFunction implements DistanceFunction {
+    double[] weights;
+
+    WeightedDistanceFunction(int dimensions) {
+      weights = new double[dimensions];
+      Arrays.fill(weights, 1.0);
+    }
+
+    @Override
+    public double distance(double[] p1, double[] p2) {
+      return KdTreeIndex.distance(p1, p2, weights);
+    }
+
+    @Override
+    public double distanceToRect(double[] point, double[] min, double[] max) {
+      double d = 0;
+      for (int x = 0; x < point.length; x++) {
+        double diff = 0;
+        if (point[x] > max[x]) {
+          diff = (point[x] - max[x]) * weights[x];
+        } else if (point[x] < min[x]) {
+          diff = (point[x] - min[x]) * weights[x];
+        }
+        if (!Double.isNaN(diff)) {
+          d += diff * diff;
+        }
+      }
+      return d;
+    }
+  }
+}
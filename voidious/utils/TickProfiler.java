@@ -0,0 +1,301 @@
+package voidious.utils;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Copyright (c) 2012 - Voidious
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+/**
+ * Breaks down where each tick's CPU time goes, to find what's behind skipped
+ * turns. Sections nest, and time is charged only to the innermost one, so
+ * eg kNN searches made while aiming count as kNN and not as gun time, and
+ * the sections of a tick add up to the time spent in all of them.
+ *
+ * Each section's time per tick goes into a per-round histogram with four
+ * buckets per power of two nanoseconds, which is accurate to within 25% and
+ * never allocates. Percentiles are printed at the end of each round, and the
+ * breakdown of the tick before each skipped turn is printed and kept.
+ */
+public class TickProfiler {
+  public static boolean enabled = false;
+  private static TickProfiler _instance;
+
+  private static final int SUB_BUCKET_BITS = 2;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  static final int NUM_BUCKETS = 64 * SUB_BUCKETS;
+  private static final int MAX_DEPTH = 32;
+  private static final double[] PERCENTILES = {0.5, 0.9, 0.99};
+
+  public enum Section {
+    MOVE("move"),
+    GUN("gun"),
+    RADAR("radar"),
+    KNN("kNN"),
+    PREDICTION("prediction"),
+    DANGER("danger"),
+    VIRTUAL_GUNS("virtual guns");
+
+    public final String label;
+
+    private Section(String label) {
+      this.label = label;
+    }
+  }
+
+  private static final int NUM_SECTIONS = Section.values().length;
+
+  private final long[][] _histograms;
+  private final long[] _totalHistogram;
+  private final long[] _maxNanos;
+  private long _maxTotalNanos;
+  private final long[] _tickNanos;
+  private final long[] _lastTickNanos;
+  private long _lastTickTime;
+  private int _ticks;
+  private final Section[] _stack;
+  private int _depth;
+  private long _mark;
+  private final List<SkippedTurn> _skippedTurns;
+
+  TickProfiler() {
+    _histograms = new long[NUM_SECTIONS][NUM_BUCKETS];
+    _totalHistogram = new long[NUM_BUCKETS];
+    _maxNanos = new long[NUM_SECTIONS];
+    _tickNanos = new long[NUM_SECTIONS];
+    _lastTickNanos = new long[NUM_SECTIONS];
+    _stack = new Section[MAX_DEPTH];
+    _skippedTurns = new ArrayList<SkippedTurn>();
+    initRound();
+  }
+
+  public static TickProfiler getInstance() {
+    if (_instance == null) {
+      _instance = new TickProfiler();
+    }
+    return _instance;
+  }
+
+  public void initRound() {
+    for (long[] histogram : _histograms) {
+      Arrays.fill(histogram, 0);
+    }
+    Arrays.fill(_totalHistogram, 0);
+    Arrays.fill(_maxNanos, 0);
+    _maxTotalNanos = 0;
+    Arrays.fill(_tickNanos, 0);
+    Arrays.fill(_lastTickNanos, 0);
+    _lastTickTime = -1;
+    _ticks = 0;
+    _depth = 0;
+    _skippedTurns.clear();
+  }
+
+  public void start(Section section) {
+    if (enabled) {
+      start(section, System.nanoTime());
+    }
+  }
+
+  public void stop() {
+    if (enabled) {
+      stop(System.nanoTime());
+    }
+  }
+
+  void start(Section section, long now) {
+    if (_depth > 0) {
+      _tickNanos[_stack[_depth - 1].ordinal()] += now - _mark;
+    }
+    if (_depth < MAX_DEPTH) {
+      _stack[_depth] = section;
+    }
+    _depth++;
+    _mark = now;
+  }
+
+  void stop(long now) {
+    if (_depth > 0) {
+      _depth--;
+      if (_depth < MAX_DEPTH) {
+        _tickNanos[_stack[_depth].ordinal()] += now - _mark;
+      }
+    }
+    _mark = now;
+  }
+
+  /**
+   * Files the time spent in each section this tick. Call once per tick, once
+   * every section is stopped.
+   */
+  public void endTick(long time) {
+    if (!enabled) {
+      return;
+    }
+    long totalNanos = 0;
+    for (int x = 0; x < NUM_SECTIONS; x++) {
+      long nanos = _tickNanos[x];
+      _histograms[x][bucket(nanos)]++;
+      _maxNanos[x] = Math.max(_maxNanos[x], nanos);
+      _lastTickNanos[x] = nanos;
+      totalNanos += nanos;
+    }
+    _totalHistogram[bucket(totalNanos)]++;
+    _maxTotalNanos = Math.max(_maxTotalNanos, totalNanos);
+    Arrays.fill(_tickNanos, 0);
+    _lastTickTime = time;
+    _ticks++;
+    // An exception can leave sections running, don't let them pile up.
+    _depth = 0;
+  }
+
+  public void onSkippedTurn(long time, PrintStream out) {
+    if (!enabled || _lastTickTime < 0) {
+      return;
+    }
+    SkippedTurn skippedTurn = new SkippedTurn(
+        time, _lastTickTime, Arrays.copyOf(_lastTickNanos, NUM_SECTIONS));
+    _skippedTurns.add(skippedTurn);
+    out.println("  Tick " + _lastTickTime + ": "
+        + formatBreakdown(skippedTurn.nanos));
+  }
+
+  public void printRoundSummary(PrintStream out) {
+    if (!enabled || _ticks == 0) {
+      return;
+    }
+    out.println("Tick profile (" + _ticks + " ticks, "
+        + _skippedTurns.size() + " skipped turns), p50 / p90 / p99 / max:");
+    for (Section section : Section.values()) {
+      out.println("  " + section.label + ": " + formatPercentiles(
+          _histograms[section.ordinal()], _maxNanos[section.ordinal()]));
+    }
+    out.println("  total: "
+        + formatPercentiles(_totalHistogram, _maxTotalNanos));
+  }
+
+  public long percentile(Section section, double percentile) {
+    return percentile(_histograms[section.ordinal()],
+        _maxNanos[section.ordinal()], _ticks, percentile);
+  }
+
+  public long totalPercentile(double percentile) {
+    return percentile(_totalHistogram, _maxTotalNanos, _ticks, percentile);
+  }
+
+  public long lastTickNanos(Section section) {
+    return _lastTickNanos[section.ordinal()];
+  }
+
+  public List<SkippedTurn> skippedTurns() {
+    return _skippedTurns;
+  }
+
+  public int ticks() {
+    return _ticks;
+  }
+
+  /**
+   * Smallest bucket bound that percentile of the ticks fall within, which
+   * overstates it by less than a quarter.
+   */
+  static long percentile(
+      long[] histogram, long maxNanos, int ticks, double percentile) {
+    if (ticks == 0) {
+      return 0;
+    }
+    long target = Math.max(1, (long) Math.ceil(percentile * ticks));
+    long count = 0;
+    for (int x = 0; x < histogram.length; x++) {
+      count += histogram[x];
+      if (count >= target) {
+        return Math.min(maxNanos, bucketCeiling(x));
+      }
+    }
+    return maxNanos;
+  }
+
+  static int bucket(long nanos) {
+    if (nanos < SUB_BUCKETS) {
+      return (int) Math.max(0, nanos);
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+    int subBucket = (int) (nanos >>> (exponent - SUB_BUCKET_BITS))
+        & (SUB_BUCKETS - 1);
+    return ((exponent - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS) + subBucket;
+  }
+
+  static long bucketCeiling(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    int exponent = (bucket >>> SUB_BUCKET_BITS) + SUB_BUCKET_BITS - 1;
+    long subBucket = bucket & (SUB_BUCKETS - 1);
+    long floor = (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+    return floor + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+  }
+
+  private String formatPercentiles(long[] histogram, long maxNanos) {
+    StringBuilder sb = new StringBuilder();
+    for (double percentile : PERCENTILES) {
+      sb.append(formatMillis(
+          percentile(histogram, maxNanos, _ticks, percentile)));
+      sb.append(" / ");
+    }
+    sb.append(formatMillis(maxNanos));
+    return sb.toString();
+  }
+
+  private static String formatBreakdown(long[] nanos) {
+    StringBuilder sb = new StringBuilder();
+    long totalNanos = 0;
+    for (Section section : Section.values()) {
+      if (section.ordinal() > 0) {
+        sb.append(", ");
+      }
+      totalNanos += nanos[section.ordinal()];
+      sb.append(section.label + " " + formatMillis(nanos[section.ordinal()]));
+    }
+    return "total " + formatMillis(totalNanos) + " (" + sb + ")";
+  }
+
+  private static String formatMillis(long nanos) {
+    return DiaUtils.round(nanos / 1000000.0, 3) + "ms";
+  }
+
+  public static class SkippedTurn {
+    public final long time;
+    public final long previousTickTime;
+    private final long[] nanos;
+
+    SkippedTurn(long time, long previousTickTime, long[] nanos) {
+      this.time = time;
+      this.previousTickTime = previousTickTime;
+      this.nanos = nanos;
+    }
+
+    public long nanos(Section section) {
+      return nanos[section.ordinal()];
+    }
+  }
+}
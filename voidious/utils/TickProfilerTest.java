@@ -0,0 +1,157 @@
+package voidious.utils;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import voidious.utils.TickProfiler.Section;
+
+/**
+ * Copyright (c) 2012 - Voidious
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+public class TickProfilerTest {
+  private boolean _wasEnabled;
+
+  @Before
+  public void setUp() {
+    _wasEnabled = TickProfiler.enabled;
+    TickProfiler.enabled = true;
+  }
+
+  @After
+  public void tearDown() {
+    TickProfiler.enabled = _wasEnabled;
+  }
+
+  @Test
+  public void testBucketBounds() {
+    for (long nanos = 0; nanos < 100000; nanos++) {
+      int bucket = TickProfiler.bucket(nanos);
+      assertTrue(nanos <= TickProfiler.bucketCeiling(bucket));
+      if (bucket > 0) {
+        assertTrue(nanos > TickProfiler.bucketCeiling(bucket - 1));
+      }
+    }
+  }
+
+  @Test
+  public void testBucketPrecision() {
+    for (long nanos = 4; nanos < Long.MAX_VALUE / 3; nanos *= 3) {
+      long ceiling = TickProfiler.bucketCeiling(TickProfiler.bucket(nanos));
+      assertTrue(ceiling < nanos * 1.25);
+    }
+    assertTrue(TickProfiler.bucket(Long.MAX_VALUE) < TickProfiler.NUM_BUCKETS);
+  }
+
+  @Test
+  public void testNestedSectionsChargeInnermost() {
+    TickProfiler profiler = new TickProfiler();
+    profiler.start(Section.MOVE, 0);
+    profiler.start(Section.DANGER, 100);
+    profiler.start(Section.KNN, 150);
+    profiler.stop(400);
+    profiler.start(Section.PREDICTION, 450);
+    profiler.stop(1450);
+    profiler.stop(1500);
+    profiler.stop(2000);
+    profiler.endTick(1);
+
+    assertEquals(600, profiler.lastTickNanos(Section.MOVE));
+    assertEquals(150, profiler.lastTickNanos(Section.DANGER));
+    assertEquals(250, profiler.lastTickNanos(Section.KNN));
+    assertEquals(1000, profiler.lastTickNanos(Section.PREDICTION));
+    assertEquals(0, profiler.lastTickNanos(Section.GUN));
+  }
+
+  @Test
+  public void testPercentiles() {
+    TickProfiler profiler = new TickProfiler();
+    for (int x = 1; x <= 100; x++) {
+      profiler.start(Section.GUN, 0);
+      profiler.stop(x * 1000);
+      profiler.endTick(x);
+    }
+    assertEquals(100, profiler.ticks());
+    assertWithin(50000, profiler.percentile(Section.GUN, 0.5));
+    assertWithin(90000, profiler.percentile(Section.GUN, 0.9));
+    assertWithin(99000, profiler.percentile(Section.GUN, 0.99));
+    assertEquals(100000, profiler.percentile(Section.GUN, 1));
+    assertWithin(50000, profiler.totalPercentile(0.5));
+    assertEquals(0, profiler.percentile(Section.MOVE, 0.99));
+  }
+
+  @Test
+  public void testSkippedTurnRecordsPreviousTick() {
+    TickProfiler profiler = new TickProfiler();
+    profiler.start(Section.MOVE, 0);
+    profiler.stop(30000000);
+    profiler.endTick(41);
+    profiler.start(Section.MOVE, 0);
+    profiler.stop(1000);
+    profiler.endTick(42);
+    profiler.start(Section.GUN, 0);
+    profiler.stop(50000000);
+    profiler.endTick(43);
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    profiler.onSkippedTurn(44, new PrintStream(out));
+    assertEquals(1, profiler.skippedTurns().size());
+    TickProfiler.SkippedTurn skippedTurn = profiler.skippedTurns().get(0);
+    assertEquals(44, skippedTurn.time);
+    assertEquals(43, skippedTurn.previousTickTime);
+    assertEquals(50000000, skippedTurn.nanos(Section.GUN));
+    assertEquals(0, skippedTurn.nanos(Section.MOVE));
+    assertTrue(out.toString().contains("gun 50.0ms"));
+  }
+
+  @Test
+  public void testInitRoundClearsHistograms() {
+    TickProfiler profiler = new TickProfiler();
+    profiler.start(Section.RADAR, 0);
+    profiler.stop(5000);
+    profiler.endTick(1);
+    profiler.onSkippedTurn(2, new PrintStream(new ByteArrayOutputStream()));
+    profiler.initRound();
+    assertEquals(0, profiler.ticks());
+    assertEquals(0, profiler.percentile(Section.RADAR, 0.5));
+    assertTrue(profiler.skippedTurns().isEmpty());
+  }
+
+  @Test
+  public void testDisabled() {
+    TickProfiler.enabled = false;
+    TickProfiler profiler = new TickProfiler();
+    profiler.start(Section.MOVE);
+    profiler.stop();
+    profiler.endTick(1);
+    assertEquals(0, profiler.ticks());
+  }
+
+  private void assertWithin(long expected, long actual) {
+    assertTrue(actual >= expected);
+    assertTrue(actual < expected * 1.25);
+  }
+}
@@ -0,0 +1,56 @@
+package voidious.utils;
+
+/**
+ * Copyright (c) 2012 - Voidious
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+/**
+ * Lookup table for the angle wall smoothing turns away from a single wall,
+ * acos(wallDistance / wallStick). Away from the corners, that's all that
+ * depends on the bot's position, so one table covers every battle field,
+ * stick length and orientation.
+ *
+ * acos(u) has an infinite slope at u = 1, so the table is indexed by
+ * v = sqrt(1 - u) instead, where acos(1 - v^2) is smooth and linear
+ * interpolation is accurate to well under 1e-5 radians.
+ */
+final class WallSmoothingTable {
+  private static final int CELLS = 1024;
+  private static final double[] ANGLES = new double[CELLS + 2];
+
+  static {
+    for (int x = 0; x < ANGLES.length; x++) {
+      double v = Math.min(1, (double) x / CELLS);
+      ANGLES[x] = Math.acos(1 - (v * v));
+    }
+  }
+
+  private WallSmoothingTable() { }
+
+  /**
+   * acos(wallDistance / wallStick), for 0 <= wallDistance <= wallStick.
+   */
+  static double smoothingAngle(double wallDistance, double wallStick) {
+    double position = Math.sqrt(1 - (wallDistance / wallStick)) * CELLS;
+    int cell = (int) position;
+    double fraction = position - cell;
+    return ANGLES[cell] + (fraction * (ANGLES[cell + 1] - ANGLES[cell]));
+  }
+}
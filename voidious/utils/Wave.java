@@ -4,16 +4,11 @@ import static voidious.utils.DiaUtils.absoluteBearing;
 import static voidious.utils.DiaUtils.normalizeAngle;
 import static voidious.utils.DiaUtils.square;
 
-import java.awt.geom.Line2D;
 import java.awt.geom.Point2D;
-import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Set;
 
 import robocode.util.Utils;
-import voidious.utils.geom.Circle;
-import voidious.utils.geom.LineSeg;
 
 /**
  * Copyright (c) 2009-2012 - Voidious
@@ -90,12 +85,15 @@ public class Wave implements Cloneable {
   public int enemiesAlive;
   public long lastBulletFiredTime;
 
-  public List<BulletShadow> shadows;
+  public ShadowSet shadows;
 
   protected Double _cachedPositiveEscapeAngle = null;
   protected Double _cachedNegativeEscapeAngle = null;
   public boolean usedNegativeSmoothingMea = false;
   public boolean usedPositiveSmoothingMea = false;
+  private int[] _cachedDataPointKeys = null;
+  private double[][] _cachedDataPoints = null;
+  private int _numCachedDataPoints = 0;
 
   protected Wave() {
     // needed for subclass with its own full constructor
@@ -112,6 +110,26 @@ public class Wave implements Cloneable {
       int targetVelocitySign,
       BattleField battleField,
       MovementPredictor predictor) {
+    reset(botName, sourceLocation, targetLocation, fireRound, fireTime,
+        bulletPower, targetHeading, targetVelocity, targetVelocitySign,
+        battleField, predictor);
+  }
+
+  /**
+   * Sets this wave up as if it had just been constructed with these
+   * attributes, so a wave nothing refers to anymore can be reused.
+   */
+  public Wave reset(String botName,
+      Point2D.Double sourceLocation,
+      Point2D.Double targetLocation,
+      int fireRound,
+      long fireTime,
+      double bulletPower,
+      double targetHeading,
+      double targetVelocity,
+      int targetVelocitySign,
+      BattleField battleField,
+      MovementPredictor predictor) {
     this.botName = botName;
     this.sourceLocation = sourceLocation;
     this.targetLocation = targetLocation;
@@ -134,7 +152,29 @@ public class Wave implements Cloneable {
     bulletHitBullet = false;
     firingWave = false;
     altWave = false;
-    shadows = new ArrayList<BulletShadow>();
+    targetAccel = 0;
+    targetDistance = 0;
+    targetDistanceToNearestBot = 0;
+    targetDchangeTime = 0;
+    targetVchangeTime = 0;
+    targetWallDistance = 0;
+    targetRevWallDistance = 0;
+    targetDl8t = 0;
+    targetDl20t = 0;
+    targetDl40t = 0;
+    targetEnergy = 0;
+    sourceEnergy = 0;
+    gunHeat = 0;
+    enemiesAlive = 0;
+    lastBulletFiredTime = 0;
+    usedNegativeSmoothingMea = false;
+    usedPositiveSmoothingMea = false;
+    if (shadows == null) {
+      shadows = new ShadowSet(absBearing);
+    } else {
+      shadows.reset(absBearing);
+    }
+    return this;
   }
 
   public Wave setAbsBearing(double absBearing) {
@@ -147,6 +187,7 @@ public class Wave implements Cloneable {
     _bulletSpeed = (20 - (3 * power));
     _maxEscapeAngle = Math.asin(8.0 / _bulletSpeed);
     clearCachedPreciseEscapeAngles();
+    clearCachedDataPoints();
     return this;
   }
 
@@ -282,6 +323,7 @@ public class Wave implements Cloneable {
             preciseEscapeAngle(NEGATIVE_GUESSFACTOR) / _maxEscapeAngle;
         break;
     }
+    clearCachedDataPoints();
   }
 
   private double orbitalWallDistance(int orientation) {
@@ -442,14 +484,47 @@ public class Wave implements Cloneable {
     _cachedNegativeEscapeAngle = null;
   }
 
-  public boolean shadowed(double firingAngle) {
-    for (BulletShadow shadow : shadows) {
-      firingAngle = normalizeAngle(firingAngle, shadow.minAngle);
-      if (firingAngle >= shadow.minAngle && firingAngle <= shadow.maxAngle) {
-        return true;
+  /**
+   * Data point a DistanceFormula computed from this wave, by feature key and
+   * aiming flag, or null if it hasn't been computed since the wave changed.
+   */
+  double[] cachedDataPoint(int key) {
+    for (int x = 0; x < _numCachedDataPoints; x++) {
+      if (_cachedDataPointKeys[x] == key) {
+        return _cachedDataPoints[x];
       }
     }
-    return false;
+    return null;
+  }
+
+  void cacheDataPoint(int key, double[] dataPoint) {
+    if (_cachedDataPointKeys == null) {
+      _cachedDataPointKeys = new int[4];
+      _cachedDataPoints = new double[4][];
+    } else if (_numCachedDataPoints == _cachedDataPointKeys.length) {
+      _cachedDataPointKeys = Arrays.copyOf(
+          _cachedDataPointKeys, _numCachedDataPoints * 2);
+      _cachedDataPoints = Arrays.copyOf(
+          _cachedDataPoints, _numCachedDataPoints * 2);
+    }
+    _cachedDataPointKeys[_numCachedDataPoints] = key;
+    _cachedDataPoints[_numCachedDataPoints] = dataPoint;
+    _numCachedDataPoints++;
+  }
+
+  /**
+   * Call after assigning any of the attributes data points are computed
+   * from. setBulletPower and setWallDistances do this themselves.
+   */
+  public void clearCachedDataPoints() {
+    if (_numCachedDataPoints > 0) {
+      Arrays.fill(_cachedDataPoints, 0, _numCachedDataPoints, null);
+      _numCachedDataPoints = 0;
+    }
+  }
+
+  public boolean shadowed(double firingAngle) {
+    return shadows.shadowed(firingAngle);
   }
 
   public void castShadow(Point2D.Double p1, Point2D.Double p2) {
@@ -457,100 +532,103 @@ public class Wave implements Cloneable {
                absoluteBearing(sourceLocation, p2));
   }
 
-  private void castShadow(double shadowAngle1, double shadowAngle2) {
+  public void castShadow(double shadowAngle1, double shadowAngle2) {
     shadowAngle1 = normalizeAngle(shadowAngle1, absBearing);
     shadowAngle2 = normalizeAngle(shadowAngle2, shadowAngle1);
-    double min = Math.min(shadowAngle1, shadowAngle2);
-    double max = Math.max(shadowAngle1, shadowAngle2);
-    shadows.add(new BulletShadow(min, max));
-
-    Set<BulletShadow> deadShadows = new HashSet<BulletShadow>();
-    for (BulletShadow shadow1 : shadows) {
-      if (!deadShadows.contains(shadow1)) {
-        for (BulletShadow shadow2 : shadows) {
-          if (shadow1 != shadow2 && !deadShadows.contains(shadow2)
-              && shadow1.overlaps(shadow2)) {
-            shadow1.minAngle = Math.min(shadow1.minAngle,
-                normalizeAngle(shadow2.minAngle, shadow1.minAngle));
-            shadow1.maxAngle = Math.max(shadow1.maxAngle,
-                normalizeAngle(shadow2.maxAngle, shadow1.maxAngle));
-            deadShadows.add(shadow2);
-          }
-        }
-      }
-    }
-    for (BulletShadow deadShadow : deadShadows) {
-      shadows.remove(deadShadow);
-    }
+    shadows.add(Math.min(shadowAngle1, shadowAngle2),
+                Math.max(shadowAngle1, shadowAngle2));
   }
 
   public double shadowFactor(Wave.Intersection intersection) {
     double min = intersection.angle - intersection.bandwidth;
     double max = intersection.angle + intersection.bandwidth;
-    double factor = 1;
-    for (BulletShadow shadow : shadows) {
-      double shadowMin = normalizeAngle(shadow.minAngle, min);
-      double shadowMax = normalizeAngle(shadow.maxAngle, shadowMin);
-      if (shadowMin <= min && shadowMax >= max) {
-        return 0;
-      } else if (shadowMin >= min && shadowMin <= max) {
-        factor -= (Math.min(max, shadowMax) - shadowMin) / (max - min);
-      } else if (shadowMax >= min && shadowMax <= max) {
-        factor -= (shadowMax - Math.max(min, shadowMin)) / (max - min);
-      }
+    double coverage = shadows.coverage(min, max);
+    if (coverage >= max - min) {
+      return 0;
     }
-
-    return factor;
+    return 1 - (coverage / (max - min));
   }
 
+  /**
+   * The range of firing angles that would have hit a bot in these states,
+   * from the parts of its bounding box between the wave's circles on each
+   * tick: the corners between them and where the sides cross them. Works in
+   * local doubles throughout, since it runs for every wave break and every
+   * surf option. Null if no part of the bot is between the circles.
+   */
   public Intersection preciseIntersection(List<RobotState> waveBreakStates) {
     if (waveBreakStates == null || waveBreakStates.size() == 0) {
       return null;
     }
 
-    ArrayList<Double> aimAngles = new ArrayList<Double>();
-    for (RobotState waveBreakState : waveBreakStates) {
-      List<Point2D.Double> corners = waveBreakState.botCorners();
-      Circle waveStart = new Circle(sourceLocation.x, sourceLocation.y,
-          _bulletSpeed * (waveBreakState.time - fireTime));
-      Circle waveEnd = new Circle(sourceLocation.x, sourceLocation.y,
-          _bulletSpeed * (waveBreakState.time - fireTime + 1));
-
-      for (Point2D.Double corner : corners) {
-        if (waveEnd.contains(corner) && !waveStart.contains(corner)) {
-          aimAngles.add(absoluteBearing(sourceLocation, corner));
+    double reference = Double.NaN;
+    double minAngle = Double.POSITIVE_INFINITY;
+    double maxAngle = Double.NEGATIVE_INFINITY;
+    for (int x = 0; x < waveBreakStates.size(); x++) {
+      RobotState waveBreakState = waveBreakStates.get(x);
+      double centerX = waveBreakState.location.x - sourceLocation.x;
+      double centerY = waveBreakState.location.y - sourceLocation.y;
+      double startRadius = _bulletSpeed * (waveBreakState.time - fireTime);
+      double endRadius = startRadius + _bulletSpeed;
+      double startRadiusSq = startRadius * startRadius;
+      double endRadiusSq = endRadius * endRadius;
+
+      for (int corner = 0; corner < 4; corner++) {
+        double cornerX = centerX
+            + ((corner < 2) ? -BOT_HALF_WIDTH : BOT_HALF_WIDTH);
+        double cornerY = centerY
+            + ((corner % 2 == 0) ? -BOT_HALF_WIDTH : BOT_HALF_WIDTH);
+        double distanceSq = (cornerX * cornerX) + (cornerY * cornerY);
+        if (distanceSq < endRadiusSq && distanceSq >= startRadiusSq) {
+          double angle = Math.atan2(cornerX, cornerY);
+          if (Double.isNaN(reference)) {
+            reference = angle;
+          }
+          angle = normalizeAngle(angle, reference);
+          minAngle = Math.min(minAngle, angle);
+          maxAngle = Math.max(maxAngle, angle);
         }
       }
 
-      for (Line2D.Double side : waveBreakState.botSides()) {
-        LineSeg seg = new LineSeg(side.x1, side.y1, side.x2, side.y2);
-        Point2D.Double[] intersects = waveStart.intersects(seg);
-        for (int x = 0; x < intersects.length; x++) {
-          if (intersects[x] != null) {
-            aimAngles.add(absoluteBearing(sourceLocation, intersects[x]));
+      // Bottom, right, top and left sides, each crossed by each circle
+      // where it's offset from the wave source along the side by
+      // +/- sqrt(radius^2 - offset^2), offset being the side's distance.
+      for (int side = 0; side < 4; side++) {
+        boolean horizontal = (side % 2 == 0);
+        double offset = (horizontal ? centerY : centerX)
+            + ((side == 0 || side == 3) ? -BOT_HALF_WIDTH : BOT_HALF_WIDTH);
+        double along = horizontal ? centerX : centerY;
+        for (int circle = 0; circle < 2; circle++) {
+          double radiusSq = (circle == 0) ? startRadiusSq : endRadiusSq;
+          double halfChordSq = radiusSq - (offset * offset);
+          if (halfChordSq < 0) {
+            continue;
           }
-        }
-        intersects = waveEnd.intersects(seg);
-        if (intersects != null) {
-          for (int x = 0; x < intersects.length; x++) {
-            if (intersects[x] != null) {
-              aimAngles.add(absoluteBearing(sourceLocation, intersects[x]));
+          double halfChord = Math.sqrt(halfChordSq);
+          for (int root = 0; root < 2; root++) {
+            if (root == 1 && halfChord == 0) {
+              break;
+            }
+            double position = (root == 0) ? halfChord : -halfChord;
+            if (position > along - BOT_HALF_WIDTH
+                && position < along + BOT_HALF_WIDTH) {
+              double angle = horizontal ? Math.atan2(position, offset)
+                                        : Math.atan2(offset, position);
+              if (Double.isNaN(reference)) {
+                reference = angle;
+              }
+              angle = normalizeAngle(angle, reference);
+              minAngle = Math.min(minAngle, angle);
+              maxAngle = Math.max(maxAngle, angle);
             }
           }
         }
       }
     }
 
-    double normalizeReference = aimAngles.get(0);
-    double minAngle = normalizeReference;
-    double maxAngle = normalizeReference;
-
-    for (double thisAngle : aimAngles) {
-      thisAngle = normalizeAngle(thisAngle, normalizeReference);
-      maxAngle = Math.max(maxAngle, thisAngle);
-      minAngle = Math.min(minAngle, thisAngle);
+    if (Double.isNaN(reference)) {
+      return null;
     }
-
     double centerAngle = (maxAngle + minAngle) / 2;
     double bandwidth = maxAngle - centerAngle;
 
@@ -676,18 +754,6 @@ public class Wave implements Cloneable {
       this.minAngle = minAngle;
       this.maxAngle = maxAngle;
     }
-
-    public boolean overlaps(BulletShadow that) {
-      double thatMinAngle = normalizeAngle(that.minAngle, minAngle);
-      double thatMaxAngle = normalizeAngle(that.maxAngle, thatMinAngle);
-      return overlaps(that.minAngle) || overlaps(that.maxAngle)
-          || (thatMinAngle <= minAngle && thatMaxAngle >= maxAngle);
-    }
-
-    private boolean overlaps(double angle) {
-      angle = normalizeAngle(angle, minAngle);
-      return minAngle <= angle && maxAngle >= angle;
-    }
   }
 
   public enum WallDistanceStyle {
@@ -4,10 +4,11 @@ import static voidious.utils.DiaUtils.square;
 
 import java.awt.geom.Point2D;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
 
 import voidious.utils.Wave.WavePosition;
 
@@ -36,29 +37,65 @@ public class WaveManager {
   private static final int WAVE_MATCH_THRESHOLD = 50;
   private static final double COOLING_RATE = 0.1;
   private static final double MAX_GUN_HEAT = 1.6;
+  private static final double MAX_BOT_VELOCITY = 8;
 
   private List<Wave> _waves;
-  private Map<Wave, RobotStateLog> _stateLogs;
+  private TreeMap<Long, List<Wave>> _wavesByFireTime;
+  private TreeMap<Long, List<Wave>> _realWavesByFireTime;
+  private PriorityQueue<TrackedWave> _pendingWaves;
+  private List<TrackedWave> _activeWaves;
+  private RobotStateLog _targetStates;
+  private RobotState _lastScanState;
+  private long _trackedWaveCount;
+  private WavePool _wavePool;
 
   public WaveManager() {
     _waves = new ArrayList<Wave>();
-    _stateLogs = new HashMap<Wave, RobotStateLog>();
+    _wavesByFireTime = new TreeMap<Long, List<Wave>>();
+    _realWavesByFireTime = new TreeMap<Long, List<Wave>>();
+    _pendingWaves = new PriorityQueue<TrackedWave>();
+    _activeWaves = new ArrayList<TrackedWave>();
+    _targetStates = new RobotStateLog();
   }
 
   public void initRound() {
     _waves.clear();
-    _stateLogs.clear();
+    _wavesByFireTime.clear();
+    _realWavesByFireTime.clear();
+    _pendingWaves.clear();
+    _activeWaves.clear();
+    _targetStates.clear();
+    _lastScanState = null;
+    _trackedWaveCount = 0;
   }
 
+  /**
+   * Alt waves are recycled into this pool once they break.
+   */
+  public void setWavePool(WavePool wavePool) {
+    _wavePool = wavePool;
+  }
+
+  /**
+   * Adds a wave, indexed by its fire time, and by whether it's an alt wave,
+   * which can't change once it's added.
+   */
   public void addWave(Wave wave) {
     _waves.add(wave);
+    index(_wavesByFireTime, wave);
+    if (!wave.altWave) {
+      index(_realWavesByFireTime, wave);
+    }
+    _pendingWaves.add(
+        new TrackedWave(wave, wave.fireTime, _trackedWaveCount++));
   }
 
   public void checkCurrentWaves(
       long currentTime, CurrentWaveListener listener) {
-    for (Wave w : _waves) {
-      if (w.fireTime == currentTime) {
-        listener.onCurrentWave(w);
+    List<Wave> currentWaves = _wavesByFireTime.get(currentTime);
+    if (currentWaves != null) {
+      for (int x = 0; x < currentWaves.size(); x++) {
+        listener.onCurrentWave(currentWaves.get(x));
       }
     }
   }
@@ -69,42 +106,106 @@ public class WaveManager {
     }
   }
 
+  /**
+   * Checks the waves that might be breaking on the target. Each wave waits
+   * in a queue ordered by the earliest tick it could possibly reach the
+   * target, moving at full speed straight at the wave source from where it
+   * was last scanned. When that tick comes up, it's either rescheduled from
+   * the target's new position or, if it could be breaking, checked every
+   * tick until it's gone.
+   *
+   * The target's states go in one log shared by all the waves, since they
+   * all see the same trajectory, and each wave's break states are the slice
+   * of it from when it might have started breaking.
+   */
   public void checkActiveWaves(
       long currentTime, RobotState lastScanState, WaveBreakListener listener) {
     if (lastScanState.time == currentTime) {
-      Iterator<Wave> wavesIterator = _waves.iterator();
+      _targetStates.addState(lastScanState);
+      while (!_pendingWaves.isEmpty()
+          && _pendingWaves.peek().earliestBreakTime <= currentTime) {
+        TrackedWave trackedWave = _pendingWaves.poll();
+        long earliestBreakTime =
+            earliestBreakTime(trackedWave.wave, lastScanState);
+        if (earliestBreakTime > currentTime) {
+          trackedWave.earliestBreakTime = earliestBreakTime;
+          _pendingWaves.add(trackedWave);
+        } else {
+          // It may have reached the target since the last scan.
+          trackedWave.earliestBreakTime = (_lastScanState == null)
+              ? currentTime : _lastScanState.time;
+          _activeWaves.add(trackedWave);
+        }
+      }
+
+      Iterator<TrackedWave> wavesIterator = _activeWaves.iterator();
       while (wavesIterator.hasNext()) {
-        Wave w = wavesIterator.next();
-        addRobotState(w, lastScanState);
+        TrackedWave trackedWave = wavesIterator.next();
+        Wave w = trackedWave.wave;
         if (w.checkWavePosition(lastScanState) == WavePosition.GONE) {
-          List<RobotState> waveBreakStates = getWaveBreakStates(w, currentTime);
+          List<RobotState> waveBreakStates = getWaveBreakStates(
+              w, trackedWave.earliestBreakTime, currentTime);
           listener.onWaveBreak(w, waveBreakStates);
           wavesIterator.remove();
+          removeWave(w);
+          if (w.altWave && _wavePool != null) {
+            _wavePool.recycle(w);
+          }
         }
       }
+      _lastScanState = lastScanState;
     }
   }
 
-  void addRobotState(Wave w, RobotState state) {
-    RobotStateLog stateLog;
-    if (_stateLogs.containsKey(w)) {
-      stateLog = _stateLogs.get(w);
-    } else {
-      stateLog = new RobotStateLog();
-      _stateLogs.put(w, stateLog);
+  /**
+   * First tick the wave could be anything but midair for a target in this
+   * state: when the front edge of the wave next tick is within a bot radius
+   * of the target, if it drives straight at the wave source.
+   */
+  static long earliestBreakTime(Wave w, RobotState targetState) {
+    double targetDistance = w.sourceLocation.distance(targetState.location);
+    double closingSpeed = w.bulletSpeed() + MAX_BOT_VELOCITY;
+    double breakTicks = (targetDistance - Wave.MAX_BOT_RADIUS
+        - w.distanceTraveled(targetState.time + 1)) / closingSpeed;
+    // A tick early, in case of rounding.
+    return targetState.time + Math.max(0, (long) Math.ceil(breakTicks) - 1);
+  }
+
+  private void removeWave(Wave w) {
+    _waves.remove(w);
+    unindex(_wavesByFireTime, w);
+    if (!w.altWave) {
+      unindex(_realWavesByFireTime, w);
+    }
+  }
+
+  private static void index(TreeMap<Long, List<Wave>> waveIndex, Wave w) {
+    List<Wave> waves = waveIndex.get(w.fireTime);
+    if (waves == null) {
+      waves = new ArrayList<Wave>(1);
+      waveIndex.put(w.fireTime, waves);
+    }
+    waves.add(w);
+  }
+
+  private static void unindex(TreeMap<Long, List<Wave>> waveIndex, Wave w) {
+    List<Wave> waves = waveIndex.get(w.fireTime);
+    if (waves != null) {
+      waves.remove(w);
+      if (waves.isEmpty()) {
+        waveIndex.remove(w.fireTime);
+      }
     }
-    stateLog.addState(state);
   }
 
-  List<RobotState> getWaveBreakStates(Wave w, long currentTime) {
+  List<RobotState> getWaveBreakStates(
+      Wave w, long startTime, long currentTime) {
     List<RobotState> waveBreakStates = new ArrayList<RobotState>();
-    if (_stateLogs.containsKey(w)) {
-      RobotStateLog log = _stateLogs.get(w);
-      for (long time = w.fireTime; time < currentTime; time++) {
-        RobotState state = log.getState(time);
-        if (state != null && w.checkWavePosition(state).isBreaking()) {
-          waveBreakStates.add(state);
-        }
+    for (long time = Math.max(w.fireTime, startTime); time < currentTime;
+         time++) {
+      RobotState state = _targetStates.getState(time);
+      if (state != null && w.checkWavePosition(state).isBreaking()) {
+        waveBreakStates.add(state);
       }
     }
     return waveBreakStates;
@@ -166,33 +267,21 @@ public class WaveManager {
   }
 
   public Wave getWaveByFireTime(long fireTime) {
-    for (Wave w : _waves) {
-      if (w.fireTime == fireTime) {
-        return w;
-      }
-    }
-    return null;
+    List<Wave> waves = _wavesByFireTime.get(fireTime);
+    return (waves == null) ? null : waves.get(0);
   }
 
   public Wave interpolateWaveByFireTime(long fireTime, long currentTime,
       double sourceHeading, double sourceVelocity, RobotStateLog stateLog,
       BattleField battleField, MovementPredictor predictor) {
-    Wave beforeWave = null;
-    Wave afterWave = null;
-    for (Wave w : _waves) {
-      if (!w.altWave) {
-        if (w.fireTime < fireTime) {
-          if (beforeWave == null || w.fireTime > beforeWave.fireTime) {
-            beforeWave = w;
-          }
-        }
-        if (w.fireTime > fireTime) {
-          if (afterWave == null || w.fireTime < afterWave.fireTime) {
-            afterWave = w;
-          }
-        }
-      }
-    }
+    Map.Entry<Long, List<Wave>> beforeEntry =
+        _realWavesByFireTime.lowerEntry(fireTime);
+    Map.Entry<Long, List<Wave>> afterEntry =
+        _realWavesByFireTime.higherEntry(fireTime);
+    Wave beforeWave =
+        (beforeEntry == null) ? null : beforeEntry.getValue().get(0);
+    Wave afterWave =
+        (afterEntry == null) ? null : afterEntry.getValue().get(0);
 
     if (beforeWave == null && afterWave == null) {
       return null;
@@ -295,19 +384,39 @@ public class WaveManager {
   }
 
   public long getLastFireTime() {
-    long lastFireTime = -1;
-    for (Wave w : _waves) {
-      if (!w.altWave && w.fireTime > lastFireTime) {
-        lastFireTime = w.fireTime;
-      }
-    }
-    return lastFireTime;
+    return _realWavesByFireTime.isEmpty()
+        ? -1 : Math.max(-1, _realWavesByFireTime.lastKey());
   }
 
   public int size() {
     return _waves.size();
   }
 
+  /**
+   * A wave and the earliest tick it could be breaking, which orders the
+   * waves still waiting for that tick, then by when they were added.
+   */
+  private static class TrackedWave implements Comparable<TrackedWave> {
+    final Wave wave;
+    final long sequence;
+    long earliestBreakTime;
+
+    TrackedWave(Wave wave, long earliestBreakTime, long sequence) {
+      this.wave = wave;
+      this.earliestBreakTime = earliestBreakTime;
+      this.sequence = sequence;
+    }
+
+    @Override
+    public int compareTo(TrackedWave that) {
+      if (earliestBreakTime != that.earliestBreakTime) {
+        return (earliestBreakTime < that.earliestBreakTime) ? -1 : 1;
+      }
+      return (sequence < that.sequence) ? -1
+          : ((sequence == that.sequence) ? 0 : 1);
+    }
+  }
+
   public interface CurrentWaveListener {
     void onCurrentWave(Wave w);
   }
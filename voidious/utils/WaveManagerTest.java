@@ -4,11 +4,18 @@ import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
 
 import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
 
 import org.junit.Test;
+import org.mockito.Mockito;
 
 import voidious.utils.Wave.WavePosition;
 import voidious.utils.WaveManager.CurrentWaveListener;
+import voidious.utils.WaveManager.WaveBreakListener;
 
 /**
  * Copyright (c) 2012 - Voidious
@@ -72,7 +79,128 @@ public class WaveManagerTest {
     verify(listener, never()).onCurrentWave((Wave) any());
   }
 
-  // TODO: test checkActiveWaves as a whole?
+  @Test
+  public void testCheckActiveWaves() {
+    WaveManager waveManager = newWaveManager();
+    Wave w = newWave(newLocation(100, 100), newLocation(100, 300), 100L, 3.0);
+    waveManager.addWave(w);
+    WaveBreakListener listener = mock(WaveBreakListener.class);
+    for (long time = 100L; time < 130L; time++) {
+      waveManager.checkActiveWaves(time, newRobotState(100, 300, time),
+          listener);
+    }
+    verify(listener).onWaveBreak(eq(w), Mockito.<RobotState>anyList());
+    assertEquals(0, waveManager.size());
+    assertNull(waveManager.getWaveByFireTime(100L));
+  }
+
+  @Test
+  public void testCheckActiveWavesRecyclesAltWaves() {
+    WaveManager waveManager = newWaveManager();
+    WavePool wavePool = new WavePool();
+    waveManager.setWavePool(wavePool);
+    waveManager.addWave(
+        newWave(newLocation(100, 100), newLocation(100, 300), 100L, 3.0));
+    waveManager.addWave(
+        newWave(newLocation(100, 100), newLocation(100, 300), 100L, 3.0)
+            .setAltWave(true));
+    WaveBreakListener listener = mock(WaveBreakListener.class);
+    for (long time = 100L; time < 130L; time++) {
+      waveManager.checkActiveWaves(time, newRobotState(100, 300, time),
+          listener);
+    }
+    assertEquals(0, waveManager.size());
+    assertEquals(1, wavePool.spareWaves());
+  }
+
+  @Test
+  public void testCheckActiveWavesMatchesCheckingEveryWave() {
+    Random random = new Random(7);
+    WaveManager waveManager = newWaveManager();
+    final Map<Wave, List<Long>> breaks = new HashMap<Wave, List<Long>>();
+    WaveBreakListener listener = new WaveBreakListener() {
+      @Override
+      public void onWaveBreak(Wave w, List<RobotState> waveBreakStates) {
+        breaks.put(w, stateTimes(waveBreakStates));
+      }
+    };
+    Map<Wave, List<RobotState>> allStates =
+        new HashMap<Wave, List<RobotState>>();
+    Map<Wave, List<Long>> expectedBreaks = new HashMap<Wave, List<Long>>();
+
+    Point2D.Double targetLocation = newLocation(400, 300);
+    double heading = 0;
+    for (long time = 0; time < 1000; time++) {
+      if (random.nextDouble() < 0.1) {
+        heading = random.nextDouble() * 2 * Math.PI;
+      }
+      targetLocation = DiaUtils.project(targetLocation, heading, 8);
+      targetLocation.x = DiaUtils.limit(18, targetLocation.x, 782);
+      targetLocation.y = DiaUtils.limit(18, targetLocation.y, 582);
+      if (time < 900 && random.nextDouble() < 0.5) {
+        Wave w = newWave(newLocation(18 + random.nextDouble() * 764,
+            18 + random.nextDouble() * 564), targetLocation, time,
+            0.1 + random.nextDouble() * 2.9);
+        waveManager.addWave(w);
+        allStates.put(w, new ArrayList<RobotState>());
+      }
+      // Scans are missed now and then, like in melee.
+      if (random.nextDouble() < 0.2) {
+        continue;
+      }
+      RobotState state = newRobotState(targetLocation.x, targetLocation.y,
+          time);
+      waveManager.checkActiveWaves(time, state, listener);
+      for (Wave w : allStates.keySet()) {
+        if (!expectedBreaks.containsKey(w)) {
+          allStates.get(w).add(state);
+          if (w.checkWavePosition(state) == WavePosition.GONE) {
+            expectedBreaks.put(w, breakingTimes(w, allStates.get(w), time));
+          }
+        }
+      }
+    }
+
+    assertTrue(expectedBreaks.size() > 300);
+    assertEquals(expectedBreaks, breaks);
+  }
+
+  @Test
+  public void testEarliestBreakTime() {
+    Wave w = newWave(newLocation(100, 100), newLocation(100, 500), 100L, 3.0);
+    RobotState state = newRobotState(100, 500, 110L);
+    long earliestBreakTime = WaveManager.earliestBreakTime(w, state);
+    assertTrue(earliestBreakTime > 110L);
+    for (long time = 110L; time < earliestBreakTime; time++) {
+      RobotState closestState = newRobotState(
+          100, 500 - (8 * (time - 110L)), time);
+      assertEquals(WavePosition.MIDAIR, w.checkWavePosition(closestState));
+    }
+  }
+
+  @Test
+  public void testGetWaveByFireTime() {
+    WaveManager waveManager = newWaveManager();
+    Wave w = newWave(newLocation(), newLocation(), 88L, 3.0);
+    Wave w2 = newWave(newLocation(), newLocation(), 100L, 3.0);
+    Wave w3 = newWave(newLocation(), newLocation(), 100L, 3.0);
+    waveManager.addWave(w);
+    waveManager.addWave(w2);
+    waveManager.addWave(w3);
+    assertEquals(w, waveManager.getWaveByFireTime(88L));
+    assertEquals(w2, waveManager.getWaveByFireTime(100L));
+    assertNull(waveManager.getWaveByFireTime(99L));
+  }
+
+  @Test
+  public void testGetLastFireTime() {
+    WaveManager waveManager = newWaveManager();
+    assertEquals(-1, waveManager.getLastFireTime());
+    waveManager.addWave(newWave(newLocation(), newLocation(), 88L, 3.0));
+    waveManager.addWave(
+        newWave(newLocation(), newLocation(), 100L, 3.0).setAltWave(true));
+    assertEquals(88L, waveManager.getLastFireTime());
+  }
 
   // TODO: move these to WaveTest
   @Test
@@ -213,6 +341,41 @@ public class WaveManagerTest {
 //        mock(MovementPredictor.class));
 //  }
 
+  private RobotState newRobotState(double x, double y, long time) {
+    return RobotState.newBuilder()
+        .setLocation(newLocation(x, y))
+        .setTime(time)
+        .build();
+  }
+
+  /**
+   * Times of the states the wave was breaking on, interpolating missed
+   * scans, like WaveManager.getWaveBreakStates.
+   */
+  private List<Long> breakingTimes(
+      Wave w, List<RobotState> states, long currentTime) {
+    RobotStateLog stateLog = new RobotStateLog();
+    for (RobotState state : states) {
+      stateLog.addState(state);
+    }
+    List<RobotState> breakingStates = new ArrayList<RobotState>();
+    for (long time = w.fireTime; time < currentTime; time++) {
+      RobotState state = stateLog.getState(time);
+      if (state != null && w.checkWavePosition(state).isBreaking()) {
+        breakingStates.add(state);
+      }
+    }
+    return stateTimes(breakingStates);
+  }
+
+  private static List<Long> stateTimes(List<RobotState> states) {
+    List<Long> times = new ArrayList<Long>();
+    for (RobotState state : states) {
+      times.add(state.time);
+    }
+    return times;
+  }
+
   private Point2D.Double newLocation() {
     return newLocation(Math.random() * 800, Math.random() * 600);
   }
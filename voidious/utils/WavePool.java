@@ -0,0 +1,66 @@
+package voidious.utils;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayDeque;
+
+/**
+ * Copyright (c) 2012 - Voidious
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+/**
+ * Spare waves to reuse instead of allocating new ones. Only waves that
+ * nothing refers to once they've broken should be recycled, like the alt
+ * waves I fire at each enemy from every other enemy's position in melee,
+ * which are only used to log the enemy's movement.
+ */
+public class WavePool {
+  static final int MAX_SPARE_WAVES = 256;
+
+  private final ArrayDeque<Wave> _spareWaves;
+
+  public WavePool() {
+    _spareWaves = new ArrayDeque<Wave>();
+  }
+
+  public Wave newWave(String botName, Point2D.Double sourceLocation,
+      Point2D.Double targetLocation, int fireRound, long fireTime,
+      double bulletPower, double targetHeading, double targetVelocity,
+      int targetVelocitySign, BattleField battleField,
+      MovementPredictor predictor) {
+    if (_spareWaves.isEmpty()) {
+      return new Wave(botName, sourceLocation, targetLocation, fireRound,
+          fireTime, bulletPower, targetHeading, targetVelocity,
+          targetVelocitySign, battleField, predictor);
+    }
+    return _spareWaves.pop().reset(botName, sourceLocation, targetLocation,
+        fireRound, fireTime, bulletPower, targetHeading, targetVelocity,
+        targetVelocitySign, battleField, predictor);
+  }
+
+  public void recycle(Wave w) {
+    if (_spareWaves.size() < MAX_SPARE_WAVES) {
+      _spareWaves.push(w);
+    }
+  }
+
+  public int spareWaves() {
+    return _spareWaves.size();
+  }
+}
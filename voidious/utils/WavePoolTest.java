@@ -0,0 +1,118 @@
+package voidious.utils;
+
+import static org.junit.Assert.*;
+
+import java.awt.geom.Point2D;
+
+import org.junit.Test;
+
+/**
+ * Copyright (c) 2012 - Voidious
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+public class WavePoolTest {
+
+  @Test
+  public void testNewWave() {
+    WavePool wavePool = new WavePool();
+    Wave w = newWave(wavePool);
+    assertEquals("Shadow", w.botName);
+    assertEquals(36L, w.fireTime);
+    assertEquals(0, wavePool.spareWaves());
+  }
+
+  @Test
+  public void testRecycle() {
+    WavePool wavePool = new WavePool();
+    Wave w = newWave(wavePool);
+    wavePool.recycle(w);
+    assertEquals(1, wavePool.spareWaves());
+    assertSame(w, newWave(wavePool));
+    assertEquals(0, wavePool.spareWaves());
+  }
+
+  @Test
+  public void testRecycledWaveIsReset() {
+    WavePool wavePool = new WavePool();
+    Wave w = newWave(wavePool)
+        .setAccel(1)
+        .setDistance(400)
+        .setDistanceLast8Ticks(50)
+        .setGunHeat(0.3)
+        .setEnemiesAlive(5)
+        .setAltWave(true);
+    w.hitByBullet = true;
+    w.castShadow(0.1, 0.2);
+    wavePool.recycle(w);
+
+    Wave reused = wavePool.newWave("Phoenix", newLocation(100, 100),
+        newLocation(100, 500), 3, 80L, 2.5, 1.0, 4.0, -1, newBattleField(),
+        newPredictor());
+    Wave expected = new Wave("Phoenix", newLocation(100, 100),
+        newLocation(100, 500), 3, 80L, 2.5, 1.0, 4.0, -1, newBattleField(),
+        newPredictor());
+    assertSame(w, reused);
+    assertEquals(expected.botName, reused.botName);
+    assertEquals(expected.fireRound, reused.fireRound);
+    assertEquals(expected.fireTime, reused.fireTime);
+    assertEquals(expected.bulletSpeed(), reused.bulletSpeed(), 0);
+    assertEquals(expected.absBearing, reused.absBearing, 0);
+    assertEquals(expected.orbitDirection, reused.orbitDirection);
+    assertEquals(expected.targetRelativeHeading,
+        reused.targetRelativeHeading, 0);
+    assertEquals(0, reused.targetAccel, 0);
+    assertEquals(0, reused.targetDistance, 0);
+    assertEquals(0, reused.targetDl8t, 0);
+    assertEquals(0, reused.gunHeat, 0);
+    assertEquals(0, reused.enemiesAlive);
+    assertFalse(reused.altWave);
+    assertFalse(reused.processedBulletHit());
+    assertTrue(reused.shadows.isEmpty());
+    reused.castShadow(reused.absBearing - 0.1, reused.absBearing + 0.1);
+    assertTrue(reused.shadowed(reused.absBearing));
+  }
+
+  @Test
+  public void testMaxSpareWaves() {
+    WavePool wavePool = new WavePool();
+    for (int x = 0; x < WavePool.MAX_SPARE_WAVES + 10; x++) {
+      wavePool.recycle(newWave(new WavePool()));
+    }
+    assertEquals(WavePool.MAX_SPARE_WAVES, wavePool.spareWaves());
+  }
+
+  private Wave newWave(WavePool wavePool) {
+    return wavePool.newWave("Shadow", newLocation(400, 100),
+        newLocation(400, 400), 2, 36L, 1.95, 0.2, 8.0, 1, newBattleField(),
+        newPredictor());
+  }
+
+  private Point2D.Double newLocation(double x, double y) {
+    return new Point2D.Double(x, y);
+  }
+
+  private BattleField newBattleField() {
+    return new BattleField(800, 600);
+  }
+
+  private MovementPredictor newPredictor() {
+    return new MovementPredictor(new BattleField(800, 600));
+  }
+}
@@ -2,14 +2,22 @@ package voidious.utils;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static voidious.utils.DiaUtils.normalizeAngle;
 
+import java.awt.geom.Line2D;
 import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
 
 import org.junit.Test;
 
+import voidious.utils.geom.Circle;
+import voidious.utils.geom.LineSeg;
+
 /**
  * Copyright (c) 2012 - Voidious
  *
@@ -532,7 +540,79 @@ public class WaveTest {
 
   @Test
   public void testPreciseIntersection() {
-    fail("Not yet implemented");
+    // Straight north of the source, 200 to 236 away, with the wave's circles
+    // at 198.1 and 212.25 when it breaks.
+    Wave w = new Wave("Shadow", newLocation(400, 100), newLocation(400, 318),
+        2, 36L, 1.95, 0, 0, 1, newBattleField(), newPredictor());
+    List<RobotState> waveBreakStates = new ArrayList<RobotState>();
+    waveBreakStates.add(newRobotState(newLocation(400, 318), 50L));
+    Wave.Intersection intersection = w.preciseIntersection(waveBreakStates);
+    assertEquals(0, intersection.angle, 0.00001);
+    assertEquals(Math.atan2(18, 200), intersection.bandwidth, 0.00001);
+  }
+
+  @Test
+  public void testPreciseIntersectionNoStates() {
+    Wave w = newWave();
+    assertNull(w.preciseIntersection(null));
+    assertNull(w.preciseIntersection(new ArrayList<RobotState>()));
+  }
+
+  @Test
+  public void testPreciseIntersectionMissed() {
+    Wave w = new Wave("Shadow", newLocation(400, 100), newLocation(400, 318),
+        2, 36L, 1.95, 0, 0, 1, newBattleField(), newPredictor());
+    List<RobotState> waveBreakStates = new ArrayList<RobotState>();
+    waveBreakStates.add(newRobotState(newLocation(400, 318), 40L));
+    assertNull(w.preciseIntersection(waveBreakStates));
+  }
+
+  @Test
+  public void testPreciseIntersectionMatchesGeometry() {
+    Random random = new Random(17);
+    for (int x = 0; x < 5000; x++) {
+      Wave w = new Wave("Shadow", newLocation(random), newLocation(random), 2,
+          36L, 0.1 + (random.nextDouble() * 2.9), 0, 8.0, 1, newBattleField(),
+          newPredictor());
+      List<RobotState> waveBreakStates =
+          newWaveBreakStates(w, newLocation(random), random);
+      if (waveBreakStates.isEmpty()) {
+        continue;
+      }
+      Wave.Intersection expected =
+          geometricPreciseIntersection(w, waveBreakStates);
+      Wave.Intersection intersection = w.preciseIntersection(waveBreakStates);
+      assertEquals(expected.angle,
+          normalizeAngle(intersection.angle, expected.angle), 0.000000001);
+      assertEquals(expected.bandwidth, intersection.bandwidth, 0.000000001);
+    }
+  }
+
+  @Test
+  public void testPreciseIntersectionMatchesGeometryAxisAligned() {
+    // Sides and corners exactly level with the wave source.
+    Random random = new Random(23);
+    for (int x = 0; x < 2000; x++) {
+      Point2D.Double sourceLocation = newLocation(400, 300);
+      Point2D.Double botLocation = (random.nextBoolean())
+          ? newLocation(400 + (random.nextInt(7) - 3) * 18,
+                        300 + (random.nextBoolean() ? 1 : -1)
+                            * (100 + random.nextInt(150)))
+          : newLocation(400 + (random.nextBoolean() ? 1 : -1)
+                            * (100 + random.nextInt(300)),
+                        300 + (random.nextInt(7) - 3) * 18);
+      Wave w = new Wave("Shadow", sourceLocation, botLocation, 2, 36L,
+          0.1 + (random.nextInt(30) / 10.0), 0, 0, 1, newBattleField(),
+          newPredictor());
+      List<RobotState> waveBreakStates = newWaveBreakStates(w, botLocation,
+          null);
+      Wave.Intersection expected =
+          geometricPreciseIntersection(w, waveBreakStates);
+      Wave.Intersection intersection = w.preciseIntersection(waveBreakStates);
+      assertEquals(expected.angle,
+          normalizeAngle(intersection.angle, expected.angle), 0.000000001);
+      assertEquals(expected.bandwidth, intersection.bandwidth, 0.000000001);
+    }
   }
 
   @Test
@@ -560,6 +640,82 @@ public class WaveTest {
     fail("Not yet implemented");
   }
 
+  /**
+   * States of a bot driving from botLocation in a random straight line, or
+   * sitting still if random is null, for the ticks the wave is breaking.
+   */
+  private List<RobotState> newWaveBreakStates(
+      Wave w, Point2D.Double botLocation, Random random) {
+    double heading = (random == null) ? 0 : random.nextDouble() * 2 * Math.PI;
+    double velocity = (random == null) ? 0 : random.nextDouble() * 8;
+    List<RobotState> waveBreakStates = new ArrayList<RobotState>();
+    for (long time = w.fireTime; time < w.fireTime + 200; time++) {
+      RobotState state = newRobotState(DiaUtils.project(botLocation, heading,
+          velocity * (time - w.fireTime)), time);
+      Wave.WavePosition position = w.checkWavePosition(state);
+      if (position == Wave.WavePosition.GONE) {
+        break;
+      } else if (position.isBreaking()) {
+        waveBreakStates.add(state);
+      }
+    }
+    return waveBreakStates;
+  }
+
+  /**
+   * How preciseIntersection worked before it went allocation-free: from the
+   * bot's corners and sides, and the wave's circles, as objects.
+   */
+  private Wave.Intersection geometricPreciseIntersection(
+      Wave w, List<RobotState> waveBreakStates) {
+    List<Double> aimAngles = new ArrayList<Double>();
+    for (RobotState waveBreakState : waveBreakStates) {
+      Circle waveStart = new Circle(w.sourceLocation,
+          w.distanceTraveled(waveBreakState.time));
+      Circle waveEnd = new Circle(w.sourceLocation,
+          w.distanceTraveled(waveBreakState.time + 1));
+      for (Point2D.Double corner : waveBreakState.botCorners()) {
+        if (waveEnd.contains(corner) && !waveStart.contains(corner)) {
+          aimAngles.add(DiaUtils.absoluteBearing(w.sourceLocation, corner));
+        }
+      }
+      for (Line2D.Double side : waveBreakState.botSides()) {
+        LineSeg seg = new LineSeg(side.x1, side.y1, side.x2, side.y2);
+        for (Circle circle : new Circle[]{waveStart, waveEnd}) {
+          for (Point2D.Double intersect : circle.intersects(seg)) {
+            if (intersect != null) {
+              aimAngles.add(
+                  DiaUtils.absoluteBearing(w.sourceLocation, intersect));
+            }
+          }
+        }
+      }
+    }
+
+    double reference = aimAngles.get(0);
+    double minAngle = reference;
+    double maxAngle = reference;
+    for (double angle : aimAngles) {
+      angle = normalizeAngle(angle, reference);
+      minAngle = Math.min(minAngle, angle);
+      maxAngle = Math.max(maxAngle, angle);
+    }
+    return new Wave.Intersection(
+        (minAngle + maxAngle) / 2, (maxAngle - minAngle) / 2);
+  }
+
+  private RobotState newRobotState(Point2D.Double location, long time) {
+    return RobotState.newBuilder()
+        .setLocation(location)
+        .setTime(time)
+        .build();
+  }
+
+  private Point2D.Double newLocation(Random random) {
+    return newLocation(18 + random.nextDouble() * 764,
+        18 + random.nextDouble() * 564);
+  }
+
   private Point2D.Double newLocation() {
     return newLocation(18 + Math.random() * 764, 18 + Math.random() * 564);
   }